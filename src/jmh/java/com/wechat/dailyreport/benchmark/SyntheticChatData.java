@@ -0,0 +1,131 @@
+package com.wechat.dailyreport.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.wechat.dailyreport.service.MessageBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成群聊数据
+ * <p>
+ * 按固定随机种子生成，同一参数每次得到相同的数据：约200名群成员，发言次数呈长尾分布；
+ * 约八成为文本消息，其余为图片、语音和系统消息；消息间隔从几秒到几小时不等，内容混合中文、英文、表情和链接。
+ */
+public final class SyntheticChatData {
+
+    private static final long SEED = 20240801L;
+    private static final ZoneOffset OFFSET = ZoneOffset.ofHours(8);
+    private static final long START_EPOCH_SECOND = OffsetDateTime.of(2024, 8, 1, 8, 0, 0, 0, OFFSET).toEpochSecond();
+    private static final String TALKER = "12345678901@chatroom";
+    private static final String TALKER_NAME = "技术交流群";
+    private static final int MEMBERS = 200;
+
+    private static final String[] PHRASES = {
+            "早上好", "今天的会议改到下午三点", "收到", "哈哈哈哈", "[捂脸][捂脸]", "这个需求下周能上线吗？",
+            "我觉得可以先灰度一部分用户", "👍👍👍", "链接发一下 https://example.com/docs/release-notes",
+            "晚上一起吃饭吗", "[动画表情]", "有人遇到过这个报错吗 NullPointerException at line 42",
+            "周末去爬山，有人一起吗", "已经提交了，帮忙review一下", "好的 👌", "+1", "这个方案成本太高了",
+            "明天放假！", "[图片]", "刚才网络断了，没看到消息"
+    };
+
+    private static final int[] NON_TEXT_TYPES = {3, 34, 10000};
+
+    private SyntheticChatData() {
+    }
+
+    /**
+     * 生成列式消息批次（只含文本消息，与从缓存和Chatlog服务获取的结果一致）
+     */
+    public static MessageBatch batch(int count) {
+        Random random = new Random(SEED);
+        MessageBatch.Builder builder = new MessageBatch.Builder();
+        long time = START_EPOCH_SECOND;
+        for (int i = 0; i < count; i++) {
+            time += nextGapSeconds(random);
+            int member = nextMember(random);
+            builder.add(i + 1L, time, OFFSET.getTotalSeconds(), senderId(member), senderName(member),
+                    1, nextContent(random));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 生成 /api/v1/chatlog 格式的JSON响应（含非文本消息）
+     */
+    public static byte[] chatlogJson(int count) {
+        Random random = new Random(SEED);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(count * 320);
+        try (JsonGenerator generator = new JsonFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            long time = START_EPOCH_SECOND;
+            for (int i = 0; i < count; i++) {
+                time += nextGapSeconds(random);
+                int member = nextMember(random);
+                boolean text = random.nextInt(10) < 8;
+                int type = text ? 1 : NON_TEXT_TYPES[random.nextInt(NON_TEXT_TYPES.length)];
+
+                generator.writeStartObject();
+                generator.writeNumberField("seq", i + 1L);
+                generator.writeStringField("time", OffsetDateTime.ofInstant(Instant.ofEpochSecond(time), OFFSET).toString());
+                generator.writeStringField("talker", TALKER);
+                generator.writeStringField("talkerName", TALKER_NAME);
+                generator.writeBooleanField("isChatRoom", true);
+                generator.writeStringField("sender", senderId(member));
+                generator.writeStringField("senderName", senderName(member));
+                generator.writeBooleanField("isSelf", false);
+                generator.writeNumberField("type", type);
+                generator.writeNumberField("subType", 0);
+                if (text) {
+                    generator.writeStringField("content", nextContent(random));
+                } else {
+                    generator.writeStringField("content", "<msg><img length=\"102400\" md5=\"" + Long.toHexString(random.nextLong()) + "\"/></msg>");
+                    generator.writeObjectFieldStart("contents");
+                    generator.writeStringField("md5", Long.toHexString(random.nextLong()));
+                    generator.writeStringField("imgfile", "FileStorage/Image/2024-08/" + i + ".dat");
+                    generator.writeStringField("thumb", "FileStorage/Image/Thumb/2024-08/" + i + "_t.dat");
+                    generator.writeEndObject();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 消息间隔：大多数为几十秒内的连续对话，偶尔有数小时的沉默
+     */
+    private static long nextGapSeconds(Random random) {
+        return random.nextInt(20) == 0 ? 1800 + random.nextInt(4 * 3600) : 1 + random.nextInt(90);
+    }
+
+    /**
+     * 发言者：长尾分布，少数成员贡献大部分消息
+     */
+    private static int nextMember(Random random) {
+        double value = random.nextDouble();
+        return (int) (MEMBERS * value * value * value);
+    }
+
+    private static String nextContent(Random random) {
+        String phrase = PHRASES[random.nextInt(PHRASES.length)];
+        return random.nextInt(4) == 0 ? phrase + "，" + PHRASES[random.nextInt(PHRASES.length)] : phrase;
+    }
+
+    private static String senderId(int member) {
+        return "wxid_member" + member;
+    }
+
+    private static String senderName(int member) {
+        return "群成员" + member;
+    }
+}
@@ -0,0 +1,66 @@
+package com.wechat.dailyreport.client;
+
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.wechat.dailyreport.benchmark.SyntheticChatData;
+import com.wechat.dailyreport.dto.request.AIAnalysisRequest;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.service.DataProcessorService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI请求参数构建基准：聊天记录作为用户消息时的参数构建开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AIServiceClientBenchmark {
+
+    @Param({"1000", "10000"})
+    private int messageCount;
+
+    private AIAnalysisRequest request;
+
+    private AIServiceClient aiServiceClient;
+
+    @Setup
+    public void setUp() {
+        AnalysisMetrics analysisMetrics = new AnalysisMetrics();
+        ReflectionTestUtils.setField(analysisMetrics, "meterRegistry", new SimpleMeterRegistry());
+        DataProcessorService dataProcessorService = new DataProcessorService();
+        ReflectionTestUtils.setField(dataProcessorService, "analysisMetrics", analysisMetrics);
+        ReflectionTestUtils.setField(dataProcessorService, "mergeWindowMinutes", 5);
+        String transcript = dataProcessorService.processMessages(SyntheticChatData.batch(messageCount));
+
+        request = new AIAnalysisRequest()
+                .setModel("gpt-4o-mini")
+                .setTemperature(0.7)
+                .setMaxTokens(4000)
+                .setMessages(Arrays.asList(
+                        new AIAnalysisRequest.AIMessage().setRole("system").setContent("你是一个专业的聊天数据分析师。"),
+                        new AIAnalysisRequest.AIMessage().setRole("user").setContent(transcript)));
+        aiServiceClient = new AIServiceClient();
+    }
+
+    @Benchmark
+    public ChatCompletionCreateParams buildParams() {
+        return aiServiceClient.buildParams(request).build();
+    }
+}
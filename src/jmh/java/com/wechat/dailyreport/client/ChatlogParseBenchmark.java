@@ -0,0 +1,70 @@
+package com.wechat.dailyreport.client;
+
+import com.alibaba.fastjson2.JSON;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.wechat.dailyreport.benchmark.SyntheticChatData;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chatlog消息响应解析基准：流式解析器、Jackson数据绑定、fastjson2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChatlogParseBenchmark {
+
+    private static final TypeReference<List<ChatMessage>> MESSAGE_LIST = new TypeReference<List<ChatMessage>>() {
+    };
+
+    @Param({"1000", "100000"})
+    private int messageCount;
+
+    private byte[] payload;
+
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        payload = SyntheticChatData.chatlogJson(messageCount);
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Benchmark
+    public List<ChatMessage> streamParser() throws IOException {
+        return new ChatlogMessageStreamParser(null, null).parse(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public List<ChatMessage> jacksonDataBind() throws IOException {
+        return objectMapper.readValue(payload, MESSAGE_LIST);
+    }
+
+    @Benchmark
+    public List<ChatMessage> fastjson() {
+        return JSON.parseArray(payload, ChatMessage.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.benchmark.SyntheticChatData;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息预处理基准：紧凑编码、分段、统计
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DataProcessorBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int messageCount;
+
+    private MessageBatch messages;
+
+    private DataProcessorService dataProcessorService;
+
+    private ChatStatisticsService chatStatisticsService;
+
+    @Setup
+    public void setUp() {
+        messages = SyntheticChatData.batch(messageCount);
+
+        AnalysisMetrics analysisMetrics = new AnalysisMetrics();
+        ReflectionTestUtils.setField(analysisMetrics, "meterRegistry", new SimpleMeterRegistry());
+        dataProcessorService = new DataProcessorService();
+        ReflectionTestUtils.setField(dataProcessorService, "analysisMetrics", analysisMetrics);
+        ReflectionTestUtils.setField(dataProcessorService, "mergeWindowMinutes", 5);
+        ReflectionTestUtils.setField(dataProcessorService, "segmentMaxTokens", 24000);
+        ReflectionTestUtils.setField(dataProcessorService, "segmentGapMinutes", 30);
+
+        chatStatisticsService = new ChatStatisticsService();
+        ReflectionTestUtils.setField(chatStatisticsService, "dataProcessorService", dataProcessorService);
+    }
+
+    @Benchmark
+    public String processMessages() {
+        return dataProcessorService.processMessages(messages);
+    }
+
+    @Benchmark
+    public List<MessageBatch> splitIntoSegments() {
+        return dataProcessorService.splitIntoSegments(messages);
+    }
+
+    @Benchmark
+    public String generateMessageStatistics() {
+        return dataProcessorService.generateMessageStatistics(messages);
+    }
+
+    @Benchmark
+    public ChatStatisticsService.ChatStatistics computeStatistics() {
+        return chatStatisticsService.compute(messages);
+    }
+}
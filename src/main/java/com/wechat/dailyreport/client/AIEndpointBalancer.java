@@ -0,0 +1,398 @@
+package com.wechat.dailyreport.client;
+
+import com.wechat.dailyreport.config.AIEndpointProperties;
+import com.wechat.dailyreport.dto.config.AIEndpointConfig;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * AI服务端点负载均衡
+ * <p>
+ * 默认端点（页面上的AI服务配置）和 {@code app.ai.endpoints} 中的端点一起分担请求。
+ * 每个端点（一个基础URL和API密钥）有独立的令牌桶限速，令牌桶、并发上限和熔断器都按端点名称区分，
+ * 未配置名称的端点使用基础URL加API密钥摘要作为名称，名称重复时启动失败。请求选择熔断器未打开、当前有令牌且未完成请求最少的端点；
+ * 都没有令牌时选择最快补充令牌的端点并等待。
+ * <p>
+ * 开启对冲请求后，非流式调用超过最近调用耗时的p95仍未返回时，向另一个端点发出同样的请求，采用先返回的结果。
+ * p95按所有端点合并统计，单个变慢的副本不会抬高自己的对冲阈值。
+ * <p>
+ * 通过 /actuator/metrics 暴露 report.ai.endpoint.outstanding（各端点未完成的请求数）、
+ * report.ai.endpoint.throttled（因令牌桶限速等待的请求数）、report.ai.rejected（reason=rate_limit_timeout，
+ * 等待速率配额超时）和 report.ai.hedges（result=fired/won）。
+ * <p>
+ * 速率配额在进入调用保护之前获取，等待配额时不占用并发名额和熔断器的试探名额，耗时统计从获得配额后开始。
+ */
+@Component
+@Slf4j
+public class AIEndpointBalancer {
+
+    /**
+     * 默认端点名称
+     */
+    public static final String DEFAULT_ENDPOINT = "default";
+
+    private static final int LATENCY_SAMPLES = 200;
+
+    @Autowired
+    private AIEndpointProperties endpointProperties;
+
+    @Autowired
+    private AIResilienceGuard resilienceGuard;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.ai.balancer.default-requests-per-minute:0}")
+    private int defaultRequestsPerMinute;
+
+    @Value("${app.ai.balancer.acquire-timeout-ms:600000}")
+    private long acquireTimeoutMillis;
+
+    @Value("${app.ai.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${app.ai.hedge.quantile:0.95}")
+    private double hedgeQuantile;
+
+    @Value("${app.ai.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${app.ai.hedge.min-delay-ms:1000}")
+    private long hedgeMinDelayMillis;
+
+    private final Map<String, EndpointState> states = new ConcurrentHashMap<>();
+
+    private final LatencyWindow latencies = new LatencyWindow(LATENCY_SAMPLES);
+
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ai-hedge-" + threadIndex.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 检查额外端点的配置，端点名称不能重复（包括默认端点名称）
+     */
+    @PostConstruct
+    public void init() {
+        Set<String> names = new HashSet<>();
+        names.add(DEFAULT_ENDPOINT);
+        for (AIEndpointConfig endpoint : endpointProperties.getEndpoints()) {
+            if (StringUtils.isAnyBlank(endpoint.getBaseUrl(), endpoint.getApiKey())) {
+                log.warn("AI服务端点缺少基础URL或API密钥，已忽略: name={}", endpoint.getName());
+                continue;
+            }
+            if (!names.add(nameOf(endpoint))) {
+                throw new RuntimeException("AI服务端点名称重复: " + nameOf(endpoint));
+            }
+        }
+        log.info("AI服务端点负载均衡初始化完成: 额外端点数={}, 对冲请求={}", endpointProperties.getEndpoints().size(),
+                hedgeEnabled);
+    }
+
+    /**
+     * 停止对冲请求线程
+     */
+    @PreDestroy
+    public void close() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 获取可用的端点：默认端点（配置了API密钥时）在前，其后为额外端点
+     *
+     * @param config 页面上的AI服务配置
+     */
+    public List<Endpoint> getEndpoints(AIServiceConfig config) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        if (StringUtils.isNotBlank(config.getApiKey())) {
+            endpoints.add(new Endpoint(DEFAULT_ENDPOINT, config.getBaseUrl(), config.getApiKey(), config.getTimeout(),
+                    defaultRequestsPerMinute, 0));
+        }
+        for (AIEndpointConfig endpoint : endpointProperties.getEndpoints()) {
+            if (StringUtils.isAnyBlank(endpoint.getBaseUrl(), endpoint.getApiKey())) {
+                continue;
+            }
+            endpoints.add(new Endpoint(nameOf(endpoint), endpoint.getBaseUrl(), endpoint.getApiKey(),
+                    endpoint.getTimeout() != null ? endpoint.getTimeout() : config.getTimeout(),
+                    endpoint.getRequestsPerMinute(), endpoint.getBurst()));
+        }
+        return endpoints;
+    }
+
+    /**
+     * 选择端点执行AI调用
+     *
+     * @param config       页面上的AI服务配置
+     * @param call         AI调用
+     * @param hedgeable    是否允许对冲（流式调用不能对冲）
+     * @param retryAllowed 失败后是否还允许重试
+     * @return 调用结果
+     */
+    public <T> T execute(AIServiceConfig config, EndpointCall<T> call, boolean hedgeable, BooleanSupplier retryAllowed) {
+        List<Endpoint> endpoints = getEndpoints(config);
+        if (endpoints.isEmpty()) {
+            throw new RuntimeException("AI服务API密钥未配置");
+        }
+
+        Endpoint primary = select(endpoints, null);
+        long hedgeDelay = hedgeable && endpoints.size() > 1 ? hedgeDelayMillis() : -1;
+        if (hedgeDelay < 0) {
+            return invoke(primary, call, retryAllowed, () -> false);
+        }
+        return executeHedged(endpoints, primary, call, hedgeDelay, retryAllowed);
+    }
+
+    /**
+     * 先向主端点发出调用，超过对冲阈值仍未返回时向另一个端点发出同样的调用，采用先成功的结果
+     */
+    private <T> T executeHedged(List<Endpoint> endpoints, Endpoint primary, EndpointCall<T> call, long hedgeDelay,
+                                BooleanSupplier retryAllowed) {
+        CompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<T>> futures = new ArrayList<>(2);
+        AtomicBoolean settled = new AtomicBoolean();
+        futures.add(completion.submit(() -> invoke(primary, call, retryAllowed, settled::get)));
+        try {
+            Future<T> done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                Endpoint hedge = select(endpoints, primary);
+                // 对冲请求只用当前有令牌的端点，不为对冲等待限速
+                if (hedge != null && stateOf(hedge).bucket.waitMillis() == 0) {
+                    log.info("AI调用超过{}毫秒未返回，向端点{}发出对冲请求", hedgeDelay, hedge.getName());
+                    hedges("fired").increment();
+                    futures.add(completion.submit(() -> invoke(hedge, call, retryAllowed, settled::get)));
+                }
+            }
+
+            ExecutionException failure = null;
+            for (int pending = futures.size(); pending > 0; pending--) {
+                Future<T> next = done != null ? done : completion.take();
+                done = null;
+                try {
+                    T result = next.get();
+                    if (next != futures.get(0)) {
+                        hedges("won").increment();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = e;
+                }
+            }
+            Throwable cause = failure.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待被中断");
+        } finally {
+            // 取消较慢的一方
+            settled.set(true);
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * 在端点上执行调用，每次尝试（包括重试）在进入调用保护前消耗一个令牌
+     */
+    private <T> T invoke(Endpoint endpoint, EndpointCall<T> call, BooleanSupplier retryAllowed,
+                         BooleanSupplier cancelled) {
+        EndpointState state = stateOf(endpoint);
+        state.outstanding.incrementAndGet();
+        // 首次获得令牌的时间，等待令牌的时间不计入耗时统计
+        long[] start = {0};
+        try {
+            T result = resilienceGuard.execute(endpoint.getName(), () -> call.call(endpoint), retryAllowed, cancelled,
+                    () -> {
+                        acquireToken(endpoint, state);
+                        if (start[0] == 0) {
+                            start[0] = System.currentTimeMillis();
+                        }
+                    });
+            latencies.record(System.currentTimeMillis() - start[0]);
+            return result;
+        } catch (RuntimeException e) {
+            if (cancelled.getAsBoolean() && start[0] != 0) {
+                // 被对冲请求取消的调用至少耗时这么久，同样计入耗时统计，避免阈值只反映较快的调用
+                latencies.record(System.currentTimeMillis() - start[0]);
+            }
+            throw e;
+        } finally {
+            state.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * 获取端点的速率令牌，没有令牌时等待，超时后拒绝调用
+     */
+    private void acquireToken(Endpoint endpoint, EndpointState state) {
+        if (state.bucket.tryAcquire()) {
+            return;
+        }
+        throttled(endpoint).increment();
+        try {
+            if (state.bucket.acquire(acquireTimeoutMillis)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待速率配额被中断");
+        }
+        Counter.builder("report.ai.rejected")
+                .description("被拒绝的AI调用数")
+                .tag("endpoint", endpoint.getName())
+                .tag("reason", "rate_limit_timeout")
+                .register(meterRegistry)
+                .increment();
+        throw new RuntimeException("等待AI服务端点速率配额超时: " + endpoint.getName());
+    }
+
+    /**
+     * 选择端点：优先熔断器未打开且有令牌的端点，其中未完成请求最少的；
+     * 都没有令牌时选择最快有令牌的端点。从轮转位置开始比较，条件相同时请求依次分散到各端点
+     *
+     * @param exclude 排除的端点，可为null
+     * @return 选中的端点；排除后没有可用端点时返回null，不排除时所有熔断器都打开则返回第一个端点（调用将快速失败）
+     */
+    private Endpoint select(List<Endpoint> endpoints, Endpoint exclude) {
+        Endpoint best = null;
+        long bestWait = 0;
+        int bestOutstanding = 0;
+        int offset = rotation.getAndIncrement();
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(Math.floorMod(offset + i, endpoints.size()));
+            if (endpoint.equals(exclude) || !resilienceGuard.isCallPermitted(endpoint.getName())) {
+                continue;
+            }
+            EndpointState state = stateOf(endpoint);
+            long wait = state.bucket.waitMillis();
+            int outstanding = state.outstanding.get();
+            boolean better;
+            if (best == null) {
+                better = true;
+            } else if ((wait == 0) != (bestWait == 0)) {
+                better = wait == 0;
+            } else {
+                better = wait == 0 ? outstanding < bestOutstanding : wait < bestWait;
+            }
+            if (better) {
+                best = endpoint;
+                bestWait = wait;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best != null || exclude != null ? best : endpoints.get(0);
+    }
+
+    /**
+     * 对冲阈值：最近调用耗时的分位数，样本不足时返回-1（不对冲）
+     */
+    private long hedgeDelayMillis() {
+        if (!hedgeEnabled || latencies.size() < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayMillis, latencies.quantile(hedgeQuantile));
+    }
+
+    /**
+     * 端点名称：未配置时使用基础URL加API密钥摘要，同一服务的多个API密钥各自限速和熔断
+     */
+    static String nameOf(AIEndpointConfig endpoint) {
+        if (StringUtils.isNotBlank(endpoint.getName())) {
+            return endpoint.getName();
+        }
+        String keyDigest = DigestUtils.md5DigestAsHex(endpoint.getApiKey().getBytes(StandardCharsets.UTF_8));
+        return endpoint.getBaseUrl() + "#" + keyDigest.substring(0, 8);
+    }
+
+    private EndpointState stateOf(Endpoint endpoint) {
+        return states.computeIfAbsent(endpoint.getName(), name -> {
+            EndpointState state = new EndpointState(new TokenBucket(endpoint.getRequestsPerMinute(), endpoint.getBurst()));
+            Gauge.builder("report.ai.endpoint.outstanding", state.outstanding, AtomicInteger::get)
+                    .description("AI服务端点未完成的请求数")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            log.info("AI服务端点: name={}, baseUrl={}, 每分钟请求数上限={}", name, endpoint.getBaseUrl(),
+                    endpoint.getRequestsPerMinute() > 0 ? endpoint.getRequestsPerMinute() : "不限");
+            return state;
+        });
+    }
+
+    private Counter throttled(Endpoint endpoint) {
+        return Counter.builder("report.ai.endpoint.throttled")
+                .description("因令牌桶限速等待的AI请求数")
+                .tag("endpoint", endpoint.getName())
+                .register(meterRegistry);
+    }
+
+    private Counter hedges(String result) {
+        return Counter.builder("report.ai.hedges")
+                .description("AI对冲请求数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在选定端点上执行的AI调用
+     */
+    @FunctionalInterface
+    public interface EndpointCall<T> {
+        T call(Endpoint endpoint) throws Exception;
+    }
+
+    /**
+     * AI服务端点
+     */
+    @lombok.Value
+    public static class Endpoint {
+        String name;
+        String baseUrl;
+        String apiKey;
+        Integer timeout;
+        int requestsPerMinute;
+        int burst;
+    }
+
+    /**
+     * 端点的限速和负载状态
+     */
+    private static class EndpointState {
+        private final TokenBucket bucket;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        EndpointState(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
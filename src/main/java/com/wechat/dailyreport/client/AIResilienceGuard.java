@@ -0,0 +1,340 @@
+package com.wechat.dailyreport.client;
+
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIRetryableException;
+import com.openai.errors.OpenAIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * AI调用保护：自适应并发上限、重试和熔断
+ * <p>
+ * 每个AI服务端点独立维护一个AIMD并发上限和一个熔断器。
+ * 限流（429）、服务端错误（5xx）、请求超时和网络错误视为服务过载：降低并发上限、计入熔断失败，
+ * 并按带随机抖动的指数退避重试，服务返回 Retry-After 时按其指定的时间等待；
+ * 其他客户端错误（如401、400）直接失败，不重试。
+ * <p>
+ * 通过 /actuator/metrics 暴露（均带 endpoint 标签）：
+ * <ul>
+ *     <li>report.ai.concurrency.limit / in-flight：当前并发上限和执行中的调用数</li>
+ *     <li>report.ai.circuit.state：熔断器状态（0=关闭，1=半开，2=打开）</li>
+ *     <li>report.ai.retries：重试次数（reason=rate_limit/server_error/timeout/io）</li>
+ *     <li>report.ai.rejected：被拒绝的调用数（reason=circuit_open/concurrency_timeout）</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class AIResilienceGuard {
+
+    private static final String REASON_RATE_LIMIT = "rate_limit";
+    private static final String REASON_SERVER_ERROR = "server_error";
+    private static final String REASON_TIMEOUT = "timeout";
+    private static final String REASON_IO = "io";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.ai.resilience.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${app.ai.resilience.backoff.base-ms:1000}")
+    private long backoffBaseMillis;
+
+    @Value("${app.ai.resilience.backoff.max-ms:30000}")
+    private long backoffMaxMillis;
+
+    @Value("${app.ai.resilience.backoff.max-retry-after-ms:120000}")
+    private long maxRetryAfterMillis;
+
+    @Value("${app.ai.resilience.concurrency.initial-limit:4}")
+    private int initialLimit;
+
+    @Value("${app.ai.resilience.concurrency.min-limit:1}")
+    private int minLimit;
+
+    @Value("${app.ai.resilience.concurrency.max-limit:32}")
+    private int maxLimit;
+
+    @Value("${app.ai.resilience.concurrency.backoff-ratio:0.5}")
+    private double backoffRatio;
+
+    @Value("${app.ai.resilience.concurrency.acquire-timeout-ms:600000}")
+    private long acquireTimeoutMillis;
+
+    @Value("${app.ai.resilience.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${app.ai.resilience.circuit.open-duration-ms:30000}")
+    private long openDurationMillis;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * 在端点的并发上限和熔断器保护下执行AI调用，失败时按需重试
+     *
+     * @param endpoint     AI服务端点名称
+     * @param action       AI调用
+     * @param retryAllowed 失败后是否还允许重试（如流式调用已输出内容后不能重试）
+     * @return 调用结果
+     */
+    public <T> T execute(String endpoint, Callable<T> action, BooleanSupplier retryAllowed) {
+        return execute(endpoint, action, retryAllowed, () -> false);
+    }
+
+    /**
+     * 在端点的并发上限和熔断器保护下执行可取消的AI调用，失败时按需重试
+     *
+     * @param endpoint     AI服务端点名称
+     * @param action       AI调用
+     * @param retryAllowed 失败后是否还允许重试
+     * @param cancelled    调用是否已被取消（取消导致的失败不计入服务状态）
+     * @return 调用结果
+     */
+    public <T> T execute(String endpoint, Callable<T> action, BooleanSupplier retryAllowed, BooleanSupplier cancelled) {
+        return execute(endpoint, action, retryAllowed, cancelled, () -> {
+        });
+    }
+
+    /**
+     * 在端点的并发上限和熔断器保护下执行可取消的AI调用，每次尝试前先通过准入检查（如等待端点的速率配额）
+     *
+     * @param endpoint     AI服务端点名称
+     * @param action       AI调用
+     * @param retryAllowed 失败后是否还允许重试
+     * @param cancelled    调用是否已被取消（取消导致的失败不计入服务状态）
+     * @param gate         每次尝试前的准入检查，在占用并发名额和熔断试探名额之前执行；抛出的异常直接返回给调用方
+     * @return 调用结果
+     */
+    public <T> T execute(String endpoint, Callable<T> action, BooleanSupplier retryAllowed, BooleanSupplier cancelled,
+                         AttemptGate gate) {
+        Endpoint state = endpoints.computeIfAbsent(endpoint != null ? endpoint : "default", this::createEndpoint);
+
+        for (int attempt = 1; ; attempt++) {
+            // 已取消的调用不再发起新的尝试：中断标志可能在网络读写中被清除，不能只依赖线程中断
+            if (cancelled.getAsBoolean()) {
+                throw new RuntimeException("调用已取消");
+            }
+            gate.await();
+            if (!state.breaker.tryAcquire()) {
+                state.rejected("circuit_open").increment();
+                throw new RuntimeException("AI服务暂时不可用，请稍后再试");
+            }
+            try {
+                if (!state.limit.acquire(acquireTimeoutMillis)) {
+                    // 未发出调用，只释放半开状态的试探名额
+                    state.breaker.onIgnore();
+                    state.rejected("concurrency_timeout").increment();
+                    throw new RuntimeException("等待AI服务并发名额超时");
+                }
+            } catch (InterruptedException e) {
+                state.breaker.onIgnore();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待被中断");
+            }
+
+            try {
+                T result = action.call();
+                state.limit.onSuccess();
+                state.breaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                if (cancelled.getAsBoolean()) {
+                    // 调用被取消（如对冲请求中较慢的一方），不计入服务状态
+                    state.limit.onIgnore();
+                    state.breaker.onIgnore();
+                    throw new RuntimeException("调用已取消");
+                }
+                String reason = overloadReason(e);
+                if (reason != null) {
+                    state.limit.onOverload();
+                    state.breaker.onFailure();
+                } else {
+                    state.limit.onIgnore();
+                    state.breaker.onSuccess();
+                }
+
+                long delay = reason != null ? retryDelayMillis(e, attempt) : -1;
+                if (reason == null || attempt >= maxAttempts || delay > maxRetryAfterMillis
+                        || !retryAllowed.getAsBoolean()) {
+                    log.error("调用AI服务失败: endpoint={}, attempt={}, error={}", endpoint, attempt, e.getMessage(), e);
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+                log.warn("调用AI服务失败，{}毫秒后重试: endpoint={}, attempt={}, reason={}, error={}",
+                        delay, endpoint, attempt, reason, e.getMessage());
+                state.retries(reason).increment();
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * 端点当前是否可以调用（熔断器未打开）
+     *
+     * @param endpoint AI服务端点
+     */
+    public boolean isCallPermitted(String endpoint) {
+        Endpoint state = endpoints.get(endpoint);
+        return state == null || state.breaker.isCallPermitted();
+    }
+
+    /**
+     * 过载类失败的原因，其他失败返回null
+     */
+    static String overloadReason(Throwable error) {
+        if (error instanceof OpenAIServiceException) {
+            int status = ((OpenAIServiceException) error).statusCode();
+            if (status == 429) {
+                return REASON_RATE_LIMIT;
+            }
+            if (status == 408) {
+                return REASON_TIMEOUT;
+            }
+            return status >= 500 ? REASON_SERVER_ERROR : null;
+        }
+        if (error instanceof OpenAIIoException || error instanceof OpenAIRetryableException) {
+            for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InterruptedIOException) {
+                    return REASON_TIMEOUT;
+                }
+            }
+            return REASON_IO;
+        }
+        return null;
+    }
+
+    /**
+     * 重试等待时间：优先使用服务返回的 Retry-After，否则为带完全抖动的指数退避
+     */
+    long retryDelayMillis(Throwable error, int attempt) {
+        long retryAfter = retryAfterMillis(error);
+        if (retryAfter >= 0) {
+            return retryAfter;
+        }
+        long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 解析 retry-after-ms 或 Retry-After（秒数或HTTP日期），没有时返回-1
+     */
+    static long retryAfterMillis(Throwable error) {
+        if (!(error instanceof OpenAIServiceException)) {
+            return -1;
+        }
+        OpenAIServiceException serviceException = (OpenAIServiceException) error;
+        try {
+            List<String> millis = serviceException.headers().values("retry-after-ms");
+            if (!millis.isEmpty()) {
+                return Math.max(0, (long) Double.parseDouble(millis.get(0).trim()));
+            }
+            List<String> values = serviceException.headers().values("retry-after");
+            if (values.isEmpty()) {
+                return -1;
+            }
+            String value = values.get(0).trim();
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value) * 1000;
+            }
+            ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, retryAt.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (Exception e) {
+            log.debug("无法解析Retry-After: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("重试等待被中断");
+        }
+    }
+
+    private Endpoint createEndpoint(String endpoint) {
+        Endpoint state = new Endpoint(endpoint,
+                new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, backoffRatio),
+                new CircuitBreaker(failureThreshold, openDurationMillis));
+        Gauge.builder("report.ai.concurrency.limit", state.limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("AI调用的当前并发上限")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("report.ai.concurrency.in-flight", state.limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("执行中的AI调用数")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("report.ai.circuit.state", state.breaker, AIResilienceGuard::circuitStateValue)
+                .description("AI服务熔断器状态（0=关闭，1=半开，2=打开）")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        log.info("AI服务端点并发上限: endpoint={}, initial={}, min={}, max={}", endpoint,
+                state.limit.getLimit(), minLimit, maxLimit);
+        return state;
+    }
+
+    private static double circuitStateValue(CircuitBreaker breaker) {
+        switch (breaker.getState()) {
+            case HALF_OPEN:
+                return 1;
+            case OPEN:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 每次尝试前的准入检查，不允许尝试时抛出异常
+     */
+    @FunctionalInterface
+    public interface AttemptGate {
+        void await();
+    }
+
+    /**
+     * 单个AI服务端点的保护状态
+     */
+    private final class Endpoint {
+        private final String name;
+        private final AdaptiveConcurrencyLimit limit;
+        private final CircuitBreaker breaker;
+
+        private Endpoint(String name, AdaptiveConcurrencyLimit limit, CircuitBreaker breaker) {
+            this.name = name;
+            this.limit = limit;
+            this.breaker = breaker;
+        }
+
+        private Counter retries(String reason) {
+            return Counter.builder("report.ai.retries")
+                    .description("AI调用重试次数")
+                    .tag("endpoint", name)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        private Counter rejected(String reason) {
+            return Counter.builder("report.ai.rejected")
+                    .description("被拒绝的AI调用数")
+                    .tag("endpoint", name)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,82 +1,159 @@
 package com.wechat.dailyreport.client;
 
-import com.openai.client.OpenAIClient;
+import com.openai.core.http.StreamResponse;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
-import com.wechat.dailyreport.config.AiConfig;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
+import com.openai.models.completions.CompletionUsage;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
 import com.wechat.dailyreport.dto.request.AIAnalysisRequest;
 import com.wechat.dailyreport.dto.response.AIAnalysisResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * AI服务客户端（使用 OpenAI Java SDK）
+ * <p>
+ * 调用由 {@link AIEndpointBalancer} 选择端点，并经过 {@link AIResilienceGuard}：按端点限制并发、失败重试和熔断。
  */
 @Component
 @Slf4j
 public class AIServiceClient {
 
     @Autowired
-    private AiConfig aiConfig;
+    private OpenAIClientPool openAIClientPool;
+
+    @Autowired
+    private AIEndpointBalancer endpointBalancer;
+
+    /**
+     * 是否至少有一个配置了API密钥的AI服务端点
+     *
+     * @param config AI服务配置
+     */
+    public boolean isConfigured(AIServiceConfig config) {
+        return !endpointBalancer.getEndpoints(config).isEmpty();
+    }
 
     /**
      * 调用AI分析接口
      *
-     * @param apiKey  API密钥
-     * @param baseUrl 基础URL
+     * @param config  AI服务配置
      * @param request AI分析请求
      * @return AI分析响应
      */
-    public AIAnalysisResponse analyze(String apiKey, String baseUrl, AIAnalysisRequest request) {
-        log.info("调用AI服务: {}", baseUrl);
-
-        try {
-            // 创建 OpenAI 客户端
-            OpenAIClient client = aiConfig.createOpenAIClient(apiKey, baseUrl);
-
-            // 构建请求参数
-            ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
-                    .model(request.getModel());
-
-            // 添加消息
-            for (AIAnalysisRequest.AIMessage message : request.getMessages()) {
-                switch (message.getRole().toLowerCase()) {
-                    case "system":
-                        paramsBuilder.addSystemMessage(message.getContent());
-                        break;
-                    case "user":
-                        paramsBuilder.addUserMessage(message.getContent());
-                        break;
-                    case "assistant":
-                        paramsBuilder.addAssistantMessage(message.getContent());
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Unsupported role: " + message.getRole());
-                }
-            }
+    public AIAnalysisResponse analyze(AIServiceConfig config, AIAnalysisRequest request) {
+        ChatCompletionCreateParams params = buildParams(request).build();
+        return endpointBalancer.execute(config, endpoint -> {
+            log.info("调用AI服务: endpoint={}, baseUrl={}", endpoint.getName(), endpoint.getBaseUrl());
 
-            // 设置可选参数
-            if (request.getTemperature() != null) {
-                paramsBuilder.temperature(request.getTemperature());
-            }
-            if (request.getMaxTokens() != null) {
-                paramsBuilder.maxTokens(request.getMaxTokens());
+            // 从客户端池租用 OpenAI 客户端，复用连接
+            try (OpenAIClientPool.Lease lease = openAIClientPool.acquire(endpoint.getApiKey(), endpoint.getBaseUrl(),
+                    endpoint.getTimeout())) {
+
+                // 发起请求
+                ChatCompletion chatCompletion = lease.client().chat().completions().create(params);
+
+                // 转换响应格式
+                return convertToAIAnalysisResponse(chatCompletion);
             }
+        }, true, () -> true);
+    }
 
-            // 发起请求
-            ChatCompletion chatCompletion = client.chat().completions().create(paramsBuilder.build());
+    /**
+     * 以流式方式调用AI分析接口，每收到一段生成内容即回调一次
+     *
+     * @param config  AI服务配置
+     * @param request AI分析请求
+     * @param onDelta 增量内容回调
+     * @return 汇总后的AI分析响应
+     */
+    public AIAnalysisResponse analyzeStreaming(AIServiceConfig config, AIAnalysisRequest request,
+                                               Consumer<String> onDelta) {
+        ChatCompletionCreateParams params = buildParams(request)
+                .streamOptions(ChatCompletionStreamOptions.builder().includeUsage(true).build())
+                .build();
+
+        // 已输出内容后不能重试，否则页面上会出现重复的内容
+        boolean[] emitted = new boolean[1];
+        // 已输出的内容无法撤回，流式调用不做对冲
+        return endpointBalancer.execute(config, endpoint -> {
+            log.info("流式调用AI服务: endpoint={}, baseUrl={}", endpoint.getName(), endpoint.getBaseUrl());
+
+            try (OpenAIClientPool.Lease lease = openAIClientPool.acquire(endpoint.getApiKey(), endpoint.getBaseUrl(),
+                    endpoint.getTimeout());
+                 StreamResponse<ChatCompletionChunk> stream = lease.client().chat().completions().createStreaming(params)) {
+
+                StringBuilder content = new StringBuilder();
+                AIAnalysisResponse response = new AIAnalysisResponse()
+                        .setObject("chat.completion")
+                        .setModel(request.getModel());
+                String[] finishReason = new String[1];
+
+                stream.stream().forEach(chunk -> {
+                    response.setId(chunk.id()).setCreated(chunk.created());
+                    chunk.usage().ifPresent(usage -> response.setUsage(convertUsage(usage)));
+                    for (ChatCompletionChunk.Choice choice : chunk.choices()) {
+                        choice.finishReason().ifPresent(reason -> finishReason[0] = reason.toString());
+                        choice.delta().content().filter(delta -> !delta.isEmpty()).ifPresent(delta -> {
+                            content.append(delta);
+                            emitted[0] = true;
+                            onDelta.accept(delta);
+                        });
+                    }
+                });
+
+                AIAnalysisResponse.AIMessage message = new AIAnalysisResponse.AIMessage()
+                        .setRole("assistant")
+                        .setContent(content.toString());
+                response.setChoices(Collections.singletonList(new AIAnalysisResponse.AIChoice()
+                        .setIndex(0)
+                        .setMessage(message)
+                        .setFinishReason(finishReason[0])));
+                return response;
+            }
+        }, false, () -> !emitted[0]);
+    }
 
-            // 转换响应格式
-            return convertToAIAnalysisResponse(chatCompletion);
+    /**
+     * 构建请求参数（包内可见，供基准测试使用）
+     */
+    ChatCompletionCreateParams.Builder buildParams(AIAnalysisRequest request) {
+        ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
+                .model(request.getModel());
+
+        // 添加消息
+        for (AIAnalysisRequest.AIMessage message : request.getMessages()) {
+            switch (message.getRole().toLowerCase()) {
+                case "system":
+                    paramsBuilder.addSystemMessage(message.getContent());
+                    break;
+                case "user":
+                    paramsBuilder.addUserMessage(message.getContent());
+                    break;
+                case "assistant":
+                    paramsBuilder.addAssistantMessage(message.getContent());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported role: " + message.getRole());
+            }
+        }
 
-        } catch (Exception e) {
-            log.error("调用AI服务失败: {}", e.getMessage(), e);
-            throw new RuntimeException("调用AI服务失败: " + e.getMessage());
+        // 设置可选参数
+        if (request.getTemperature() != null) {
+            paramsBuilder.temperature(request.getTemperature());
+        }
+        if (request.getMaxTokens() != null) {
+            paramsBuilder.maxTokens(request.getMaxTokens());
         }
+        return paramsBuilder;
     }
 
     /**
@@ -108,14 +185,19 @@ public class AIServiceClient {
 
         // 转换 usage
         if (chatCompletion.usage() != null && chatCompletion.usage().isPresent()) {
-            com.openai.models.completions.CompletionUsage usage = chatCompletion.usage().get();
-            AIAnalysisResponse.AIUsage aiUsage = new AIAnalysisResponse.AIUsage()
-                    .setPromptTokens((int) usage.promptTokens())
-                    .setCompletionTokens((int) usage.completionTokens())
-                    .setTotalTokens((int) usage.totalTokens());
-            response.setUsage(aiUsage);
+            response.setUsage(convertUsage(chatCompletion.usage().get()));
         }
 
         return response;
     }
+
+    /**
+     * 转换令牌用量
+     */
+    private static AIAnalysisResponse.AIUsage convertUsage(CompletionUsage usage) {
+        return new AIAnalysisResponse.AIUsage()
+                .setPromptTokens((int) usage.promptTokens())
+                .setCompletionTokens((int) usage.completionTokens())
+                .setTotalTokens((int) usage.totalTokens());
+    }
 }
\ No newline at end of file
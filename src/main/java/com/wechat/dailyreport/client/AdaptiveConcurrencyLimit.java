@@ -0,0 +1,93 @@
+package com.wechat.dailyreport.client;
+
+/**
+ * AIMD自适应并发上限
+ * <p>
+ * 调用成功且并发已接近上限时，上限每轮增加1（每次成功增加 1/上限）；
+ * 遇到限流、服务端错误或超时时，上限乘以退避系数。超过上限的调用排队等待，
+ * 上限下降时已在执行的调用不受影响，只是新的调用要等到并发降下来。
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    /**
+     * 当前上限，受this保护
+     */
+    private double limit;
+
+    private int inFlight;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * 获取一个执行许可，并发已达上限时等待
+     *
+     * @param timeoutMillis 最长等待时间(毫秒)
+     * @return 是否获取成功，超时返回false
+     */
+    synchronized boolean acquire(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inFlight >= getLimit()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 调用成功，归还许可并尝试提高上限
+     */
+    synchronized void onSuccess() {
+        // 并发远低于上限时说明负载不足，成功不代表还能承受更高的并发
+        if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        release();
+    }
+
+    /**
+     * 服务过载（限流、服务端错误、超时），归还许可并降低上限
+     */
+    synchronized void onOverload() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        release();
+    }
+
+    /**
+     * 与负载无关的失败（如请求参数错误），只归还许可
+     */
+    synchronized void onIgnore() {
+        release();
+    }
+
+    /**
+     * 当前并发上限
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 正在执行的调用数
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+}
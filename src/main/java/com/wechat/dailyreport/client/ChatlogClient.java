@@ -1,36 +1,63 @@
 package com.wechat.dailyreport.client;
 
-import com.alibaba.fastjson2.JSON;
 import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
 import com.wechat.dailyreport.service.ChatlogService.ChatSession;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Chatlog服务客户端
+ * <p>
+ * 每个实例对应一个Chatlog服务端点，创建后不可变，由 {@link ChatlogClientRouter} 按账号创建和选择。
  */
-@Component
 @Slf4j
-public class ChatlogClient {
+public class ChatlogClient implements Closeable {
     
-    @Autowired
-    private RestTemplate restTemplate;
+    private final String account;
     
-    private String baseUrl = "http://127.0.0.1:5030";
+    private final String baseUrl;
+    
+    private final ChatlogHttpClientFactory.PooledHttpClient httpClient;
+    
+    public ChatlogClient(String account, String baseUrl, ChatlogHttpClientFactory.PooledHttpClient httpClient) {
+        this.account = account;
+        this.baseUrl = baseUrl;
+        this.httpClient = httpClient;
+    }
     
     /**
-     * 设置基础URL
+     * 获取账号
      */
-    public void setBaseUrl(String baseUrl) {
-        this.baseUrl = baseUrl;
+    public String getAccount() {
+        return account;
+    }
+    
+    /**
+     * 获取基础URL
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+    
+    /**
+     * 关闭HTTP客户端
+     */
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+    
+    private RestTemplate restTemplate() {
+        return httpClient.getRestTemplate();
     }
     
     /**
@@ -41,10 +68,10 @@ public class ChatlogClient {
         // 处理空字符串或null参数
         String keyword = (niceName == null || niceName.trim().isEmpty()) ? "" : niceName.trim();
         String url = baseUrl + String.format("/api/v1/chatroom?format=json&keyword=%s", keyword);
-        log.info("调用Chatlog服务获取群聊会话: {}, keyword: {}", url, keyword);
+        log.info("调用Chatlog服务获取群聊会话: account={}, url={}, keyword: {}", account, url, keyword);
         
         try {
-            ResponseEntity<Map<String, List<ChatSession>>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, List<ChatSession>>> response = restTemplate().exchange(
                     url,
                     HttpMethod.GET,
                     null ,
@@ -69,7 +96,7 @@ public class ChatlogClient {
         log.info("调用Chatlog服务获取聊天消息: {}", url);
         
         try {
-            ResponseEntity<List<ChatMessage>> response = restTemplate.exchange(
+            ResponseEntity<List<ChatMessage>> response = restTemplate().exchange(
                     url,
                     HttpMethod.GET,
                     null,
@@ -84,28 +111,32 @@ public class ChatlogClient {
     }
     
     /**
-     * 获取指定日期范围内的聊天消息记录
+     * 获取指定日期范围内的文本聊天消息记录
+     * 响应以流式方式解析，解析时即过滤掉非文本消息和范围外的消息
      *
-     * @param niceName  聊天ID
-     * @param time 开始日期，格式为 yyyy-MM-dd
-     * @param format   结束日期，格式为 yyyy-MM-dd
-     * @return 聊天消息列表
+     * @param talker    聊天对象（群聊名称或ID）
+     * @param startDate 开始日期（含）
+     * @param endDate   结束日期（含）
+     * @return 文本聊天消息列表
      */
-    public List<ChatMessage> getChatMessagesRange(String niceName, String time, String format) {
-        String url = baseUrl + String.format("/api/v1/chatlog?talker=%s&time=%s&format=%s", niceName, time, format);
-        log.info("调用Chatlog服务获取日期范围消息: {}", url);
+    public List<ChatMessage> getChatMessagesRange(String talker, LocalDate startDate, LocalDate endDate) {
+        String url = baseUrl + String.format("/api/v1/chatlog?talker=%s&time=%s~%s&format=json", talker, startDate, endDate);
+        log.info("调用Chatlog服务获取日期范围消息: account={}, url={}", account, url);
         
         try {
-            ResponseEntity<List<ChatMessage>> response = restTemplate.exchange(
+            ChatlogMessageStreamParser parser = new ChatlogMessageStreamParser(startDate, endDate);
+            List<ChatMessage> messages = restTemplate().execute(
                     url,
                     HttpMethod.GET,
                     null,
-                    new ParameterizedTypeReference<List<ChatMessage>>() {}
+                    response -> parser.parse(response.getBody())
             );
-            return response.getBody();
+            log.info("Chatlog消息解析完成: 总消息数={}, 文本消息数={}", parser.getTotalCount(),
+                    messages != null ? messages.size() : 0);
+            return messages != null ? messages : Collections.emptyList();
         } catch (Exception e) {
             log.error("获取日期范围消息失败: {}", e.getMessage(), e);
             throw new RuntimeException("获取日期范围消息失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package com.wechat.dailyreport.client;
+
+import com.wechat.dailyreport.config.ChatlogAccountProperties;
+import com.wechat.dailyreport.dto.config.ChatlogServiceConfig;
+import com.wechat.dailyreport.event.ChatlogConfigChangedEvent;
+import com.wechat.dailyreport.service.ChatlogConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chatlog客户端路由
+ * <p>
+ * 为每个账号持有一个不可变的池化 {@link ChatlogClient}，请求时按账号选择。
+ * 默认账号跟随Chatlog服务配置，配置变更时整体替换客户端，旧客户端在超时时间过后关闭，不影响进行中的请求。
+ */
+@Component
+@Slf4j
+public class ChatlogClientRouter {
+
+    /**
+     * 默认账号
+     */
+    public static final String DEFAULT_ACCOUNT = "default";
+
+    @Autowired
+    private ChatlogHttpClientFactory httpClientFactory;
+
+    @Autowired
+    private ChatlogConfigService chatlogConfigService;
+
+    @Autowired
+    private ChatlogAccountProperties accountProperties;
+
+    private final Map<String, ChatlogClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 用于延迟关闭被替换的客户端
+     */
+    private final ScheduledExecutorService closeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chatlog-http-closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 按配置创建各账号的客户端
+     */
+    @PostConstruct
+    public void init() {
+        clients.put(DEFAULT_ACCOUNT, createClient(DEFAULT_ACCOUNT, chatlogConfigService.getChatlogConfig()));
+        accountProperties.getAccounts().forEach((account, config) -> {
+            if (!DEFAULT_ACCOUNT.equals(account)) {
+                clients.put(account, createClient(account, withDefaults(config)));
+            }
+        });
+        log.info("Chatlog客户端路由初始化完成: 账号={}", getAccounts());
+    }
+
+    /**
+     * 默认账号的Chatlog配置变更时替换客户端
+     */
+    @EventListener
+    public void onChatlogConfigChanged(ChatlogConfigChangedEvent event) {
+        ChatlogServiceConfig config = event.getConfig();
+        ChatlogClient previous = clients.put(DEFAULT_ACCOUNT, createClient(DEFAULT_ACCOUNT, config));
+        if (previous != null) {
+            closeScheduler.schedule(previous::close, config.getTimeout() + 5000L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 关闭所有客户端
+     */
+    @PreDestroy
+    public void close() {
+        closeScheduler.shutdownNow();
+        clients.values().forEach(ChatlogClient::close);
+        clients.clear();
+    }
+
+    /**
+     * 选择账号对应的客户端
+     *
+     * @param account 账号，为空时使用默认账号
+     * @return Chatlog客户端
+     */
+    public ChatlogClient route(String account) {
+        String key = normalizeAccount(account);
+        ChatlogClient client = clients.get(key);
+        if (client == null) {
+            throw new RuntimeException("未配置的Chatlog账号: " + key);
+        }
+        return client;
+    }
+
+    /**
+     * 获取账号当前的数据源标识（服务地址的摘要）
+     * <p>
+     * 默认账号的服务地址可以在运行时修改，按账号缓存的消息、报告和结构化结果需带上数据源标识，
+     * 修改地址后不会复用其他Chatlog服务的数据。
+     *
+     * @param account 账号，为空时使用默认账号
+     * @return 数据源标识
+     */
+    public String sourceOf(String account) {
+        return sourceOf(route(account));
+    }
+
+    /**
+     * 获取客户端的数据源标识
+     */
+    public static String sourceOf(ChatlogClient client) {
+        String baseUrl = String.valueOf(client.getBaseUrl());
+        return DigestUtils.md5DigestAsHex(baseUrl.getBytes(StandardCharsets.UTF_8)).substring(0, 12);
+    }
+
+    /**
+     * 获取所有账号，默认账号排在最前
+     */
+    public List<String> getAccounts() {
+        List<String> accounts = new ArrayList<>();
+        accounts.add(DEFAULT_ACCOUNT);
+        accountProperties.getAccounts().keySet().stream()
+                .filter(account -> !DEFAULT_ACCOUNT.equals(account))
+                .forEach(accounts::add);
+        return accounts;
+    }
+
+    /**
+     * 归一化账号名称，空值视为默认账号
+     */
+    public static String normalizeAccount(String account) {
+        return account == null || account.trim().isEmpty() ? DEFAULT_ACCOUNT : account.trim();
+    }
+
+    private ChatlogClient createClient(String account, ChatlogServiceConfig config) {
+        log.info("创建Chatlog客户端: account={}, baseUrl={}", account, config.getBaseUrl());
+        return new ChatlogClient(account, config.getBaseUrl(), httpClientFactory.create(config.getTimeout()));
+    }
+
+    /**
+     * 未配置超时时间的账号沿用默认账号的超时时间
+     */
+    private ChatlogServiceConfig withDefaults(ChatlogServiceConfig config) {
+        return new ChatlogServiceConfig()
+                .setBaseUrl(config.getBaseUrl())
+                .setTimeout(config.getTimeout() != null ? config.getTimeout() : chatlogConfigService.getChatlogConfig().getTimeout());
+    }
+}
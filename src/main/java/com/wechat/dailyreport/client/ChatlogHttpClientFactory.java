@@ -0,0 +1,97 @@
+package com.wechat.dailyreport.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chatlog服务HTTP客户端工厂
+ * 创建带连接池、长连接和响应压缩的RestTemplate
+ */
+@Component
+@Slf4j
+public class ChatlogHttpClientFactory {
+
+    @Value("${app.chatlog.http.max-total:20}")
+    private int maxTotal;
+
+    @Value("${app.chatlog.http.max-per-route:10}")
+    private int maxPerRoute;
+
+    @Value("${app.chatlog.http.keep-alive-ms:30000}")
+    private long keepAliveMillis;
+
+    @Value("${app.chatlog.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMillis;
+
+    /**
+     * 创建池化HTTP客户端
+     *
+     * @param timeoutMillis 读取超时时间(毫秒)，同时作为从连接池获取连接的超时时间
+     * @return 池化HTTP客户端
+     */
+    public PooledHttpClient create(int timeoutMillis) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Math.min(connectTimeoutMillis, timeoutMillis))
+                .setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .build();
+
+        // HttpClient默认发送 Accept-Encoding: gzip,deflate 并自动解压响应
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        log.info("创建Chatlog HTTP客户端: timeout={}ms, maxTotal={}, maxPerRoute={}", timeoutMillis, maxTotal, maxPerRoute);
+        return new PooledHttpClient(httpClient, new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient)));
+    }
+
+    /**
+     * 池化HTTP客户端，关闭时释放连接池
+     */
+    public static class PooledHttpClient implements Closeable {
+        private final CloseableHttpClient httpClient;
+        private final RestTemplate restTemplate;
+
+        PooledHttpClient(CloseableHttpClient httpClient, RestTemplate restTemplate) {
+            this.httpClient = httpClient;
+            this.restTemplate = restTemplate;
+        }
+
+        public RestTemplate getRestTemplate() {
+            return restTemplate;
+        }
+
+        @Override
+        public void close() {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("关闭Chatlog HTTP客户端失败: {}", e.getMessage());
+            }
+        }
+    }
+}
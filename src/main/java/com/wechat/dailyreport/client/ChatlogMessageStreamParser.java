@@ -0,0 +1,188 @@
+package com.wechat.dailyreport.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.wechat.dailyreport.constant.AppConstants;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chatlog消息流式解析器
+ * <p>
+ * 使用Jackson逐个token解析 /api/v1/chatlog 的响应，在解析过程中只保留日期范围内的文本消息，
+ * 图片、语音、系统消息等直接跳过，不创建中间对象；发送者字符串在单次解析内去重共享。
+ */
+@Slf4j
+public class ChatlogMessageStreamParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    /**
+     * 单次解析内的字符串去重表，同一发送者的ID和昵称共享同一个实例
+     */
+    private final Map<String, String> stringTable = new HashMap<>();
+
+    private int totalCount;
+
+    /**
+     * @param startDate 开始日期（含），为null时不限制
+     * @param endDate   结束日期（含），为null时不限制
+     */
+    public ChatlogMessageStreamParser(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * 解析消息流，兼容顶层数组和 {"items": [...]} 两种格式
+     *
+     * @param inputStream 响应输入流
+     * @return 过滤后的文本消息列表
+     */
+    public List<ChatMessage> parse(InputStream inputStream) throws IOException {
+        List<ChatMessage> messages = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = seekItemsArray(parser);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                return messages;
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                totalCount++;
+                ChatMessage message = readMessage(parser);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+
+        log.debug("流式解析Chatlog消息完成: 总消息数={}, 保留文本消息数={}", totalCount, messages.size());
+        return messages;
+    }
+
+    /**
+     * 获取解析过的消息总数（含被过滤的消息）
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 在顶层对象中定位 items 数组
+     */
+    private static JsonToken seekItemsArray(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                return value;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    /**
+     * 读取单条消息，不满足条件时返回null
+     */
+    private ChatMessage readMessage(JsonParser parser) throws IOException {
+        Long seq = null;
+        String time = null;
+        Boolean isChatRoom = null;
+        String sender = null;
+        String senderName = null;
+        Integer type = null;
+        Integer subType = null;
+        String content = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "seq":
+                    seq = parser.getLongValue();
+                    break;
+                case "time":
+                    time = parser.getText();
+                    break;
+                case "isChatRoom":
+                    isChatRoom = parser.getBooleanValue();
+                    break;
+                case "sender":
+                    sender = parser.getText();
+                    break;
+                case "senderName":
+                    senderName = parser.getText();
+                    break;
+                case "type":
+                    type = parser.getIntValue();
+                    break;
+                case "subType":
+                    subType = parser.getIntValue();
+                    break;
+                case "content":
+                    // 非文本消息的内容无需保留
+                    if (type == null || isTextType(type)) {
+                        content = parser.getText();
+                    }
+                    break;
+                default:
+                    // talker、contents等字段不参与分析，直接跳过
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (type == null || !isTextType(type) || time == null || content == null || content.trim().isEmpty()) {
+            return null;
+        }
+
+        OffsetDateTime messageTime = OffsetDateTime.parse(time);
+        LocalDate messageDate = messageTime.toLocalDate();
+        if ((startDate != null && messageDate.isBefore(startDate)) || (endDate != null && messageDate.isAfter(endDate))) {
+            return null;
+        }
+
+        ChatMessage message = new ChatMessage();
+        message.setSeq(seq);
+        message.setTime(messageTime);
+        message.setIsChatRoom(isChatRoom);
+        message.setSender(share(sender));
+        message.setSenderName(share(senderName));
+        message.setType(type);
+        message.setSubType(subType);
+        message.setContent(content);
+        return message;
+    }
+
+    private static boolean isTextType(int type) {
+        return AppConstants.MessageType.Type.TEXT.getCode() == type;
+    }
+
+    private String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = stringTable.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+}
@@ -0,0 +1,97 @@
+package com.wechat.dailyreport.client;
+
+/**
+ * 熔断器
+ * <p>
+ * 连续失败达到阈值后打开，打开期间直接拒绝调用；超过打开时长后进入半开状态，
+ * 只放行一次试探调用，成功则关闭，失败则重新打开。
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+
+    /**
+     * 以下状态受this保护
+     */
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long openDurationMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * 是否允许本次调用，允许后必须调用 {@link #onSuccess()} 或 {@link #onFailure()}
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+            state = State.HALF_OPEN;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 当前是否会放行调用（不占用半开状态的试探名额）
+     */
+    synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                return !trialInFlight;
+            default:
+                return System.currentTimeMillis() - openedAt >= openDurationMillis;
+        }
+    }
+
+    /**
+     * 服务可用（包括调用成功和与服务状态无关的失败）
+     */
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * 服务故障
+     */
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        trialInFlight = false;
+    }
+
+    /**
+     * 调用未完成（未发出或被取消），不改变状态，只释放半开状态的试探名额
+     */
+    synchronized void onIgnore() {
+        trialInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
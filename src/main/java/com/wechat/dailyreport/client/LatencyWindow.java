@@ -0,0 +1,55 @@
+package com.wechat.dailyreport.client;
+
+import java.util.Arrays;
+
+/**
+ * 最近若干次调用耗时的滑动窗口，用于计算分位数
+ */
+final class LatencyWindow {
+
+    private final long[] samples;
+
+    /**
+     * 以下状态受this保护
+     */
+    private int next;
+    private int count;
+
+    LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    /**
+     * 记录一次调用耗时
+     */
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * 样本数
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 计算分位数，没有样本时返回-1
+     *
+     * @param quantile 分位（0-1）
+     */
+    long quantile(double quantile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.min(sorted.length - 1, Math.max(0, index))];
+    }
+}
@@ -0,0 +1,202 @@
+package com.wechat.dailyreport.client;
+
+import com.openai.client.OpenAIClient;
+import com.wechat.dailyreport.config.AIEndpointProperties;
+import com.wechat.dailyreport.config.AiConfig;
+import com.wechat.dailyreport.dto.config.AIEndpointConfig;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import com.wechat.dailyreport.dto.response.OpenAIClientPoolStats;
+import com.wechat.dailyreport.event.AIConfigChangedEvent;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI客户端池
+ * <p>
+ * 按 (apiKey, baseUrl, timeout) 缓存客户端，复用底层连接池和TLS会话。
+ * 配置变更时淘汰不再使用的客户端，并在其最后一个租约归还后关闭。
+ */
+@Component
+@Slf4j
+public class OpenAIClientPool {
+
+    @Autowired
+    private AiConfig aiConfig;
+
+    @Autowired
+    private AIEndpointProperties endpointProperties;
+
+    private final Map<ClientKey, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeLeases = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 租用客户端，使用完毕后必须关闭租约
+     *
+     * @param apiKey        API密钥
+     * @param baseUrl       基础URL
+     * @param timeoutMillis 超时时间(毫秒)
+     * @return 客户端租约
+     */
+    public Lease acquire(String apiKey, String baseUrl, Integer timeoutMillis) {
+        ClientKey key = new ClientKey(apiKey, baseUrl, timeoutMillis);
+        while (true) {
+            boolean[] created = new boolean[1];
+            PooledClient pooled = clients.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return new PooledClient(k, aiConfig.createOpenAIClient(k.apiKey, k.baseUrl, timeoutOf(k)));
+            });
+
+            if (pooled.tryLease()) {
+                (created[0] ? misses : hits).incrementAndGet();
+                activeLeases.incrementAndGet();
+                return new Lease(pooled);
+            }
+            // 客户端已被淘汰，移除后重新创建
+            clients.remove(key, pooled);
+        }
+    }
+
+    /**
+     * 淘汰所有与当前配置（默认端点和额外端点）不一致的客户端
+     */
+    @EventListener
+    public void onAIConfigChanged(AIConfigChangedEvent event) {
+        AIServiceConfig config = event.getConfig();
+        Set<ClientKey> currentKeys = new HashSet<>();
+        currentKeys.add(new ClientKey(config.getApiKey(), config.getBaseUrl(), config.getTimeout()));
+        for (AIEndpointConfig endpoint : endpointProperties.getEndpoints()) {
+            currentKeys.add(new ClientKey(endpoint.getApiKey(), endpoint.getBaseUrl(),
+                    endpoint.getTimeout() != null ? endpoint.getTimeout() : config.getTimeout()));
+        }
+        clients.forEach((key, pooled) -> {
+            if (!currentKeys.contains(key) && clients.remove(key, pooled)) {
+                evictions.incrementAndGet();
+                pooled.retire();
+            }
+        });
+        log.info("AI服务配置已变更，淘汰旧客户端后池中客户端数量: {}", clients.size());
+    }
+
+    /**
+     * 获取客户端池统计信息
+     */
+    public OpenAIClientPoolStats getStats() {
+        return new OpenAIClientPoolStats()
+                .setPoolSize(clients.size())
+                .setActiveLeases(activeLeases.get())
+                .setHits(hits.get())
+                .setMisses(misses.get())
+                .setEvictions(evictions.get());
+    }
+
+    /**
+     * 关闭所有客户端
+     */
+    @PreDestroy
+    public void close() {
+        clients.forEach((key, pooled) -> pooled.retire());
+        clients.clear();
+    }
+
+    private static Duration timeoutOf(ClientKey key) {
+        return key.timeoutMillis != null && key.timeoutMillis > 0 ? Duration.ofMillis(key.timeoutMillis) : null;
+    }
+
+    /**
+     * 客户端缓存键
+     */
+    @Value
+    private static class ClientKey {
+        String apiKey;
+        String baseUrl;
+        Integer timeoutMillis;
+    }
+
+    /**
+     * 带租约计数的池化客户端
+     */
+    private static class PooledClient {
+        private final ClientKey key;
+        private final OpenAIClient client;
+        private int leases;
+        private boolean retired;
+
+        PooledClient(ClientKey key, OpenAIClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        synchronized boolean tryLease() {
+            if (retired) {
+                return false;
+            }
+            leases++;
+            return true;
+        }
+
+        synchronized void release() {
+            leases--;
+            closeIfIdle();
+        }
+
+        synchronized void retire() {
+            retired = true;
+            closeIfIdle();
+        }
+
+        private void closeIfIdle() {
+            if (retired && leases == 0) {
+                try {
+                    client.close();
+                    log.info("已关闭OpenAI客户端: baseUrl={}", key.baseUrl);
+                } catch (Exception e) {
+                    log.warn("关闭OpenAI客户端失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 客户端租约
+     */
+    public class Lease implements AutoCloseable {
+        private final PooledClient pooled;
+        private boolean released;
+
+        private Lease(PooledClient pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * 获取租用的客户端
+         */
+        public OpenAIClient client() {
+            return pooled.client;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                activeLeases.decrementAndGet();
+                pooled.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.wechat.dailyreport.client;
+
+/**
+ * 请求速率令牌桶
+ * <p>
+ * 令牌按每分钟请求数匀速补充，最多积累到突发容量；每次请求消耗一个令牌。每分钟请求数不大于0时不限速。
+ */
+final class TokenBucket {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    /**
+     * 以下状态受this保护
+     */
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(int requestsPerMinute, int burst) {
+        this.tokensPerNano = requestsPerMinute > 0 ? (double) requestsPerMinute / NANOS_PER_MINUTE : 0;
+        this.capacity = burst > 0 ? burst : Math.max(1, requestsPerMinute);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * 是否不限速
+     */
+    boolean isUnlimited() {
+        return tokensPerNano == 0;
+    }
+
+    /**
+     * 距离下一个可用令牌的等待时间(毫秒)，有可用令牌时返回0
+     */
+    synchronized long waitMillis() {
+        if (isUnlimited()) {
+            return 0;
+        }
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano / 1_000_000);
+    }
+
+    /**
+     * 有可用令牌时立即消耗一个
+     */
+    synchronized boolean tryAcquire() {
+        if (isUnlimited()) {
+            return true;
+        }
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * 消耗一个令牌，没有可用令牌时等待补充
+     *
+     * @param timeoutMillis 最长等待时间(毫秒)
+     * @return 是否获取成功，超时返回false
+     */
+    boolean acquire(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!tryAcquire()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.max(1, Math.min(waitMillis(), remaining)));
+        }
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,26 @@
+package com.wechat.dailyreport.config;
+
+import com.wechat.dailyreport.dto.config.AIEndpointConfig;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AI服务多端点配置
+ * <p>
+ * 页面上配置的AI服务作为默认端点，这里配置的端点（其他服务商副本或其他API密钥）与默认端点一起分担请求，
+ * 需要使用同一个模型名称。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ai")
+public class AIEndpointProperties {
+
+    /**
+     * 额外的AI服务端点
+     */
+    private List<AIEndpointConfig> endpoints = new ArrayList<>();
+}
@@ -4,6 +4,8 @@ import com.openai.client.OpenAIClient;
 import com.openai.client.okhttp.OpenAIOkHttpClient;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * AI 配置类
  */
@@ -13,12 +15,19 @@ public class AiConfig {
     /**
      * 创建 OpenAI 客户端
      * 注意：这个Bean不能直接使用，因为需要动态配置
-     * 实际使用时在 AIServiceClient 中动态创建
+     * 实际使用时由 OpenAIClientPool 按配置创建并缓存
+     *
+     * @param timeout 请求超时时间，为null时使用SDK默认值
      */
-    public OpenAIClient createOpenAIClient(String apiKey, String baseUrl) {
-        return OpenAIOkHttpClient.builder()
+    public OpenAIClient createOpenAIClient(String apiKey, String baseUrl, Duration timeout) {
+        OpenAIOkHttpClient.Builder builder = OpenAIOkHttpClient.builder()
                 .apiKey(apiKey)
                 .baseUrl(baseUrl)
-                .build();
+                // 重试由 AIResilienceGuard 统一处理，关闭SDK内置的重试，避免重试次数叠加
+                .maxRetries(0);
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        return builder.build();
     }
 }
@@ -0,0 +1,25 @@
+package com.wechat.dailyreport.config;
+
+import com.wechat.dailyreport.dto.config.ChatlogServiceConfig;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Chatlog多账号配置
+ * <p>
+ * 每个微信账号对应一个独立的Chatlog服务端点，默认账号使用页面上可修改的Chatlog服务配置。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.chatlog")
+public class ChatlogAccountProperties {
+
+    /**
+     * 账号名称到Chatlog服务配置的映射
+     */
+    private Map<String, ChatlogServiceConfig> accounts = new LinkedHashMap<>();
+}
@@ -0,0 +1,45 @@
+package com.wechat.dailyreport.config;
+
+import com.wechat.dailyreport.dto.config.WatchListEntry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 定时报告配置
+ * <p>
+ * 关注列表中的群聊在夜间按cron表达式自动分析，报告写入报告存储，第二天提交相同的分析时直接返回。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.schedule")
+public class ScheduledReportProperties {
+
+    /**
+     * 是否启用定时报告
+     */
+    private boolean enabled = true;
+
+    /**
+     * 未指定cron表达式的条目的执行时间，默认每天02:30
+     */
+    private String defaultCron = "0 30 2 * * *";
+
+    /**
+     * 同时执行的定时分析数
+     */
+    private int parallelism = 1;
+
+    /**
+     * cron表达式和日期范围使用的时区，为空时使用系统时区
+     */
+    private String zone;
+
+    /**
+     * 关注列表
+     */
+    private List<WatchListEntry> watchList = new ArrayList<>();
+}
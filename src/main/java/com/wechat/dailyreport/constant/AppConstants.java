@@ -26,6 +26,19 @@ public interface AppConstants {
         String FAILED = "FAILED";
     }
     
+    /**
+     * 报告处理阶段常量
+     */
+    interface ReportStage {
+        String QUEUED = "QUEUED";
+        String FETCHING = "FETCHING";
+        String PREPROCESSING = "PREPROCESSING";
+        String STRUCTURING = "STRUCTURING";
+        String GENERATING = "GENERATING";
+        String SAVING = "SAVING";
+        String DONE = "DONE";
+    }
+    
     /**
      * 聊天类型常量
      */
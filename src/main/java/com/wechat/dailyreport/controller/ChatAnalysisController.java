@@ -1,30 +1,52 @@
 package com.wechat.dailyreport.controller;
 
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.AnalysisJobStatus;
+import com.wechat.dailyreport.dto.response.GroupSuggestion;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.repository.RenderedReportStore;
+import com.wechat.dailyreport.repository.RenderedReportStore.RenderedReport;
 import com.wechat.dailyreport.service.ChatAnalysisService;
 import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
 import com.wechat.dailyreport.service.ChatlogService;
-import com.wechat.dailyreport.service.ChatlogService.ChatSession;
+import com.wechat.dailyreport.service.GroupDirectoryService;
+import com.wechat.dailyreport.service.ReportStreamService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
-
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
 /**
  * 聊天分析Controller
@@ -40,6 +62,21 @@ public class ChatAnalysisController {
     @Autowired
     private ChatlogService chatlogService;
 
+    @Autowired
+    private GroupDirectoryService groupDirectoryService;
+
+    @Autowired
+    private ChatlogClientRouter chatlogClientRouter;
+
+    @Autowired
+    private ReportStreamService reportStreamService;
+
+    @Autowired
+    private RenderedReportStore renderedReportStore;
+
+    @Autowired
+    private ITemplateEngine templateEngine;
+
     /**
      * 分析页面
      */
@@ -60,6 +97,7 @@ public class ChatAnalysisController {
             LocalDate oneWeekAgo = today.minusDays(7);
             model.addAttribute("defaultStartDate", oneWeekAgo.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
             model.addAttribute("defaultEndDate", today.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+            model.addAttribute("accounts", chatlogClientRouter.getAccounts());
 
         } catch (Exception e) {
             log.error("获取聊天会话列表失败", e);
@@ -70,15 +108,16 @@ public class ChatAnalysisController {
     }
 
     /**
-     * 根据群聊名称搜索群聊会话
+     * 根据群聊名称搜索群聊会话（从内存中的群聊目录检索，支持拼音首字母）
      */
     @GetMapping("/search-groups")
     @ResponseBody
-    public ResponseEntity<List<ChatSession>> searchGroupChats(@RequestParam("name") String groupName) {
-        log.info("搜索群聊: groupName={}", groupName);
+    public ResponseEntity<List<GroupSuggestion>> searchGroupChats(@RequestParam("name") String groupName,
+                                                                  @RequestParam(value = "account", required = false) String account) {
+        log.info("搜索群聊: account={}, groupName={}", account, groupName);
 
         try {
-            List<ChatSession> groups = chatlogService.searchGroupChatsByName(groupName);
+            List<GroupSuggestion> groups = groupDirectoryService.search(account, groupName);
             return ResponseEntity.ok(groups);
         } catch (Exception e) {
             log.error("搜索群聊失败", e);
@@ -96,10 +135,11 @@ public class ChatAnalysisController {
                               @RequestParam(value = "privateChatId", required = false) String privateChatId,
                               @RequestParam("startDate") String startDate,
                               @RequestParam("endDate") String endDate,
+                              @RequestParam(value = "account", required = false) String account,
                               RedirectAttributes redirectAttributes) {
 
-        log.info("开始分析聊天: type={}, groupId={}, privateId={}, startDate={}, endDate={}",
-                analysisType, niceName, privateChatId, startDate, endDate);
+        log.info("开始分析聊天: account={}, type={}, groupId={}, privateId={}, startDate={}, endDate={}",
+                account, analysisType, niceName, privateChatId, startDate, endDate);
 
         String chatTarget = null;
 
@@ -131,8 +171,8 @@ public class ChatAnalysisController {
                 return "redirect:/chat-analysis/";
             }
 
-            // 执行分析逻辑
-            AnalysisReport report = chatAnalysisService.analyzeChatRange(chatTarget, startDate, endDate);
+            // 提交异步分析任务，立即跳转到报告页（处理中时显示进度页面）
+            AnalysisReport report = chatAnalysisService.submitAnalysisRange(account, chatTarget, startDate, endDate);
             return "redirect:/chat-analysis/report/" + report.getReportId();
         } catch (Exception e) {
             log.error("聊天分析失败", e);
@@ -143,12 +183,21 @@ public class ChatAnalysisController {
 
     /**
      * 查看分析报告
+     * <p>
+     * 已完成的报告只渲染一次，之后直接返回保存的gzip页面，带强ETag和长期缓存头，
+     * 浏览器携带匹配的 If-None-Match 时返回304。直接写出响应时返回null。
      */
     @GetMapping("/report/{reportId}")
-    public String viewReport(@PathVariable("reportId") String reportId, Model model) {
+    public String viewReport(@PathVariable("reportId") String reportId, Model model,
+                             HttpServletRequest request, HttpServletResponse response) {
         log.info("查看分析报告: reportId={}", reportId);
 
         try {
+            // 已渲染的报告先校验ETag，命中时不读取报告内容
+            if (renderedReportStore.isEnabled() && serveRendered(reportId, null, request, response)) {
+                return null;
+            }
+
             AnalysisReport report = chatAnalysisService.getAnalysisReport(reportId);
 
             if (report == null) {
@@ -163,41 +212,170 @@ public class ChatAnalysisController {
                 return "processing";
             }
 
+            if (renderedReportStore.isEnabled() && "COMPLETED".equals(report.getStatus())) {
+                RenderedReport rendered = renderedReportStore.put(report.getReportId(),
+                        renderReport(report, request, response));
+                serveRendered(reportId, rendered, request, response);
+                return null;
+            }
+
             return "report";
 
         } catch (Exception e) {
             log.error("获取分析报告失败: reportId={}", reportId, e);
+            // 已渲染页面开始写出后无法再返回错误页面
+            if (response.isCommitted()) {
+                return null;
+            }
             model.addAttribute("error", "获取报告失败: " + e.getMessage());
             return "error";
         }
     }
 
     /**
-     * 分析历史记录
+     * 返回已渲染的报告页面：浏览器支持gzip时直接返回压缩内容，否则解压后返回
+     *
+     * @param rendered 已渲染报告，为null时从存储读取
+     * @return 已写出响应时返回true，报告尚未渲染时返回false
+     */
+    private boolean serveRendered(String reportId, RenderedReport rendered, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        String etag = rendered != null ? rendered.getEtag() : renderedReportStore.getEtag(reportId);
+        if (etag == null) {
+            return false;
+        }
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // 不同内容编码使用不同的强ETag
+        if (new ServletWebRequest(request, response).checkNotModified("\"" + etag + (gzip ? "-gz" : "") + "\"")) {
+            return true;
+        }
+
+        RenderedReport page = rendered != null ? rendered : renderedReportStore.get(reportId);
+        if (page == null) {
+            return false;
+        }
+        response.setContentType(MediaType.TEXT_HTML_VALUE + ";charset=UTF-8");
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.setContentLength(page.getGzip().length);
+            out.write(page.getGzip());
+        } else {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page.getGzip()))) {
+                StreamUtils.copy(in, out);
+            }
+        }
+        out.flush();
+        return true;
+    }
+
+    /**
+     * 按 Accept-Encoding 的q值判断是否接受gzip：显式列出的gzip优先于通配符，q=0表示不接受
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double wildcardQuality = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.length() > 2 && param.substring(0, 2).equalsIgnoreCase("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                gzipQuality = gzipQuality != null ? Math.max(gzipQuality, quality) : quality;
+            } else if ("*".equals(coding)) {
+                wildcardQuality = quality;
+            }
+        }
+        Double quality = gzipQuality != null ? gzipQuality : wildcardQuality;
+        return quality != null && quality > 0;
+    }
+
+    /**
+     * 使用报告页面模板渲染已完成的报告
+     */
+    private String renderReport(AnalysisReport report, HttpServletRequest request, HttpServletResponse response) {
+        WebContext context = new WebContext(request, response, request.getServletContext(), request.getLocale(),
+                Collections.singletonMap("report", report));
+        return templateEngine.process("report", context);
+    }
+
+    /**
+     * 查询分析任务状态
+     */
+    @GetMapping("/job-status/{reportId}")
+    @ResponseBody
+    public ResponseEntity<AnalysisJobStatus> jobStatus(@PathVariable("reportId") String reportId) {
+        AnalysisJobStatus jobStatus = chatAnalysisService.getJobStatus(reportId);
+        if (jobStatus == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(jobStatus);
+    }
+
+    /**
+     * 以SSE方式推送正在生成的报告内容
+     */
+    @GetMapping(value = "/report-stream/{reportId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter reportStream(@PathVariable("reportId") String reportId) {
+        SseEmitter emitter = reportStreamService.subscribe(reportId);
+
+        // 订阅前报告可能已经结束，此时直接通知浏览器刷新页面
+        AnalysisReport report = chatAnalysisService.getAnalysisReport(reportId);
+        if (report == null) {
+            reportStreamService.fail(reportId, "报告不存在");
+        } else if ("COMPLETED".equals(report.getStatus())) {
+            reportStreamService.complete(reportId);
+        } else if ("FAILED".equals(report.getStatus())) {
+            reportStreamService.fail(reportId, report.getFinalReport());
+        }
+        return emitter;
+    }
+
+    /**
+     * 分析历史记录（可按聊天、状态和创建日期过滤）
      */
     @GetMapping("/history")
     public String analysisHistory(@RequestParam(value = "page", defaultValue = "1") int page,
                                   @RequestParam(value = "size", defaultValue = "10") int size,
+                                  @RequestParam(value = "chatId", required = false) String chatId,
+                                  @RequestParam(value = "status", required = false) String status,
+                                  @RequestParam(value = "from", required = false)
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                  @RequestParam(value = "to", required = false)
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
                                   Model model) {
 
-        log.info("查看分析历史: page={}, size={}", page, size);
+        log.info("查看分析历史: page={}, size={}, chatId={}, status={}, from={}, to={}",
+                page, size, chatId, status, from, to);
 
         try {
-            Map<String, AnalysisReport> allReports = chatAnalysisService.getAnalysisHistory();
-            List<AnalysisReport> reportList = new ArrayList<>(allReports.values());
-
-            // 简单分页处理
-            int total = reportList.size();
-            int start = Math.max(0, (page - 1) * size);
-            int end = Math.min(total, start + size);
-
-            List<AnalysisReport> pageReports = start < total ? reportList.subList(start, end) : new ArrayList<>();
-
-            model.addAttribute("reports", pageReports);
-            model.addAttribute("currentPage", page);
-            model.addAttribute("pageSize", size);
-            model.addAttribute("totalPages", (total + size - 1) / size);
-            model.addAttribute("totalElements", total);
+            ReportHistoryQuery query = new ReportHistoryQuery()
+                    .setChatId(StringUtils.trimToNull(chatId))
+                    .setStatus(StringUtils.trimToNull(status))
+                    .setCreatedFrom(from)
+                    .setCreatedTo(to);
+            PageResult<ReportSummary> reportPage = chatAnalysisService.getAnalysisHistory(query, page,
+                    Math.min(Math.max(size, 1), 100));
+
+            model.addAttribute("reportPage", reportPage);
+            model.addAttribute("pageSize", reportPage.getSize());
+            model.addAttribute("query", query);
 
             return "history";
 
@@ -1,7 +1,9 @@
 package com.wechat.dailyreport.controller;
 
+import com.wechat.dailyreport.client.OpenAIClientPool;
 import com.wechat.dailyreport.dto.config.AIServiceConfig;
 import com.wechat.dailyreport.dto.config.ChatlogServiceConfig;
+import com.wechat.dailyreport.dto.response.OpenAIClientPoolStats;
 import com.wechat.dailyreport.service.AIConfigService;
 import com.wechat.dailyreport.service.ChatlogConfigService;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +14,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 /**
@@ -28,6 +31,9 @@ public class ConfigController {
     @Autowired
     private ChatlogConfigService chatlogConfigService;
 
+    @Autowired
+    private OpenAIClientPool openAIClientPool;
+
     /**
      * 配置页面
      */
@@ -71,6 +77,15 @@ public class ConfigController {
         return "redirect:/config/";
     }
 
+    /**
+     * 查询OpenAI客户端池统计信息
+     */
+    @GetMapping("/ai-client-pool")
+    @ResponseBody
+    public OpenAIClientPoolStats aiClientPoolStats() {
+        return openAIClientPool.getStats();
+    }
+
     /**
      * 更新Chatlog服务配置
      */
@@ -0,0 +1,42 @@
+package com.wechat.dailyreport.dto.config;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * AI服务端点配置DTO（一个基础URL和一个API密钥）
+ */
+@Data
+@Accessors(chain = true)
+public class AIEndpointConfig {
+
+    /**
+     * 端点名称，用于日志、指标以及区分限速和熔断状态，不能重复；为空时使用基础URL加API密钥摘要
+     */
+    private String name;
+
+    /**
+     * 基础URL
+     */
+    private String baseUrl;
+
+    /**
+     * API密钥
+     */
+    private String apiKey;
+
+    /**
+     * 超时时间(毫秒)，为空时使用页面上配置的超时时间
+     */
+    private Integer timeout;
+
+    /**
+     * 每分钟请求数上限，0表示不限
+     */
+    private int requestsPerMinute;
+
+    /**
+     * 允许的突发请求数，为0时等于每分钟请求数
+     */
+    private int burst;
+}
@@ -0,0 +1,32 @@
+package com.wechat.dailyreport.dto.config;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 定时报告关注列表条目DTO
+ */
+@Data
+@Accessors(chain = true)
+public class WatchListEntry {
+
+    /**
+     * Chatlog账号，为空时使用默认账号
+     */
+    private String account;
+
+    /**
+     * 群聊名称或ID（与分析表单中的群聊输入相同）
+     */
+    private String group;
+
+    /**
+     * 日期范围规则：yesterday（昨天）、last-N-days（截至昨天的最近N天）、this-week（本周一至昨天）
+     */
+    private String range = "yesterday";
+
+    /**
+     * cron表达式（秒 分 时 日 月 周），为空时使用默认的执行时间
+     */
+    private String cron;
+}
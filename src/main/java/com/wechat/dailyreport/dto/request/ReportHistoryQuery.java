@@ -0,0 +1,34 @@
+package com.wechat.dailyreport.dto.request;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDate;
+
+/**
+ * 分析历史查询条件DTO，条件为空时不过滤
+ */
+@Data
+@Accessors(chain = true)
+public class ReportHistoryQuery {
+
+    /**
+     * 聊天ID
+     */
+    private String chatId;
+
+    /**
+     * 报告状态：PROCESSING、COMPLETED、FAILED
+     */
+    private String status;
+
+    /**
+     * 创建日期下限（含）
+     */
+    private LocalDate createdFrom;
+
+    /**
+     * 创建日期上限（含）
+     */
+    private LocalDate createdTo;
+}
@@ -0,0 +1,37 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 分析任务状态DTO
+ */
+@Data
+@Accessors(chain = true)
+public class AnalysisJobStatus {
+
+    /**
+     * 报告ID
+     */
+    private String reportId;
+
+    /**
+     * 报告状态：PROCESSING、COMPLETED、FAILED
+     */
+    private String status;
+
+    /**
+     * 当前处理阶段
+     */
+    private String stage;
+
+    /**
+     * 排队位置（从1开始），0表示已开始执行或已结束
+     */
+    private Integer queuePosition;
+
+    /**
+     * 失败原因
+     */
+    private String errorMessage;
+}
@@ -0,0 +1,27 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 群聊搜索建议DTO（自动补全使用，不包含群成员列表）
+ */
+@Data
+@Accessors(chain = true)
+public class GroupSuggestion {
+
+    /**
+     * 群ID
+     */
+    private String name;
+
+    /**
+     * 群名称
+     */
+    private String nickName;
+
+    /**
+     * 备注
+     */
+    private String remark;
+}
@@ -0,0 +1,37 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * OpenAI客户端池统计DTO
+ */
+@Data
+@Accessors(chain = true)
+public class OpenAIClientPoolStats {
+
+    /**
+     * 池中客户端数量
+     */
+    private Integer poolSize;
+
+    /**
+     * 当前正在使用的客户端租约数
+     */
+    private Integer activeLeases;
+
+    /**
+     * 复用已有客户端的次数
+     */
+    private Long hits;
+
+    /**
+     * 新建客户端的次数
+     */
+    private Long misses;
+
+    /**
+     * 因配置变更被淘汰的客户端数
+     */
+    private Long evictions;
+}
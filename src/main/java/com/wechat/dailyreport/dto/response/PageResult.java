@@ -0,0 +1,41 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 分页结果DTO
+ *
+ * @param <T> 记录类型
+ */
+@Data
+@Accessors(chain = true)
+public class PageResult<T> {
+
+    /**
+     * 当前页的记录
+     */
+    private List<T> records;
+
+    /**
+     * 符合条件的记录总数
+     */
+    private int total;
+
+    /**
+     * 当前页码（从1开始）
+     */
+    private int current;
+
+    /**
+     * 每页记录数
+     */
+    private int size;
+
+    /**
+     * 总页数
+     */
+    private int pages;
+}
@@ -0,0 +1,42 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 报告存储统计DTO
+ */
+@Data
+@Accessors(chain = true)
+public class ReportStoreStats {
+
+    /**
+     * 报告数量
+     */
+    private Integer reports;
+
+    /**
+     * 热缓存中的报告数量
+     */
+    private Integer hotReports;
+
+    /**
+     * 热缓存占用的估算字节数
+     */
+    private Long hotBytes;
+
+    /**
+     * 热缓存命中次数
+     */
+    private Long hotHits;
+
+    /**
+     * 热缓存未命中（从磁盘解压读取）次数
+     */
+    private Long hotMisses;
+
+    /**
+     * 分段日志文件总字节数
+     */
+    private Long diskBytes;
+}
@@ -0,0 +1,70 @@
+package com.wechat.dailyreport.dto.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 分析报告摘要DTO（历史记录列表使用，不包含原始数据和报告内容）
+ */
+@Data
+@Accessors(chain = true)
+public class ReportSummary {
+
+    /**
+     * 报告ID
+     */
+    private String reportId;
+
+    /**
+     * Chatlog账号
+     */
+    private String account;
+
+    /**
+     * 聊天ID
+     */
+    private String chatId;
+
+    /**
+     * 聊天名称
+     */
+    private String chatName;
+
+    /**
+     * 分析日期（单日报告）
+     */
+    private LocalDate analysisDate;
+
+    /**
+     * 开始日期（日期范围报告）
+     */
+    private LocalDate startDate;
+
+    /**
+     * 结束日期（日期范围报告）
+     */
+    private LocalDate endDate;
+
+    /**
+     * AI模型名称
+     */
+    private String model;
+
+    /**
+     * 报告状态：PROCESSING、COMPLETED、FAILED
+     */
+    private String status;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createdAt;
+
+    /**
+     * 完成时间
+     */
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,24 @@
+package com.wechat.dailyreport.event;
+
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * AI服务配置变更事件
+ */
+public class AIConfigChangedEvent extends ApplicationEvent {
+
+    private final AIServiceConfig config;
+
+    public AIConfigChangedEvent(Object source, AIServiceConfig config) {
+        super(source);
+        this.config = config;
+    }
+
+    /**
+     * 获取变更后的配置
+     */
+    public AIServiceConfig getConfig() {
+        return config;
+    }
+}
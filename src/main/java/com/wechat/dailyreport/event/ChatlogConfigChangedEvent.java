@@ -0,0 +1,24 @@
+package com.wechat.dailyreport.event;
+
+import com.wechat.dailyreport.dto.config.ChatlogServiceConfig;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Chatlog服务配置变更事件
+ */
+public class ChatlogConfigChangedEvent extends ApplicationEvent {
+
+    private final ChatlogServiceConfig config;
+
+    public ChatlogConfigChangedEvent(Object source, ChatlogServiceConfig config) {
+        super(source);
+        this.config = config;
+    }
+
+    /**
+     * 获取变更后的配置
+     */
+    public ChatlogServiceConfig getConfig() {
+        return config;
+    }
+}
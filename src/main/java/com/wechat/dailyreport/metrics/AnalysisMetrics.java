@@ -0,0 +1,249 @@
+package com.wechat.dailyreport.metrics;
+
+import com.wechat.dailyreport.client.OpenAIClientPool;
+import com.wechat.dailyreport.dto.response.AIAnalysisResponse;
+import com.wechat.dailyreport.repository.ReportRepository;
+import com.wechat.dailyreport.service.AnalysisJobService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Supplier;
+
+/**
+ * 分析流水线指标
+ * <p>
+ * 通过 /actuator/metrics 暴露：
+ * <ul>
+ *     <li>report.analysis.stage：各阶段耗时（stage=fetch/preprocess/structure/report，model，outcome=success/failure）</li>
+ *     <li>report.ai.tokens：AI令牌用量（type=prompt/completion，call=structure/merge/report，model）</li>
+ *     <li>report.analysis.daily.structures：分层分析中每天的结构化结果来源（result=hit/miss）</li>
+ *     <li>report.ai.completion.cache：AI响应缓存命中情况（call，model，result=hit/miss）</li>
+ *     <li>report.schedule.runs：定时报告执行结果（outcome=completed/existing/failed/skipped）</li>
+ *     <li>report.analysis.messages：每次分析的消息数</li>
+ *     <li>report.analysis.transcript.bytes：每次分析发送给AI的聊天文本字节数</li>
+ *     <li>report.analysis.transcript.tokens：聊天文本的估算令牌数（encoding=plain/compact，对比紧凑编码的节省效果）</li>
+ *     <li>report.analysis.jobs.queued / active、report.ai.client.pool.size / leases：线程池和客户端池状态</li>
+ *     <li>report.store.hot.requests（result=hit/miss）、report.store.hot.bytes、report.store.disk.bytes：报告存储热缓存命中情况和占用</li>
+ * </ul>
+ */
+@Component
+public class AnalysisMetrics {
+
+    public static final String STAGE_FETCH = "fetch";
+    public static final String STAGE_PREPROCESS = "preprocess";
+    public static final String STAGE_STRUCTURE = "structure";
+    public static final String STAGE_REPORT = "report";
+
+    public static final String CALL_STRUCTURE = "structure";
+    public static final String CALL_REPORT = "report";
+    public static final String CALL_MERGE = "merge";
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_FAILURE = "failure";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private OpenAIClientPool openAIClientPool;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    /**
+     * 注册线程池、客户端池和报告存储的状态指标
+     */
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("report.analysis.jobs.queued", analysisJobService, AnalysisJobService::getQueueSize)
+                .description("排队中的分析任务数")
+                .register(meterRegistry);
+        Gauge.builder("report.analysis.jobs.active", analysisJobService, AnalysisJobService::getActiveCount)
+                .description("执行中的分析任务数")
+                .register(meterRegistry);
+        Gauge.builder("report.ai.client.pool.size", openAIClientPool, pool -> pool.getStats().getPoolSize())
+                .description("OpenAI客户端池中的客户端数")
+                .register(meterRegistry);
+        Gauge.builder("report.ai.client.pool.leases", openAIClientPool, pool -> pool.getStats().getActiveLeases())
+                .description("正在使用的OpenAI客户端租约数")
+                .register(meterRegistry);
+        FunctionCounter.builder("report.store.hot.requests", reportRepository,
+                        repository -> repository.getStats().getHotHits())
+                .description("报告存储热缓存读取次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("report.store.hot.requests", reportRepository,
+                        repository -> repository.getStats().getHotMisses())
+                .description("报告存储热缓存读取次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("report.store.hot.bytes", reportRepository, repository -> repository.getStats().getHotBytes())
+                .description("报告存储热缓存占用的估算字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("report.store.disk.bytes", reportRepository, repository -> repository.getStats().getDiskBytes())
+                .description("报告存储分段日志文件总字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行并记录一个流水线阶段的耗时
+     *
+     * @param stage  阶段名称
+     * @param model  AI模型名称
+     * @param action 阶段逻辑
+     * @return 阶段结果
+     */
+    public <T> T timeStage(String stage, String model, Supplier<T> action) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = OUTCOME_FAILURE;
+        try {
+            T result = action.get();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        } finally {
+            sample.stop(Timer.builder("report.analysis.stage")
+                    .description("分析流水线各阶段耗时")
+                    .tag("stage", stage)
+                    .tag("model", tagValue(model))
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 记录AI调用的令牌用量，服务未返回用量时忽略
+     *
+     * @param call  调用类型
+     * @param model AI模型名称
+     * @param usage 令牌用量
+     */
+    public void recordTokens(String call, String model, AIAnalysisResponse.AIUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getPromptTokens() != null) {
+            tokenCounter("prompt", call, model).increment(usage.getPromptTokens());
+        }
+        if (usage.getCompletionTokens() != null) {
+            tokenCounter("completion", call, model).increment(usage.getCompletionTokens());
+        }
+    }
+
+    /**
+     * 记录AI响应缓存是否命中
+     *
+     * @param call  调用类型
+     * @param model AI模型名称
+     * @param hit   是否命中
+     */
+    public void recordCompletionCache(String call, String model, boolean hit) {
+        Counter.builder("report.ai.completion.cache")
+                .description("AI响应缓存命中情况")
+                .tag("call", call)
+                .tag("model", tagValue(model))
+                .tag("result", hit ? "hit" : "miss")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录分层分析中复用和新分析的天数
+     *
+     * @param model    AI模型名称
+     * @param hitDays  复用已保存结构化结果的天数
+     * @param missDays 从聊天记录重新分析的天数
+     */
+    public void recordDailyStructures(String model, int hitDays, int missDays) {
+        dailyStructures(model, "hit").increment(hitDays);
+        dailyStructures(model, "miss").increment(missDays);
+    }
+
+    private Counter dailyStructures(String model, String result) {
+        return Counter.builder("report.analysis.daily.structures")
+                .description("分层分析中每天的结构化结果来源")
+                .tag("model", tagValue(model))
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次定时报告的执行结果
+     *
+     * @param outcome completed（新生成）、existing（已有报告）、failed（失败）、skipped（上一次尚未结束）
+     */
+    public void recordScheduledReport(String outcome) {
+        Counter.builder("report.schedule.runs")
+                .description("定时报告执行结果")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录单次分析的消息数和聊天文本大小
+     *
+     * @param model           AI模型名称
+     * @param messageCount    消息数
+     * @param transcriptBytes 聊天文本UTF-8字节数
+     */
+    public void recordTranscript(String model, int messageCount, long transcriptBytes) {
+        DistributionSummary.builder("report.analysis.messages")
+                .description("每次分析的消息数")
+                .baseUnit("messages")
+                .tag("model", tagValue(model))
+                .register(meterRegistry)
+                .record(messageCount);
+        DistributionSummary.builder("report.analysis.transcript.bytes")
+                .description("每次分析发送给AI的聊天文本大小")
+                .baseUnit("bytes")
+                .tag("model", tagValue(model))
+                .register(meterRegistry)
+                .record(transcriptBytes);
+    }
+
+    /**
+     * 记录聊天文本编码前后的估算令牌数
+     *
+     * @param plainTokens   逐条格式的估算令牌数
+     * @param compactTokens 紧凑格式的估算令牌数
+     */
+    public void recordTranscriptEncoding(int plainTokens, int compactTokens) {
+        transcriptTokens("plain").record(plainTokens);
+        transcriptTokens("compact").record(compactTokens);
+    }
+
+    private DistributionSummary transcriptTokens(String encoding) {
+        return DistributionSummary.builder("report.analysis.transcript.tokens")
+                .description("聊天文本的估算令牌数")
+                .baseUnit("tokens")
+                .tag("encoding", encoding)
+                .register(meterRegistry);
+    }
+
+    private Counter tokenCounter(String type, String call, String model) {
+        return Counter.builder("report.ai.tokens")
+                .description("AI令牌用量")
+                .baseUnit("tokens")
+                .tag("type", type)
+                .tag("call", call)
+                .tag("model", tagValue(model))
+                .register(meterRegistry);
+    }
+
+    private static String tagValue(String value) {
+        return value == null || value.isEmpty() ? "unknown" : value;
+    }
+}
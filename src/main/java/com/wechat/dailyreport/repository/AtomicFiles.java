@@ -0,0 +1,52 @@
+package com.wechat.dailyreport.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件原子写入
+ * <p>
+ * 先写入同目录下的唯一临时文件并刷盘，再原子替换目标文件。并发写入同一文件时各自使用独立的临时文件，
+ * 读取方只会看到完整的旧内容或新内容。
+ */
+final class AtomicFiles {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * 原子写入文件，父目录不存在时自动创建
+     *
+     * @param file 目标文件
+     * @param data 文件内容
+     * @throws IOException 写入失败，临时文件已删除，目标文件保持原样
+     */
+    static void write(Path file, byte[] data) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName() + ".", TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import com.wechat.dailyreport.service.MessageBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 按 (聊天对象, 日期) 分区的本地消息缓存
+ * <p>
+ * 每个分区对应一个不可变的二进制文件，写入时先写临时文件再原子替换（见 {@link AtomicFiles}），读取时使用内存映射。
+ * 只应缓存已经结束的日期，当天的消息仍在变化，需要每次从Chatlog服务获取。
+ * <p>
+ * 文件格式：[文件头][定长消息记录 * N][字符串表]
+ * <ul>
+ *     <li>文件头：魔数、版本、消息数、字符串数、CRC32校验（覆盖文件头之后的全部内容）</li>
+ *     <li>消息记录：seq、时间（秒、纳秒、时区偏移）、发送者/昵称/内容在字符串表中的下标、类型、子类型、是否群聊</li>
+ *     <li>字符串表：[4字节长度][UTF-8字节]，同一发送者的ID和昵称只存一份</li>
+ * </ul>
+ */
+@Repository
+@Slf4j
+public class ChatMessageDayCache {
+
+    private static final int MAGIC = 0x57434D44;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int RECORD_BYTES = 45;
+    private static final int NULL_INDEX = -1;
+    private static final long NULL_SEQ = Long.MIN_VALUE;
+    private static final String FILE_SUFFIX = ".bin";
+
+    @Value("${app.chatlog.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.chatlog.cache.dir:data/messages}")
+    private String cacheDir;
+
+    private Path directory;
+
+    /**
+     * 创建缓存目录
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(cacheDir);
+        Files.createDirectories(directory);
+        log.info("消息缓存目录: {}, 启用: {}", directory.toAbsolutePath(), enabled);
+    }
+
+    /**
+     * 是否启用缓存
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否已缓存指定日期的消息
+     */
+    public boolean contains(String talker, LocalDate day) {
+        return Files.exists(partitionFile(talker, day));
+    }
+
+    /**
+     * 将指定日期的缓存消息直接解码到消息批次中，不创建中间消息对象
+     *
+     * @param talker  聊天对象
+     * @param day     日期
+     * @param builder 消息批次构建器
+     * @return 是否命中缓存，未缓存或文件损坏时返回false且不修改构建器
+     */
+    public boolean readInto(String talker, LocalDate day, MessageBatch.Builder builder) {
+        Path file = partitionFile(talker, day);
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        MessageBatch.Builder.Mark mark = builder.mark();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // 文件头和CRC校验通过后才开始写入构建器，记录内容损坏时撤销已写入的消息
+            String[] strings = readStringTable(buffer);
+            int messageCount = buffer.getInt(8);
+            ByteBuffer records = buffer.duplicate();
+            records.position(HEADER_BYTES);
+            for (int i = 0; i < messageCount; i++) {
+                int recordStart = records.position();
+                long seq = records.getLong();
+                long epochSecond = records.getLong();
+                // 纳秒部分不参与分析
+                records.getInt();
+                int offset = records.getInt();
+                int sender = records.getInt();
+                int senderName = records.getInt();
+                int content = records.getInt();
+                int type = records.getInt();
+                records.position(recordStart + RECORD_BYTES);
+                builder.add(seq, epochSecond, offset, sender != NULL_INDEX ? strings[sender] : null,
+                        senderName != NULL_INDEX ? strings[senderName] : null, type,
+                        content != NULL_INDEX ? strings[content] : null);
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("消息缓存文件损坏，已删除: file={}, error={}", file, e.getMessage());
+            builder.rollback(mark);
+            deleteQuietly(file);
+            return false;
+        }
+    }
+
+    /**
+     * 写入指定日期的消息，已存在的分区会被整体替换
+     *
+     * @param talker   聊天对象
+     * @param day      日期
+     * @param messages 当天的全部消息
+     */
+    public void put(String talker, LocalDate day, List<ChatMessage> messages) {
+        try {
+            // 同时获取重叠日期范围的请求各自写入临时文件，互不覆盖
+            AtomicFiles.write(partitionFile(talker, day), encode(messages));
+            log.debug("写入消息缓存: talker={}, day={}, 消息数={}", talker, day, messages.size());
+        } catch (IOException e) {
+            // 未写入的日期下次重新从Chatlog服务获取
+            log.warn("写入消息缓存失败: talker={}, day={}, error={}", talker, day, e.getMessage());
+        }
+    }
+
+    private Path partitionFile(String talker, LocalDate day) {
+        String talkerDir = DigestUtils.md5DigestAsHex(talker.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(talkerDir).resolve(day + FILE_SUFFIX);
+    }
+
+    private static byte[] encode(List<ChatMessage> messages) {
+        List<byte[]> strings = new ArrayList<>();
+        Map<String, Integer> stringIndex = new HashMap<>();
+        int stringBytes = 0;
+        int[][] refs = new int[messages.size()][3];
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            String[] values = {message.getSender(), message.getSenderName(), message.getContent()};
+            for (int j = 0; j < values.length; j++) {
+                if (values[j] == null) {
+                    refs[i][j] = NULL_INDEX;
+                    continue;
+                }
+                Integer index = stringIndex.get(values[j]);
+                if (index == null) {
+                    byte[] bytes = values[j].getBytes(StandardCharsets.UTF_8);
+                    index = strings.size();
+                    strings.add(bytes);
+                    stringIndex.put(values[j], index);
+                    stringBytes += 4 + bytes.length;
+                }
+                refs[i][j] = index;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + messages.size() * RECORD_BYTES + stringBytes);
+        buffer.position(HEADER_BYTES);
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            OffsetDateTime time = message.getTime();
+            buffer.putLong(message.getSeq() != null ? message.getSeq() : NULL_SEQ);
+            buffer.putLong(time.toEpochSecond());
+            buffer.putInt(time.getNano());
+            buffer.putInt(time.getOffset().getTotalSeconds());
+            buffer.putInt(refs[i][0]);
+            buffer.putInt(refs[i][1]);
+            buffer.putInt(refs[i][2]);
+            buffer.putInt(message.getType() != null ? message.getType() : 0);
+            buffer.putInt(message.getSubType() != null ? message.getSubType() : 0);
+            buffer.put(message.getIsChatRoom() == null ? (byte) 0 : message.getIsChatRoom() ? (byte) 2 : (byte) 1);
+        }
+        for (byte[] bytes : strings) {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, buffer.capacity() - HEADER_BYTES);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, messages.size());
+        buffer.putInt(12, strings.size());
+        buffer.putInt(16, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * 校验文件头和CRC，读取字符串表
+     */
+    private static String[] readStringTable(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("文件头不匹配");
+        }
+        int messageCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        int expectedCrc = buffer.getInt(16);
+
+        buffer.position(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IllegalStateException("CRC校验失败");
+        }
+
+        String[] strings = new String[stringCount];
+        buffer.position(HEADER_BYTES + messageCount * RECORD_BYTES);
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除消息缓存文件失败: file={}, error={}", file, e.getMessage());
+        }
+    }
+}
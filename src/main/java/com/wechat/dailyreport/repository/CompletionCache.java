@@ -0,0 +1,213 @@
+package com.wechat.dailyreport.repository;
+
+import com.alibaba.fastjson2.JSON;
+import com.wechat.dailyreport.dto.request.AIAnalysisRequest;
+import com.wechat.dailyreport.dto.response.AIAnalysisResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 按内容寻址的AI响应磁盘缓存
+ * <p>
+ * 缓存键为 (模型, 温度, 最大令牌数, 全部消息的角色和内容) 的SHA-256，
+ * 相同的输入直接返回上次的响应，不再调用AI服务。每个响应保存为一个JSON文件，
+ * 目录按键的前两位分散；总大小超过上限时按最近使用时间淘汰，使用时间记录在文件修改时间上，重启后保留。
+ */
+@Repository
+@Slf4j
+public class CompletionCache {
+
+    private static final String FILE_SUFFIX = ".json";
+
+    @Value("${app.ai.completion-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.completion-cache.dir:data/completions}")
+    private String cacheDir;
+
+    @Value("${app.ai.completion-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    private Path directory;
+
+    /**
+     * 缓存键 → 文件大小，按最近使用顺序排列，受this保护
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * 创建缓存目录，并按文件修改时间重建最近使用顺序
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        directory = Paths.get(cacheDir);
+        Files.createDirectories(directory);
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            files = walk.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted((left, right) -> lastModified(left).compareTo(lastModified(right)))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String key = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(key.substring(0, key.length() - FILE_SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        evict();
+        log.info("AI响应缓存目录: {}, 启用: {}, 缓存数: {}, 大小: {}字节", directory.toAbsolutePath(), enabled,
+                entries.size(), totalBytes);
+    }
+
+    /**
+     * 是否启用缓存
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算请求的缓存键
+     */
+    public static String keyOf(AIAnalysisRequest request) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, request.getModel());
+        update(digest, String.valueOf(request.getTemperature()));
+        update(digest, String.valueOf(request.getMaxTokens()));
+        for (AIAnalysisRequest.AIMessage message : request.getMessages()) {
+            update(digest, message.getRole());
+            update(digest, message.getContent());
+        }
+
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 读取缓存的响应
+     *
+     * @param key 缓存键
+     * @return 缓存的响应，未缓存或文件损坏时返回null
+     */
+    public AIAnalysisResponse get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+
+        Path file = entryFile(key);
+        try {
+            AIAnalysisResponse response = JSON.parseObject(Files.readAllBytes(file), AIAnalysisResponse.class);
+            if (response == null) {
+                throw new IOException("内容为空");
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return response;
+        } catch (Exception e) {
+            log.warn("AI响应缓存文件损坏，已删除: file={}, error={}", file, e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 写入响应，超过总大小上限时淘汰最久未使用的缓存
+     *
+     * @param key      缓存键
+     * @param response AI响应
+     */
+    public void put(String key, AIAnalysisResponse response) {
+        byte[] bytes = JSON.toJSONString(response).getBytes(StandardCharsets.UTF_8);
+        try {
+            AtomicFiles.write(entryFile(key), bytes);
+
+            synchronized (this) {
+                Long previous = entries.put(key, (long) bytes.length);
+                totalBytes += bytes.length - (previous != null ? previous : 0L);
+                evict();
+            }
+        } catch (IOException e) {
+            // 缓存写入失败不影响本次分析
+            log.warn("写入AI响应缓存失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 淘汰最久未使用的缓存，直到总大小不超过上限
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(entryFile(eldest.getKey()));
+            log.debug("淘汰AI响应缓存: key={}", eldest.getKey());
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteQuietly(entryFile(key));
+    }
+
+    private Path entryFile(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + FILE_SUFFIX);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // 每个字段前写入长度，避免不同字段拼接后产生相同的输入
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                (byte) (bytes.length >>> 8), (byte) bytes.length, (byte) (value != null ? 1 : 0)});
+        digest.update(bytes);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除AI响应缓存文件失败: file={}, error={}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.wechat.dailyreport.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+/**
+ * 每日结构化分析结果存储
+ * <p>
+ * 按 (账号, 数据源, 聊天, 模型, 提示词版本, 日期) 保存每天的结构化分析JSON，多天的报告直接复用已分析的日期，
+ * 只分析缺失的日期。与消息缓存一样只应保存已经结束的日期。
+ * 同一账号、数据源、聊天、模型和提示词版本的文件放在一个目录下，文件名为日期。
+ */
+@Repository
+@Slf4j
+public class DailyStructureStore {
+
+    private static final String FILE_SUFFIX = ".json";
+
+    @Value("${app.analysis.hierarchical.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.analysis.hierarchical.dir:data/structures}")
+    private String storeDir;
+
+    private Path directory;
+
+    /**
+     * 创建存储目录
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(storeDir);
+        Files.createDirectories(directory);
+        log.info("每日结构化分析存储目录: {}, 启用: {}", directory.toAbsolutePath(), enabled);
+    }
+
+    /**
+     * 是否启用分层分析
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 读取指定日期的结构化分析结果
+     *
+     * @return 结构化分析JSON，未保存时返回null
+     */
+    public String get(String account, String source, String chatId, String model, String promptVersion,
+                      LocalDate day) {
+        Path file = dayFile(account, source, chatId, model, promptVersion, day);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("读取每日结构化分析失败: file={}, error={}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 保存指定日期的结构化分析结果，已存在时整体替换
+     */
+    public void put(String account, String source, String chatId, String model, String promptVersion,
+                    LocalDate day, String structure) {
+        Path file = dayFile(account, source, chatId, model, promptVersion, day);
+        try {
+            AtomicFiles.write(file, structure.getBytes(StandardCharsets.UTF_8));
+            log.debug("保存每日结构化分析: chatId={}, day={}", chatId, day);
+        } catch (IOException e) {
+            // 保存失败不影响本次分析，下次重新分析该日期
+            log.warn("保存每日结构化分析失败: chatId={}, day={}, error={}", chatId, day, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除指定日期的结构化分析结果（内容损坏时使用）
+     */
+    public void remove(String account, String source, String chatId, String model, String promptVersion,
+                       LocalDate day) {
+        try {
+            Files.deleteIfExists(dayFile(account, source, chatId, model, promptVersion, day));
+        } catch (IOException e) {
+            log.warn("删除每日结构化分析失败: chatId={}, day={}, error={}", chatId, day, e.getMessage());
+        }
+    }
+
+    private Path dayFile(String account, String source, String chatId, String model, String promptVersion,
+                         LocalDate day) {
+        String key = account + '\n' + source + '\n' + chatId + '\n' + model + '\n' + promptVersion;
+        return directory.resolve(DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)))
+                .resolve(day + FILE_SUFFIX);
+    }
+}
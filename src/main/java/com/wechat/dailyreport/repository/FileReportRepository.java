@@ -0,0 +1,788 @@
+package com.wechat.dailyreport.repository;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportStoreStats;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 基于文件的分析报告存储
+ * <p>
+ * 报告以追加写的方式记录到分段日志文件中，内存中只保留报告ID到文件偏移量的索引，
+ * 报告内容按需从磁盘读取。启动时重放日志重建索引，废弃记录超过阈值时由后台线程逐个分段压缩。
+ * 历史记录列表使用单独的摘要索引（{@link ReportHistoryIndex}），分页查询不读取报告内容。
+ * <p>
+ * 记录格式：[4字节数据长度][4字节CRC32校验][数据]，数据为
+ * [1字节格式标记][4字节元数据长度][元数据JSON][Deflate压缩的报告内容JSON]，
+ * 报告内容（原始数据、结构化数据和最终报告）与元数据分开，启动重放和历史索引只解析元数据。
+ * 旧版本写入的数据为完整的JSON（以 '{' 开头），读取时兼容，压缩时转换为新格式。
+ * <p>
+ * 最近读写的报告解压后保存在按估算字节数限制大小的LRU热缓存中（{@code app.report.store.hot-cache-max-bytes}）。
+ */
+@Repository
+@Slf4j
+public class FileReportRepository implements ReportRepository {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final byte FORMAT_TIERED = 1;
+    private static final byte LEGACY_JSON_START = '{';
+    private static final int TIERED_HEADER_BYTES = 5;
+    private static final String[] BODY_FIELDS = {"rawData", "structuredData", "finalReport"};
+
+    @Value("${app.report.store.dir:data/reports}")
+    private String storeDir;
+
+    @Value("${app.report.store.segment-max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    @Value("${app.report.store.compaction-min-dead-bytes:16777216}")
+    private long compactionMinDeadBytes;
+
+    @Value("${app.report.store.hot-cache-max-bytes:67108864}")
+    private long hotCacheMaxBytes;
+
+    /**
+     * 报告ID到记录位置的索引
+     */
+    private final Map<String, RecordLocation> index = new ConcurrentHashMap<>();
+
+    /**
+     * 去重键到已完成报告ID的二级索引
+     */
+    private final Map<ReportRangeKey, String> completedRangeIndex = new ConcurrentHashMap<>();
+
+    /**
+     * 按创建时间排序的报告摘要索引
+     */
+    private final ReportHistoryIndex historyIndex = new ReportHistoryIndex();
+
+    /**
+     * 分段ID到文件通道的映射，受lock保护
+     */
+    private final NavigableMap<Long, FileChannel> segments = new TreeMap<>();
+
+    /**
+     * 分段ID到废弃字节数的映射，受lock保护
+     */
+    private final Map<Long, Long> segmentDeadBytes = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 后台压缩线程，保存报告时只提交压缩任务，不在写锁内复制日志
+     */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "report-store-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * 解压后的热点报告（按访问顺序淘汰），受自身监视器保护
+     */
+    private final LinkedHashMap<String, HotReport> hotCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long hotBytes;
+    private final AtomicLong hotHits = new AtomicLong();
+    private final AtomicLong hotMisses = new AtomicLong();
+
+    private Path directory;
+    private long activeSegmentId;
+    private FileChannel activeChannel;
+    private long totalBytes;
+    private long deadBytes;
+
+    /**
+     * 打开存储目录并重放日志重建索引
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(storeDir);
+        Files.createDirectories(directory);
+
+        List<Long> segmentIds = listSegmentIds();
+        for (int i = 0; i < segmentIds.size(); i++) {
+            long segmentId = segmentIds.get(i);
+            FileChannel channel = FileChannel.open(segmentPath(segmentId),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(segmentId, channel);
+            replaySegment(segmentId, channel, i == segmentIds.size() - 1);
+        }
+
+        if (segments.isEmpty()) {
+            rollSegment(1L);
+        } else {
+            activeSegmentId = segments.lastKey();
+            activeChannel = segments.lastEntry().getValue();
+        }
+
+        log.info("报告存储已打开: dir={}, segments={}, reports={}, totalBytes={}, deadBytes={}",
+                directory.toAbsolutePath(), segments.size(), index.size(), totalBytes, deadBytes);
+    }
+
+    /**
+     * 等待进行中的压缩结束后关闭所有分段文件
+     */
+    @PreDestroy
+    public void close() {
+        // 不中断压缩线程：中断会关闭正在读写的文件通道
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                closeQuietly(channel);
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(AnalysisReport report) {
+        // 在锁外序列化和压缩
+        byte[] meta = metaOf(report);
+        byte[] payload = encode(meta, report);
+
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            RecordLocation location = append(payload, report.getStatus());
+            // 报告进入终态时刷盘，保证已完成的报告不因宕机丢失
+            if (!"PROCESSING".equals(report.getStatus())) {
+                activeChannel.force(false);
+            }
+
+            RecordLocation previous = index.put(report.getReportId(), location);
+            if (previous != null) {
+                markDead(previous.segmentId, previous.recordBytes());
+            }
+            updateRangeIndex(report.getReportId(), ReportRangeKey.of(report), report.getStatus(),
+                    report.isRangeFinished());
+            historyIndex.put(ReportHistoryIndex.summaryOf(report));
+            putHot(report.getReportId(), new HotReport(meta, report.getRawData(), report.getStructuredData(),
+                    report.getFinalReport()));
+            compact = needsCompaction();
+        } catch (IOException e) {
+            log.error("保存分析报告失败: reportId={}", report.getReportId(), e);
+            throw new RuntimeException("保存分析报告失败: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (compact) {
+            scheduleCompaction();
+        }
+    }
+
+    @Override
+    public AnalysisReport findById(String reportId) {
+        HotReport hot = getHot(reportId);
+        if (hot != null) {
+            hotHits.incrementAndGet();
+            return hot.toReport();
+        }
+
+        lock.readLock().lock();
+        try {
+            RecordLocation location = index.get(reportId);
+            if (location == null) {
+                return null;
+            }
+            hotMisses.incrementAndGet();
+            // 在读锁内放入热缓存，保证不会覆盖并发保存的新版本
+            HotReport decoded = decode(readPayload(location));
+            putHot(reportId, decoded);
+            return decoded.toReport();
+        } catch (IOException e) {
+            log.error("读取分析报告失败: reportId={}", reportId, e);
+            throw new RuntimeException("读取分析报告失败: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public AnalysisReport findCompletedByRangeKey(ReportRangeKey rangeKey) {
+        String reportId = completedRangeIndex.get(rangeKey);
+        if (reportId == null) {
+            return null;
+        }
+        AnalysisReport report = findById(reportId);
+        return report != null && "COMPLETED".equals(report.getStatus()) && report.isRangeFinished() ? report : null;
+    }
+
+    @Override
+    public List<String> findIdsByStatus(String status) {
+        return index.entrySet().stream()
+                .filter(entry -> status.equals(entry.getValue().status))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public PageResult<ReportSummary> findSummaries(ReportHistoryQuery query, int page, int size) {
+        return historyIndex.query(query, page, size);
+    }
+
+    @Override
+    public int count() {
+        return index.size();
+    }
+
+    @Override
+    public ReportStoreStats getStats() {
+        ReportStoreStats stats = new ReportStoreStats()
+                .setReports(index.size())
+                .setHotHits(hotHits.get())
+                .setHotMisses(hotMisses.get());
+        synchronized (hotCache) {
+            stats.setHotReports(hotCache.size()).setHotBytes(hotBytes);
+        }
+        lock.readLock().lock();
+        try {
+            return stats.setDiskBytes(totalBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 重放单个分段文件，遇到损坏的记录时截断（仅最后一个分段）或跳过剩余部分
+     */
+    private void replaySegment(long segmentId, FileChannel channel, boolean lastSegment) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while (position < size) {
+            header.clear();
+            if (!readFully(channel, header, position)) {
+                break;
+            }
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_BYTES);
+            if (crc != checksum(payload.array())) {
+                break;
+            }
+
+            JSONObject record = decodeMeta(payload.array());
+            RecordLocation location = new RecordLocation(segmentId, position, length, record.getString("status"));
+            String reportId = record.getString("reportId");
+            RecordLocation previous = reportId == null ? location : index.put(reportId, location);
+            if (previous != null) {
+                markDead(previous.segmentId, previous.recordBytes());
+            }
+            if (reportId != null) {
+                updateRangeIndex(reportId, rangeKeyOf(record), location.status, record.getBooleanValue("rangeFinished"));
+                historyIndex.put(record.to(ReportSummary.class));
+            }
+            totalBytes += location.recordBytes();
+            position += location.recordBytes();
+        }
+
+        if (position < size) {
+            if (lastSegment) {
+                log.warn("报告存储分段末尾存在不完整记录，截断: segment={}, position={}, size={}", segmentId, position, size);
+                channel.truncate(position);
+            } else {
+                log.warn("报告存储分段存在损坏记录，忽略剩余部分: segment={}, position={}", segmentId, position);
+                markDead(segmentId, size - position);
+                totalBytes += size - position;
+            }
+        }
+    }
+
+    /**
+     * 维护去重索引：日期范围在创建前已经结束的报告完成时登记，状态变更为非完成时移除。
+     * 包含当天的报告只是当时的部分数据，不登记，之后的相同请求重新分析
+     */
+    private void updateRangeIndex(String reportId, ReportRangeKey rangeKey, String status, boolean rangeFinished) {
+        if (rangeKey == null) {
+            return;
+        }
+        if ("COMPLETED".equals(status) && rangeFinished) {
+            completedRangeIndex.put(rangeKey, reportId);
+        } else {
+            completedRangeIndex.remove(rangeKey, reportId);
+        }
+    }
+
+    /**
+     * 从日志记录中解析去重键
+     */
+    private static ReportRangeKey rangeKeyOf(JSONObject record) {
+        String chatId = record.getString("chatId");
+        LocalDate startDate = record.getObject("startDate", LocalDate.class);
+        LocalDate endDate = record.getObject("endDate", LocalDate.class);
+        if (chatId == null || startDate == null || endDate == null) {
+            return null;
+        }
+        return new ReportRangeKey(ChatlogClientRouter.normalizeAccount(record.getString("account")),
+                record.getString("source"), chatId, startDate, endDate, record.getString("model"));
+    }
+
+    /**
+     * 追加一条记录到当前分段，超过分段大小时滚动到新分段
+     */
+    private RecordLocation append(byte[] payload, String status) throws IOException {
+        long position = activeChannel.size();
+        if (position > 0 && position + HEADER_BYTES + payload.length > segmentMaxBytes) {
+            rollSegment(activeSegmentId + 1);
+            position = 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        buffer.flip();
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += activeChannel.write(buffer, writePosition);
+        }
+
+        RecordLocation location = new RecordLocation(activeSegmentId, position, payload.length, status);
+        totalBytes += location.recordBytes();
+        return location;
+    }
+
+    /**
+     * 创建新的分段文件并设为当前写入分段
+     */
+    private void rollSegment(long segmentId) throws IOException {
+        if (activeChannel != null) {
+            activeChannel.force(false);
+        }
+        activeChannel = FileChannel.open(segmentPath(segmentId),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeSegmentId = segmentId;
+        segments.put(segmentId, activeChannel);
+    }
+
+    /**
+     * 记录分段中的废弃数据
+     */
+    private void markDead(long segmentId, long bytes) {
+        deadBytes += bytes;
+        segmentDeadBytes.merge(segmentId, bytes, Long::sum);
+    }
+
+    /**
+     * 废弃数据超过阈值且占比过半时需要压缩
+     */
+    private boolean needsCompaction() {
+        return deadBytes >= compactionMinDeadBytes && deadBytes * 2 >= totalBytes;
+    }
+
+    /**
+     * 提交后台压缩任务，已有任务在执行时不重复提交
+     */
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(this::compact);
+        } catch (RejectedExecutionException e) {
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * 后台压缩：每次选出废弃数据最多的分段，将其中的有效记录复制到当前分段后删除该分段，
+     * 直到废弃数据低于阈值。每条记录只在追加时短暂持有写锁，保存和读取不必等待整个日志复制完成
+     */
+    private void compact() {
+        try {
+            Long segmentId;
+            while (!compactor.isShutdown() && (segmentId = nextCompactionSegment()) != null) {
+                compactSegment(segmentId);
+            }
+        } catch (IOException e) {
+            log.error("报告存储压缩失败", e);
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * 选出下一个需要压缩的分段；选中当前写入分段时先滚动到新分段
+     */
+    private Long nextCompactionSegment() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (segments.isEmpty() || !needsCompaction()) {
+                return null;
+            }
+            Long candidate = null;
+            long candidateDeadBytes = 0;
+            for (Map.Entry<Long, Long> entry : segmentDeadBytes.entrySet()) {
+                if (entry.getValue() > candidateDeadBytes && segments.containsKey(entry.getKey())) {
+                    candidate = entry.getKey();
+                    candidateDeadBytes = entry.getValue();
+                }
+            }
+            if (candidate != null && candidate == activeSegmentId) {
+                rollSegment(activeSegmentId + 1);
+            }
+            return candidate;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩单个分段：逐条复制仍然有效的记录，复制期间被重新保存的报告保留新版本，全部复制后删除分段
+     */
+    private void compactSegment(long segmentId) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, RecordLocation> live = new LinkedHashMap<>();
+        index.forEach((reportId, location) -> {
+            if (location.segmentId == segmentId) {
+                live.put(reportId, location);
+            }
+        });
+
+        int copied = 0;
+        for (Map.Entry<String, RecordLocation> entry : live.entrySet()) {
+            if (compactor.isShutdown()) {
+                return;
+            }
+            String reportId = entry.getKey();
+            RecordLocation location = entry.getValue();
+            byte[] payload;
+            lock.readLock().lock();
+            try {
+                if (index.get(reportId) != location) {
+                    continue;
+                }
+                payload = readPayload(location);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            byte[] upgraded = upgrade(payload);
+            lock.writeLock().lock();
+            try {
+                if (index.get(reportId) == location) {
+                    index.put(reportId, append(upgraded, location.status));
+                    markDead(segmentId, location.recordBytes());
+                    copied++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            FileChannel channel = segments.get(segmentId);
+            if (channel == null || index.values().stream().anyMatch(location -> location.segmentId == segmentId)) {
+                return;
+            }
+            // 复制的记录落盘后再删除原分段
+            activeChannel.force(false);
+            long segmentBytes = channel.size();
+            closeQuietly(segments.remove(segmentId));
+            Files.deleteIfExists(segmentPath(segmentId));
+            totalBytes -= segmentBytes;
+            Long segmentDead = segmentDeadBytes.remove(segmentId);
+            deadBytes -= segmentDead != null ? segmentDead : 0;
+
+            log.info("报告存储分段压缩完成: segment={}, records={}, freedBytes={}, 耗时: {}ms",
+                    segmentId, copied, segmentBytes, System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 报告元数据：去掉报告内容字段后的JSON
+     */
+    private static byte[] metaOf(AnalysisReport report) {
+        JSONObject meta = (JSONObject) JSON.toJSON(report);
+        for (String field : BODY_FIELDS) {
+            meta.remove(field);
+        }
+        return JSON.toJSONBytes(meta);
+    }
+
+    /**
+     * 编码记录数据：格式标记、元数据和压缩后的报告内容
+     */
+    private static byte[] encode(byte[] meta, AnalysisReport report) {
+        JSONObject body = new JSONObject();
+        body.put("rawData", report.getRawData());
+        body.put("structuredData", report.getStructuredData());
+        body.put("finalReport", report.getFinalReport());
+        byte[] compressedBody = deflate(JSON.toJSONBytes(body));
+
+        ByteBuffer buffer = ByteBuffer.allocate(TIERED_HEADER_BYTES + meta.length + compressedBody.length);
+        buffer.put(FORMAT_TIERED);
+        buffer.putInt(meta.length);
+        buffer.put(meta);
+        buffer.put(compressedBody);
+        return buffer.array();
+    }
+
+    /**
+     * 只解析记录的元数据，不解压报告内容
+     */
+    private static JSONObject decodeMeta(byte[] payload) {
+        if (payload.length > 0 && payload[0] == LEGACY_JSON_START) {
+            return JSON.parseObject(payload);
+        }
+        int metaLength = ByteBuffer.wrap(payload, 1, 4).getInt();
+        return JSON.parseObject(new String(payload, TIERED_HEADER_BYTES, metaLength, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析完整的报告记录（元数据和解压后的报告内容）
+     */
+    private static HotReport decode(byte[] payload) throws IOException {
+        if (payload.length > 0 && payload[0] == LEGACY_JSON_START) {
+            AnalysisReport report = JSON.parseObject(payload, AnalysisReport.class);
+            return new HotReport(metaOf(report), report.getRawData(), report.getStructuredData(),
+                    report.getFinalReport());
+        }
+        if (payload.length < TIERED_HEADER_BYTES || payload[0] != FORMAT_TIERED) {
+            throw new IOException("无法识别的记录格式");
+        }
+        int metaLength = ByteBuffer.wrap(payload, 1, 4).getInt();
+        byte[] meta = new byte[metaLength];
+        System.arraycopy(payload, TIERED_HEADER_BYTES, meta, 0, metaLength);
+        int bodyOffset = TIERED_HEADER_BYTES + metaLength;
+        JSONObject body = JSON.parseObject(inflate(payload, bodyOffset, payload.length - bodyOffset));
+        return new HotReport(meta, body.getString("rawData"), body.getString("structuredData"),
+                body.getString("finalReport"));
+    }
+
+    /**
+     * 旧格式的记录转换为新格式，新格式的记录原样返回
+     */
+    private static byte[] upgrade(byte[] payload) {
+        if (payload.length == 0 || payload[0] != LEGACY_JSON_START) {
+            return payload;
+        }
+        AnalysisReport report = JSON.parseObject(payload, AnalysisReport.class);
+        return encode(metaOf(report), report);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException("压缩报告内容失败: " + e.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws IOException {
+        try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return StreamUtils.copyToByteArray(inflater);
+        }
+    }
+
+    private HotReport getHot(String reportId) {
+        synchronized (hotCache) {
+            return hotCache.get(reportId);
+        }
+    }
+
+    /**
+     * 放入热缓存，超过大小上限时淘汰最久未访问的报告；单个报告超过上限时不缓存
+     */
+    private void putHot(String reportId, HotReport report) {
+        synchronized (hotCache) {
+            HotReport previous = report.weight <= hotCacheMaxBytes
+                    ? hotCache.put(reportId, report)
+                    : hotCache.remove(reportId);
+            if (previous != null) {
+                hotBytes -= previous.weight;
+            }
+            if (report.weight > hotCacheMaxBytes) {
+                return;
+            }
+            hotBytes += report.weight;
+            Iterator<HotReport> eldest = hotCache.values().iterator();
+            while (hotBytes > hotCacheMaxBytes && eldest.hasNext()) {
+                hotBytes -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    private byte[] readPayload(RecordLocation location) throws IOException {
+        FileChannel channel = segments.get(location.segmentId);
+        if (channel == null) {
+            throw new IOException("分段文件不存在: " + location.segmentId);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(location.length);
+        if (!readFully(channel, payload, location.offset + HEADER_BYTES)) {
+            throw new IOException("记录不完整: segment=" + location.segmentId + ", offset=" + location.offset);
+        }
+        return payload.array();
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                return false;
+            }
+            readPosition += read;
+        }
+        return true;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        return (int) crc32.getValue();
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        List<Long> segmentIds = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                String id = fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segmentIds.add(Long.parseLong(id));
+                } catch (NumberFormatException e) {
+                    log.warn("忽略无法识别的分段文件: {}", fileName);
+                }
+            }
+        }
+        segmentIds.sort(Long::compare);
+        return segmentIds;
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭分段文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 解压后的报告：元数据JSON和报告内容，每次读取时生成新的报告对象，调用方修改报告不影响缓存
+     */
+    private static class HotReport {
+        private final byte[] meta;
+        private final String rawData;
+        private final String structuredData;
+        private final String finalReport;
+        private final long weight;
+
+        HotReport(byte[] meta, String rawData, String structuredData, String finalReport) {
+            this.meta = meta;
+            this.rawData = rawData;
+            this.structuredData = structuredData;
+            this.finalReport = finalReport;
+            // 字符串按每字符2字节估算
+            this.weight = meta.length + 2L * (length(rawData) + length(structuredData) + length(finalReport));
+        }
+
+        AnalysisReport toReport() {
+            return JSON.parseObject(meta, AnalysisReport.class)
+                    .setRawData(rawData)
+                    .setStructuredData(structuredData)
+                    .setFinalReport(finalReport);
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+    }
+
+    /**
+     * 记录在分段文件中的位置
+     */
+    private static class RecordLocation {
+        private final long segmentId;
+        private final long offset;
+        private final int length;
+        private final String status;
+
+        RecordLocation(long segmentId, long offset, int length, String status) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.status = status;
+        }
+
+        long recordBytes() {
+            return HEADER_BYTES + length;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.wechat.dailyreport.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已渲染报告页面存储
+ * <p>
+ * 已完成的报告不再变化，报告页面只渲染一次，gzip压缩后保存到磁盘，之后的请求直接返回压缩内容。
+ * ETag由模板版本和压缩内容的MD5生成，按报告ID缓存在内存中，条件请求无需读取文件。
+ * 模板版本是报告页面模板内容的摘要，同时写入文件名：升级模板后旧页面不再命中而重新渲染，
+ * 启动时删除其他模板版本的页面。
+ */
+@Repository
+@Slf4j
+public class RenderedReportStore {
+
+    private static final String FILE_SUFFIX = ".html.gz";
+
+    /**
+     * 报告ID只包含字母、数字、下划线和连字符，避免路径穿越
+     */
+    private static final Pattern REPORT_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    @Value("${app.report.rendered.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.rendered.dir:data/rendered}")
+    private String storeDir;
+
+    @Value("${spring.thymeleaf.prefix:classpath:/templates/}report${spring.thymeleaf.suffix:.html}")
+    private Resource template;
+
+    private Path directory;
+
+    /**
+     * 报告页面模板的版本
+     */
+    private String templateVersion;
+
+    /**
+     * 报告ID到ETag的缓存
+     */
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+    /**
+     * 创建存储目录，计算模板版本并删除其他模板版本渲染的页面
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(storeDir);
+        Files.createDirectories(directory);
+        try (InputStream in = template.getInputStream()) {
+            templateVersion = DigestUtils.md5DigestAsHex(StreamUtils.copyToByteArray(in)).substring(0, 8);
+        }
+
+        String suffix = "." + templateVersion + FILE_SUFFIX;
+        int removed = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(suffix) && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        }
+        log.info("已渲染报告存储目录: {}, 启用: {}, 模板版本: {}, 删除旧版本页面: {}", directory.toAbsolutePath(), enabled,
+                templateVersion, removed);
+    }
+
+    /**
+     * 是否启用已渲染报告存储
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取已渲染报告的ETag（不读取页面内容）
+     *
+     * @return ETag（不含引号），未渲染时返回null
+     */
+    public String getEtag(String reportId) {
+        String etag = etags.get(reportId);
+        if (etag != null) {
+            return etag;
+        }
+        RenderedReport rendered = get(reportId);
+        return rendered != null ? rendered.getEtag() : null;
+    }
+
+    /**
+     * 读取已渲染的报告页面
+     *
+     * @return 已渲染报告，未渲染时返回null
+     */
+    public RenderedReport get(String reportId) {
+        if (!REPORT_ID.matcher(reportId).matches()) {
+            return null;
+        }
+        Path file = fileOf(reportId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            byte[] gzip = Files.readAllBytes(file);
+            String etag = etags.computeIfAbsent(reportId, id -> etagOf(gzip));
+            return new RenderedReport(etag, gzip);
+        } catch (IOException e) {
+            log.warn("读取已渲染报告失败: reportId={}, error={}", reportId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 压缩并保存渲染后的报告页面，保存失败时仍返回压缩结果
+     *
+     * @param reportId 报告ID
+     * @param html     渲染后的页面
+     * @return 已渲染报告
+     */
+    public RenderedReport put(String reportId, String html) {
+        byte[] gzip = gzip(html.getBytes(StandardCharsets.UTF_8));
+        RenderedReport rendered = new RenderedReport(etagOf(gzip), gzip);
+        if (!REPORT_ID.matcher(reportId).matches()) {
+            return rendered;
+        }
+
+        try {
+            AtomicFiles.write(fileOf(reportId), gzip);
+            etags.put(reportId, rendered.getEtag());
+            log.debug("保存已渲染报告: reportId={}, 压缩后={}字节, 原始={}字节", reportId, gzip.length, html.length());
+        } catch (IOException e) {
+            // 保存失败不影响本次响应，下次请求重新渲染
+            log.warn("保存已渲染报告失败: reportId={}, error={}", reportId, e.getMessage());
+        }
+        return rendered;
+    }
+
+    private Path fileOf(String reportId) {
+        return directory.resolve(reportId + "." + templateVersion + FILE_SUFFIX);
+    }
+
+    private String etagOf(byte[] gzip) {
+        return templateVersion + "-" + DigestUtils.md5DigestAsHex(gzip);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException("压缩报告页面失败: " + e.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 已渲染报告：ETag和gzip压缩的页面
+     */
+    @lombok.Value
+    public static class RenderedReport {
+        String etag;
+        byte[] gzip;
+    }
+}
@@ -0,0 +1,203 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 分析历史索引
+ * <p>
+ * 内存中只保存报告摘要，按创建时间倒序保存在跳表中：全部报告一个，另按聊天、状态、聊天+状态各维护一个，
+ * 查询时选择与条件对应的跳表，创建日期范围用子视图定位，因此分页只遍历摘要，不读取报告内容。
+ * 写操作由调用方串行化（报告存储的写锁），读操作无锁。
+ */
+final class ReportHistoryIndex {
+
+    private static final Comparator<Key> NEWEST_FIRST = Comparator
+            .comparing(Key::getCreatedAt, Comparator.reverseOrder())
+            .thenComparing(Key::getReportId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Shard all = new Shard();
+    private final Map<String, Shard> byChat = new ConcurrentHashMap<>();
+    private final Map<String, Shard> byStatus = new ConcurrentHashMap<>();
+    private final Map<String, Shard> byChatAndStatus = new ConcurrentHashMap<>();
+
+    /**
+     * 报告ID到当前摘要的映射
+     */
+    private final Map<String, ReportSummary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * 新增或更新报告摘要
+     */
+    void put(ReportSummary summary) {
+        ReportSummary previous = summaries.put(summary.getReportId(), summary);
+        if (previous != null) {
+            forEachShard(previous, false, shard -> shard.remove(keyOf(previous)));
+        }
+        Key key = keyOf(summary);
+        forEachShard(summary, true, shard -> shard.put(key, summary));
+    }
+
+    /**
+     * 报告总数
+     */
+    int size() {
+        return all.count.get();
+    }
+
+    /**
+     * 分页查询，结果按创建时间倒序
+     *
+     * @param query 查询条件
+     * @param page  页码（从1开始，超出范围时取最近的有效页）
+     * @param size  每页记录数
+     */
+    PageResult<ReportSummary> query(ReportHistoryQuery query, int page, int size) {
+        int pageSize = Math.max(1, size);
+        Shard shard = shardFor(query);
+        NavigableMap<Key, ReportSummary> view = shard != null ? rangeOf(shard.map, query) : new ConcurrentSkipListMap<>();
+
+        boolean ranged = query.getCreatedFrom() != null || query.getCreatedTo() != null;
+        int total = shard == null ? 0 : ranged ? view.size() : shard.count.get();
+        int pages = total == 0 ? 0 : (total - 1) / pageSize + 1;
+        int current = Math.min(Math.max(1, page), Math.max(1, pages));
+
+        List<ReportSummary> records = new ArrayList<>(Math.min(pageSize, total));
+        int skip = (current - 1) * pageSize;
+        for (ReportSummary summary : view.values()) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (records.size() == pageSize) {
+                break;
+            }
+            records.add(summary);
+        }
+        return new PageResult<ReportSummary>()
+                .setRecords(records)
+                .setTotal(total)
+                .setCurrent(current)
+                .setSize(pageSize)
+                .setPages(pages);
+    }
+
+    /**
+     * 生成报告摘要
+     */
+    static ReportSummary summaryOf(AnalysisReport report) {
+        return new ReportSummary()
+                .setReportId(report.getReportId())
+                .setAccount(report.getAccount())
+                .setChatId(report.getChatId())
+                .setChatName(report.getChatName())
+                .setAnalysisDate(report.getAnalysisDate())
+                .setStartDate(report.getStartDate())
+                .setEndDate(report.getEndDate())
+                .setModel(report.getModel())
+                .setStatus(report.getStatus())
+                .setCreatedAt(report.getCreatedAt())
+                .setCompletedAt(report.getCompletedAt());
+    }
+
+    /**
+     * 选择与查询条件对应的跳表，不存在时返回null
+     */
+    private Shard shardFor(ReportHistoryQuery query) {
+        boolean hasChat = StringUtils.isNotBlank(query.getChatId());
+        boolean hasStatus = StringUtils.isNotBlank(query.getStatus());
+        if (hasChat && hasStatus) {
+            return byChatAndStatus.get(chatAndStatus(query.getChatId(), query.getStatus()));
+        }
+        if (hasChat) {
+            return byChat.get(query.getChatId());
+        }
+        return hasStatus ? byStatus.get(query.getStatus()) : all;
+    }
+
+    /**
+     * 按创建日期范围截取子视图；边界键的报告ID为null，排在同一时间的所有报告之后
+     */
+    private static NavigableMap<Key, ReportSummary> rangeOf(ConcurrentNavigableMap<Key, ReportSummary> map,
+                                                           ReportHistoryQuery query) {
+        ConcurrentNavigableMap<Key, ReportSummary> view = map;
+        if (query.getCreatedTo() != null) {
+            view = view.tailMap(new Key(query.getCreatedTo().plusDays(1).atStartOfDay(), null), false);
+        }
+        if (query.getCreatedFrom() != null) {
+            view = view.headMap(new Key(query.getCreatedFrom().atStartOfDay(), null), false);
+        }
+        return view;
+    }
+
+    private void forEachShard(ReportSummary summary, boolean create, Consumer<Shard> action) {
+        action.accept(all);
+        String chatId = StringUtils.defaultString(summary.getChatId());
+        String status = StringUtils.defaultString(summary.getStatus());
+        applyTo(byChat, chatId, create, action);
+        applyTo(byStatus, status, create, action);
+        applyTo(byChatAndStatus, chatAndStatus(chatId, status), create, action);
+    }
+
+    private static void applyTo(Map<String, Shard> shards, String name, boolean create,
+                                Consumer<Shard> action) {
+        Shard shard = create ? shards.computeIfAbsent(name, key -> new Shard()) : shards.get(name);
+        if (shard != null) {
+            action.accept(shard);
+        }
+    }
+
+    private static String chatAndStatus(String chatId, String status) {
+        return chatId + '\n' + status;
+    }
+
+    private static Key keyOf(ReportSummary summary) {
+        LocalDateTime createdAt = summary.getCreatedAt() != null ? summary.getCreatedAt() : LocalDateTime.MIN;
+        return new Key(createdAt, summary.getReportId());
+    }
+
+    /**
+     * 跳表及其记录数（跳表的size()需要遍历）
+     */
+    private static final class Shard {
+        private final ConcurrentSkipListMap<Key, ReportSummary> map = new ConcurrentSkipListMap<>(NEWEST_FIRST);
+        private final AtomicInteger count = new AtomicInteger();
+
+        void put(Key key, ReportSummary summary) {
+            if (map.put(key, summary) == null) {
+                count.incrementAndGet();
+            }
+        }
+
+        void remove(Key key) {
+            if (map.remove(key) != null) {
+                count.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 排序键：创建时间倒序，相同时间按报告ID排序
+     */
+    @Value
+    private static class Key {
+        LocalDateTime createdAt;
+        String reportId;
+    }
+}
@@ -0,0 +1,55 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/**
+ * 日期范围报告的去重键：同一账号、同一数据源下同一聊天、同一日期范围、同一模型的分析结果视为相同
+ */
+@Value
+public class ReportRangeKey {
+
+    /**
+     * Chatlog账号
+     */
+    String account;
+
+    /**
+     * Chatlog数据源标识，修改账号的服务地址后不复用之前的报告
+     */
+    String source;
+
+    /**
+     * 聊天ID
+     */
+    String chatId;
+
+    /**
+     * 开始日期
+     */
+    LocalDate startDate;
+
+    /**
+     * 结束日期
+     */
+    LocalDate endDate;
+
+    /**
+     * AI模型名称
+     */
+    String model;
+
+    /**
+     * 根据报告生成去重键，非日期范围报告返回null
+     */
+    public static ReportRangeKey of(AnalysisReport report) {
+        if (report.getChatId() == null || report.getStartDate() == null || report.getEndDate() == null) {
+            return null;
+        }
+        return new ReportRangeKey(ChatlogClientRouter.normalizeAccount(report.getAccount()), report.getSource(),
+                report.getChatId(), report.getStartDate(), report.getEndDate(), report.getModel());
+    }
+}
@@ -0,0 +1,66 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportStoreStats;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+
+import java.util.List;
+
+/**
+ * 分析报告存储接口
+ */
+public interface ReportRepository {
+
+    /**
+     * 保存分析报告（新增或覆盖同ID的报告）
+     *
+     * @param report 分析报告
+     */
+    void save(AnalysisReport report);
+
+    /**
+     * 根据ID获取分析报告
+     *
+     * @param reportId 报告ID
+     * @return 分析报告，不存在时返回null
+     */
+    AnalysisReport findById(String reportId);
+
+    /**
+     * 根据去重键获取已完成的日期范围报告（只包含创建时日期范围已经结束的报告）
+     *
+     * @param rangeKey 去重键
+     * @return 已完成的分析报告，不存在时返回null
+     */
+    AnalysisReport findCompletedByRangeKey(ReportRangeKey rangeKey);
+
+    /**
+     * 获取指定状态的报告ID列表（不读取报告内容）
+     *
+     * @param status 报告状态
+     * @return 报告ID列表
+     */
+    List<String> findIdsByStatus(String status);
+
+    /**
+     * 分页查询报告摘要（按创建时间倒序，不读取报告内容）
+     *
+     * @param query 查询条件
+     * @param page  页码（从1开始）
+     * @param size  每页记录数
+     * @return 分页结果
+     */
+    PageResult<ReportSummary> findSummaries(ReportHistoryQuery query, int page, int size);
+
+    /**
+     * 获取报告数量
+     */
+    int count();
+
+    /**
+     * 获取存储统计信息
+     */
+    ReportStoreStats getStats();
+}
@@ -1,8 +1,11 @@
 package com.wechat.dailyreport.service;
 
 import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import com.wechat.dailyreport.event.AIConfigChangedEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
@@ -15,6 +18,9 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class AIConfigService {
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // 使用内存存储配置更改（生产环境应该使用数据库）
     private final Map<String, String> configOverrides = new ConcurrentHashMap<>();
 
@@ -44,6 +50,9 @@ public class AIConfigService {
         saveConfigValue("temperature", String.valueOf(config.getTemperature()));
         saveConfigValue("max_tokens", String.valueOf(config.getMaxTokens()));
 
+        // 通知客户端池淘汰旧配置的客户端
+        eventPublisher.publishEvent(new AIConfigChangedEvent(this, getAIConfig()));
+
         log.info("AI服务配置更新完成");
     }
 
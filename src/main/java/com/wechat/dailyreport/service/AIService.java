@@ -1,16 +1,36 @@
 package com.wechat.dailyreport.service;
 
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
 import com.wechat.dailyreport.client.AIServiceClient;
 import com.wechat.dailyreport.dto.config.AIServiceConfig;
 import com.wechat.dailyreport.dto.request.AIAnalysisRequest;
 import com.wechat.dailyreport.dto.response.AIAnalysisResponse;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.repository.CompletionCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * AI服务
@@ -25,6 +45,38 @@ public class AIService {
     @Autowired
     private AIConfigService aiConfigService;
 
+    @Autowired
+    private StructureMergeService structureMergeService;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Autowired
+    private CompletionCache completionCache;
+
+    @Value("${app.analysis.chunk.max-concurrency:3}")
+    private int chunkMaxConcurrency;
+
+    /**
+     * 分段结构化分析线程池，限制同时发往AI服务的分段请求数
+     */
+    private ExecutorService chunkExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        chunkExecutor = Executors.newFixedThreadPool(chunkMaxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "ai-chunk-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        chunkExecutor.shutdownNow();
+    }
+
     /**
      * 结构化分析聊天数据
      *
@@ -38,7 +90,7 @@ public class AIService {
         String systemPrompt = getStructurePrompt();
 
         AIAnalysisRequest request = buildRequest(config, systemPrompt, chatData);
-        AIAnalysisResponse response = callAIService(config, request);
+        AIAnalysisResponse response = callAIService(config, request, AnalysisMetrics.CALL_STRUCTURE);
 
         String result = extractContent(response);
         log.info("结构化分析完成，结果长度: {}", result.length());
@@ -46,6 +98,102 @@ public class AIService {
         return result;
     }
 
+    /**
+     * 分段结构化分析聊天数据（Map-Reduce）
+     * 各分段并行调用结构化分析，再将部分结果合并为一个结构化文档
+     *
+     * @param segments 按时间顺序排列的分段聊天数据
+     * @return 合并后的结构化分析结果
+     */
+    public String structureAnalysisChunked(List<String> segments) {
+        log.info("开始进行分段结构化分析，分段数量: {}", segments.size());
+
+        List<JSONObject> partials = new ArrayList<>();
+        List<String> contents = structureAnalysisAll(segments);
+        for (int i = 0; i < contents.size(); i++) {
+            JSONObject partial = structureMergeService.parseStructure(contents.get(i));
+            if (partial == null) {
+                log.warn("分段结构化分析结果不是有效的JSON，已忽略: segment={}", i);
+                continue;
+            }
+            partials.add(partial);
+        }
+
+        if (partials.isEmpty()) {
+            throw new RuntimeException("分段结构化分析未返回有效结果");
+        }
+
+        String result = JSON.toJSONString(structureMergeService.merge(partials));
+        log.info("分段结构化分析完成，有效分段: {}/{}，结果长度: {}", partials.size(), segments.size(), result.length());
+
+        return result;
+    }
+
+    /**
+     * 并行对多段聊天数据分别进行结构化分析，并发数受分段线程池限制
+     *
+     * @param chatData 多段聊天数据
+     * @return 与输入顺序对应的结构化分析结果
+     */
+    public List<String> structureAnalysisAll(List<String> chatData) {
+        // 按完成顺序获取结果，任一分段失败时立即取消其余分段：
+        // 线程池返回的Future取消时会中断执行中的分段，排队中的分段不再执行
+        CompletionService<String> completion = new ExecutorCompletionService<>(chunkExecutor);
+        List<Future<String>> futures = new ArrayList<>(chatData.size());
+        Map<Future<String>, Integer> indexes = new HashMap<>();
+        for (String data : chatData) {
+            Future<String> future = completion.submit(() -> structureAnalysis(data));
+            indexes.put(future, futures.size());
+            futures.add(future);
+        }
+
+        String[] results = new String[chatData.size()];
+        try {
+            for (int pending = results.length; pending > 0; pending--) {
+                Future<String> done = completion.take();
+                results[indexes.get(done)] = done.get();
+            }
+            return Arrays.asList(results);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("分段结构化分析失败: " + cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("分段结构化分析被中断");
+        } finally {
+            // 从后往前取消，排队中的分段先于执行中的分段取消，空出的线程不会再取到它们
+            for (int i = futures.size() - 1; i >= 0; i--) {
+                futures.get(i).cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 合并多天结构化分析的定性内容（话题、情感、互动模式、关键事件）
+     *
+     * @param dailyQualitative 按日期排列的每天定性内容（JSON）
+     * @return 合并后的定性内容（JSON）
+     */
+    public String mergeStructures(String dailyQualitative) {
+        log.info("开始合并每日结构化分析，输入长度: {}", dailyQualitative.length());
+
+        AIServiceConfig config = aiConfigService.getAIConfig();
+        AIAnalysisRequest request = buildRequest(config, getMergePrompt(), dailyQualitative);
+        AIAnalysisResponse response = callAIService(config, request, AnalysisMetrics.CALL_MERGE);
+
+        String result = extractContent(response);
+        log.info("每日结构化分析合并完成，结果长度: {}", result.length());
+
+        return result;
+    }
+
+    /**
+     * 结构化分析提示词的指纹，提示词变化后此前保存的每日结构化结果不再使用
+     */
+    public String getStructurePromptVersion() {
+        return DigestUtils.md5DigestAsHex(getStructurePrompt().getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+    }
+
     /**
      * 生成最终报告
      *
@@ -59,7 +207,7 @@ public class AIService {
         String systemPrompt = getReportPrompt();
 
         AIAnalysisRequest request = buildRequest(config, systemPrompt, structuredData);
-        AIAnalysisResponse response = callAIService(config, request);
+        AIAnalysisResponse response = callAIService(config, request, AnalysisMetrics.CALL_REPORT);
 
         String result = extractContent(response);
         log.info("最终报告生成完成，结果长度: {}", result.length());
@@ -67,6 +215,44 @@ public class AIService {
         return result;
     }
 
+    /**
+     * 以流式方式生成最终报告，生成过程中每收到一段内容即回调一次
+     *
+     * @param structuredData 结构化数据
+     * @param onDelta        增量内容回调
+     * @return 完整的最终报告
+     */
+    public String generateReportStreaming(String structuredData, Consumer<String> onDelta) {
+        log.info("开始流式生成最终报告");
+
+        AIServiceConfig config = aiConfigService.getAIConfig();
+        if (!aiServiceClient.isConfigured(config)) {
+            throw new RuntimeException("AI服务API密钥未配置");
+        }
+
+        AIAnalysisRequest request = buildRequest(config, getReportPrompt(), structuredData);
+        String cacheKey = completionCache.isEnabled() ? CompletionCache.keyOf(request) : null;
+        AIAnalysisResponse response = getCachedResponse(cacheKey, request, AnalysisMetrics.CALL_REPORT);
+        if (response != null) {
+            // 命中缓存时一次性推送完整内容
+            onDelta.accept(extractContent(response));
+        } else {
+            try {
+                response = aiServiceClient.analyzeStreaming(config, request, onDelta);
+                analysisMetrics.recordTokens(AnalysisMetrics.CALL_REPORT, request.getModel(), response.getUsage());
+            } catch (Exception e) {
+                log.error("流式调用AI服务失败", e);
+                throw new RuntimeException("调用AI服务失败: " + e.getMessage());
+            }
+            cacheResponse(cacheKey, response);
+        }
+
+        String result = extractContent(response);
+        log.info("最终报告流式生成完成，结果长度: {}", result.length());
+
+        return result;
+    }
+
     /**
      * 构建AI请求
      */
@@ -84,19 +270,59 @@ public class AIService {
     }
 
     /**
-     * 调用AI服务
+     * 调用AI服务，并记录令牌用量；相同的请求直接返回缓存的响应
      */
-    private AIAnalysisResponse callAIService(AIServiceConfig config, AIAnalysisRequest request) {
-        if (StringUtils.isBlank(config.getApiKey())) {
+    private AIAnalysisResponse callAIService(AIServiceConfig config, AIAnalysisRequest request, String call) {
+        if (!aiServiceClient.isConfigured(config)) {
             throw new RuntimeException("AI服务API密钥未配置");
         }
 
+        String cacheKey = completionCache.isEnabled() ? CompletionCache.keyOf(request) : null;
+        AIAnalysisResponse cached = getCachedResponse(cacheKey, request, call);
+        if (cached != null) {
+            return cached;
+        }
+
+        AIAnalysisResponse response;
         try {
-            return aiServiceClient.analyze(config.getApiKey(), config.getBaseUrl(), request);
+            response = aiServiceClient.analyze(config, request);
+            analysisMetrics.recordTokens(call, request.getModel(), response.getUsage());
         } catch (Exception e) {
             log.error("调用AI服务失败", e);
             throw new RuntimeException("调用AI服务失败: " + e.getMessage());
         }
+        cacheResponse(cacheKey, response);
+        return response;
+    }
+
+    /**
+     * 查询AI响应缓存，缓存未启用时返回null
+     */
+    private AIAnalysisResponse getCachedResponse(String cacheKey, AIAnalysisRequest request, String call) {
+        if (cacheKey == null) {
+            return null;
+        }
+        AIAnalysisResponse cached = completionCache.get(cacheKey);
+        analysisMetrics.recordCompletionCache(call, request.getModel(), cached != null);
+        if (cached != null) {
+            log.info("命中AI响应缓存: call={}, key={}", call, cacheKey);
+        }
+        return cached;
+    }
+
+    /**
+     * 缓存完整的AI响应，内容为空或因长度限制被截断的响应不缓存
+     */
+    private void cacheResponse(String cacheKey, AIAnalysisResponse response) {
+        if (cacheKey == null || response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
+            return;
+        }
+        AIAnalysisResponse.AIChoice choice = response.getChoices().get(0);
+        if (choice.getMessage() == null || StringUtils.isBlank(choice.getMessage().getContent())
+                || "length".equals(choice.getFinishReason())) {
+            return;
+        }
+        completionCache.put(cacheKey, response);
     }
 
     /**
@@ -123,12 +349,15 @@ public class AIService {
      */
     private String getStructurePrompt() {
         return "你是一个专业的聊天数据分析师。请分析以下微信聊天记录，并输出结构化的JSON数据。\n\n" +
+                "聊天记录格式说明：\n" +
+                "- [发言人] 部分列出别名与昵称的对应关系（如 A=张三），按发言数从多到少排列\n" +
+                "- [聊天记录] 部分按日期分组（# 日期），每行格式为「时:分 别名: 内容」\n" +
+                "- 同一人连续的多条发言合并在一行，用 / 分隔，每段计为一条消息\n" +
+                "- 输出中的人名一律使用昵称，不要使用别名；时间请带上日期\n" +
+                "- 消息数、参与者、时间范围和发言数由系统统计，无需输出\n\n" +
                 "请按照以下格式分析：\n" +
                 "{\n" +
                 "  \"summary\": {\n" +
-                "    \"total_messages\": \"总消息数\",\n" +
-                "    \"participants\": [\"参与者列表\"],\n" +
-                "    \"time_range\": \"时间范围\",\n" +
                 "    \"main_topics\": [\"主要话题列表\"]\n" +
                 "  },\n" +
                 "  \"sentiment_analysis\": {\n" +
@@ -136,7 +365,6 @@ public class AIService {
                 "    \"emotional_highlights\": [\"情感亮点\"]\n" +
                 "  },\n" +
                 "  \"interaction_patterns\": {\n" +
-                "    \"most_active_participant\": \"最活跃参与者\",\n" +
                 "    \"response_patterns\": \"回复模式分析\",\n" +
                 "    \"conversation_flow\": \"对话流程特点\"\n" +
                 "  },\n" +
@@ -150,7 +378,6 @@ public class AIService {
                 "  \"top_speakers\": [\n" +
                 "    {\n" +
                 "      \"nickname\": \"群昵称\",\n" +
-                "      \"message_count\": \"发言数\",\n" +
                 "      \"main_topics\": [\"主要参与的话题1\", \"话题2\"],\n" +
                 "      \"speaking_style\": [\"风格标签1\", \"风格标签2\"],\n" +
                 "      \"tone_type\": \"语气类型(如：幽默/严肃/随和/专业)\",\n" +
@@ -169,7 +396,36 @@ public class AIService {
                 "  ]\n" +
                 "}\n\n" +
                 "请确保输出格式为有效的JSON，不要包含任何额外的解释文字。\n" +
-                "注意：top_speakers要提取发言最多的前10个人（如果不足10人则全部列出），hot_messages要选取5-10条热度较高的发言。";
+                "注意：top_speakers按 [发言人] 表的顺序为前10个人各输出一项（如果不足10人则全部列出），hot_messages要选取5-10条热度较高的发言。";
+    }
+
+    /**
+     * 获取每日结构化分析合并提示词
+     */
+    private String getMergePrompt() {
+        return "你是一个专业的聊天数据分析师。以下是同一个群聊按天分别进行结构化分析得到的定性内容（JSON数组，按日期排列）。" +
+                "请将它们合并为整个时间段的结论，输出结构化的JSON数据。\n\n" +
+                "请按照以下格式输出：\n" +
+                "{\n" +
+                "  \"main_topics\": [\"整个时间段的主要话题，合并相同或相近的话题，按重要程度排列，最多10个\"],\n" +
+                "  \"sentiment_analysis\": {\n" +
+                "    \"overall_sentiment\": \"整体情感倾向(积极/中性/消极)\",\n" +
+                "    \"emotional_highlights\": [\"情感亮点，最多10条\"]\n" +
+                "  },\n" +
+                "  \"interaction_patterns\": {\n" +
+                "    \"response_patterns\": \"回复模式分析，体现这段时间的变化\",\n" +
+                "    \"conversation_flow\": \"对话流程特点\"\n" +
+                "  },\n" +
+                "  \"key_events\": [\n" +
+                "    {\n" +
+                "      \"time\": \"时间（带日期）\",\n" +
+                "      \"event\": \"关键事件描述\",\n" +
+                "      \"participants\": [\"相关参与者\"]\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}\n\n" +
+                "请确保输出格式为有效的JSON，不要包含任何额外的解释文字。\n" +
+                "注意：key_events按时间顺序选取整个时间段最重要的事件，最多20条；不要编造输入中没有的信息。";
     }
 
     /**
@@ -198,7 +454,8 @@ public class AIService {
                 "   - 【发言达人榜】部分必须包含一个带有 id='top-speakers-data' 的隐藏div，存储JSON格式的top_speakers数据\n" +
                 "   - 【热门发言精选】部分必须包含一个带有 id='hot-messages-data' 的隐藏div，存储JSON格式的hot_messages数据\n" +
                 "   - 格式示例：<div id='top-speakers-data' style='display:none;'>[{...}]</div>\n" +
-                "   - 这两个section要有简单的文字描述，但详细展示会由前端JavaScript动态生成\n\n" +
+                "   - 这两个section要有简单的文字描述，但详细展示会由前端JavaScript动态生成\n" +
+                "8. 消息数、参与者、发言数以及 statistics 中的每小时/每天发言数为精确统计，可直接引用（如活跃时段分析）\n\n" +
                 "请基于提供的结构化数据生成报告，不要编造不存在的信息。";
     }
 }
\ No newline at end of file
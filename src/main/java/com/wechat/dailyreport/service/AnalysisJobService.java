@@ -0,0 +1,135 @@
+package com.wechat.dailyreport.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分析任务调度服务
+ * 使用有界队列和固定大小的工作线程池异步执行分析任务，避免占用Web请求线程
+ */
+@Service
+@Slf4j
+public class AnalysisJobService {
+
+    @Value("${app.analysis.job.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${app.analysis.job.queue-capacity:20}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 初始化工作线程池
+     */
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "analysis-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        executor = new ThreadPoolExecutor(
+                workerThreads,
+                workerThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+
+        log.info("分析任务线程池初始化完成: workerThreads={}, queueCapacity={}", workerThreads, queueCapacity);
+    }
+
+    /**
+     * 关闭工作线程池
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交分析任务
+     *
+     * @param jobId 任务ID（即报告ID）
+     * @param task  任务内容
+     * @throws RuntimeException 队列已满时抛出
+     */
+    public void submit(String jobId, Runnable task) {
+        try {
+            executor.execute(new AnalysisJob(jobId, task));
+            log.info("分析任务已入队: jobId={}, queueSize={}", jobId, executor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            log.warn("分析任务队列已满，拒绝任务: jobId={}", jobId);
+            throw new RuntimeException("分析任务队列已满，请稍后再试");
+        }
+    }
+
+    /**
+     * 获取任务在队列中的位置
+     *
+     * @param jobId 任务ID
+     * @return 排队位置（从1开始），不在队列中（已开始执行或已结束）时返回0
+     */
+    public int getQueuePosition(String jobId) {
+        int position = 0;
+        for (Runnable runnable : executor.getQueue()) {
+            position++;
+            if (runnable instanceof AnalysisJob && ((AnalysisJob) runnable).jobId.equals(jobId)) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 获取当前排队任务数
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 获取正在执行的任务数
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 带任务ID的任务包装类，用于计算排队位置
+     */
+    private static class AnalysisJob implements Runnable {
+        private final String jobId;
+        private final Runnable task;
+
+        AnalysisJob(String jobId, Runnable task) {
+            this.jobId = jobId;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("分析任务执行异常: jobId={}", jobId, e);
+            }
+        }
+    }
+}
@@ -1,16 +1,32 @@
 package com.wechat.dailyreport.service;
 
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.constant.AppConstants;
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.AnalysisJobStatus;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.repository.ReportRangeKey;
+import com.wechat.dailyreport.repository.ReportRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * 聊天分析服务
@@ -22,31 +38,72 @@ public class ChatAnalysisService {
     @Autowired
     private ChatlogService chatlogService;
 
+    @Autowired
+    private ChatlogClientRouter chatlogClientRouter;
+
     @Autowired
     private DataProcessorService dataProcessorService;
 
     @Autowired
     private AIService aiService;
 
-    // 使用内存存储分析报告（生产环境应该使用数据库）
-    private final Map<String, AnalysisReport> reportStorage = new ConcurrentHashMap<>();
+    @Autowired
+    private ChatStatisticsService chatStatisticsService;
+
+    @Autowired
+    private StructureMergeService structureMergeService;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private AIConfigService aiConfigService;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private ReportStreamService reportStreamService;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Autowired
+    private DailyStructureService dailyStructureService;
+
+    @Value("${app.analysis.chunk.enabled:true}")
+    private boolean chunkEnabled;
+
+    @Value("${app.analysis.report.streaming:true}")
+    private boolean streamingEnabled;
+
+    // 处理中的报告保留在内存中，供进度查询使用，完成或失败后移除
+    private final Map<String, AnalysisReport> activeReports = new ConcurrentHashMap<>();
+
+    // 进行中的分析任务（按去重键），用于合并相同的并发分析请求
+    private final Map<ReportRangeKey, InFlightAnalysis> inFlightAnalyses = new ConcurrentHashMap<>();
 
     /**
      * 分析报告数据类
      */
     public static class AnalysisReport {
         private String reportId;
+        private String account;
+        private String source;
         private String chatId;
         private String chatName;
         private LocalDate analysisDate;
         private LocalDate startDate;
         private LocalDate endDate;
+        private String model;
         private String status;
+        private String stage;
         private String rawData;
         private String structuredData;
         private String finalReport;
         private LocalDateTime createdAt;
         private LocalDateTime completedAt;
+        private boolean rangeFinished;
 
         // Getters and Setters
         public String getReportId() {
@@ -58,6 +115,24 @@ public class ChatAnalysisService {
             return this;
         }
 
+        public String getAccount() {
+            return account;
+        }
+
+        public AnalysisReport setAccount(String account) {
+            this.account = account;
+            return this;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public AnalysisReport setSource(String source) {
+            this.source = source;
+            return this;
+        }
+
         public String getChatId() {
             return chatId;
         }
@@ -103,6 +178,15 @@ public class ChatAnalysisService {
             return this;
         }
 
+        public String getModel() {
+            return model;
+        }
+
+        public AnalysisReport setModel(String model) {
+            this.model = model;
+            return this;
+        }
+
         public String getStatus() {
             return status;
         }
@@ -112,6 +196,15 @@ public class ChatAnalysisService {
             return this;
         }
 
+        public String getStage() {
+            return stage;
+        }
+
+        public AnalysisReport setStage(String stage) {
+            this.stage = stage;
+            return this;
+        }
+
         public String getRawData() {
             return rawData;
         }
@@ -156,69 +249,283 @@ public class ChatAnalysisService {
             this.completedAt = completedAt;
             return this;
         }
+
+        /**
+         * 报告创建时日期范围是否已经结束，只有已结束范围的报告才会被相同请求复用
+         */
+        public boolean isRangeFinished() {
+            return rangeFinished;
+        }
+
+        public AnalysisReport setRangeFinished(boolean rangeFinished) {
+            this.rangeFinished = rangeFinished;
+            return this;
+        }
     }
 
+    /**
+     * 同步执行日期范围分析（在调用线程中完成全部步骤）
+     * 相同聊天、日期范围和模型的分析正在进行时，等待其结果而不重复分析
+     */
     public AnalysisReport analyzeChatRange(String niceName, String startDate, String endDate) {
-        log.info("开始分析日期范围聊天数据: niceName={}, startDate={}, endDate={}", niceName, startDate, endDate);
+        return analyzeChatRange(null, niceName, startDate, endDate);
+    }
+
+    /**
+     * 同步执行指定Chatlog账号下的日期范围分析
+     *
+     * @param account Chatlog账号，为空时使用默认账号
+     */
+    public AnalysisReport analyzeChatRange(String account, String niceName, String startDate, String endDate) {
+        log.info("开始分析日期范围聊天数据: account={}, niceName={}, startDate={}, endDate={}", account, niceName, startDate, endDate);
 
         // 检查是否已存在相同的分析报告
-        AnalysisReport existingReport = getExistingRangeReport(niceName, startDate, startDate);
-        if (existingReport != null && "COMPLETED".equals(existingReport.getStatus())) {
+        ReportRangeKey rangeKey = buildRangeKey(account, niceName, startDate, endDate);
+        AnalysisReport existingReport = getExistingRangeReport(rangeKey);
+        if (existingReport != null) {
             log.info("发现已存在的分析报告: {}", existingReport.getReportId());
             return existingReport;
         }
 
+        InFlightAnalysis inFlight = new InFlightAnalysis();
+        InFlightAnalysis running = inFlightAnalyses.putIfAbsent(rangeKey, inFlight);
+        if (running != null) {
+            log.info("相同的分析任务正在进行，等待其结果: niceName={}, startDate={}, endDate={}", niceName, startDate, endDate);
+            return await(running.completed);
+        }
+
+        AnalysisReport report = startInFlight(rangeKey, inFlight, startDate, endDate);
+        if ("COMPLETED".equals(report.getStatus())) {
+            return report;
+        }
+        runInFlight(rangeKey, inFlight, report, startDate, endDate);
+        return await(inFlight.completed);
+    }
+
+    /**
+     * 异步提交日期范围分析任务，立即返回报告记录
+     * 报告状态为PROCESSING，可通过 {@link #getJobStatus(String)} 查询进度
+     * 相同聊天、日期范围和模型的分析正在进行时，直接返回进行中的报告
+     */
+    public AnalysisReport submitAnalysisRange(String niceName, String startDate, String endDate) {
+        return submitAnalysisRange(null, niceName, startDate, endDate);
+    }
+
+    /**
+     * 异步提交指定Chatlog账号下的日期范围分析任务
+     *
+     * @param account Chatlog账号，为空时使用默认账号
+     */
+    public AnalysisReport submitAnalysisRange(String account, String niceName, String startDate, String endDate) {
+        log.info("提交日期范围分析任务: account={}, niceName={}, startDate={}, endDate={}", account, niceName, startDate, endDate);
+
+        // 检查是否已存在相同的分析报告
+        ReportRangeKey rangeKey = buildRangeKey(account, niceName, startDate, endDate);
+        AnalysisReport existingReport = getExistingRangeReport(rangeKey);
+        if (existingReport != null) {
+            log.info("发现已存在的分析报告: {}", existingReport.getReportId());
+            return existingReport;
+        }
+
+        InFlightAnalysis inFlight = new InFlightAnalysis();
+        InFlightAnalysis running = inFlightAnalyses.putIfAbsent(rangeKey, inFlight);
+        if (running != null) {
+            AnalysisReport runningReport = await(running.created);
+            log.info("相同的分析任务正在进行，复用报告: reportId={}", runningReport.getReportId());
+            return runningReport;
+        }
+
+        AnalysisReport report = startInFlight(rangeKey, inFlight, startDate, endDate);
+        if ("COMPLETED".equals(report.getStatus())) {
+            return report;
+        }
+
+        try {
+            analysisJobService.submit(report.getReportId(),
+                    () -> runInFlight(rangeKey, inFlight, report, startDate, endDate));
+        } catch (RuntimeException e) {
+            updateReportAsFailed(report, e.getMessage());
+            releaseInFlight(rangeKey, inFlight, e);
+            throw e;
+        }
+
+        return report;
+    }
+
+    /**
+     * 占用进行中任务槽位后创建报告记录；期间若已有其他请求完成相同分析，直接返回已完成报告
+     */
+    private AnalysisReport startInFlight(ReportRangeKey rangeKey, InFlightAnalysis inFlight,
+                                         String startDate, String endDate) {
+        try {
+            AnalysisReport report = getExistingRangeReport(rangeKey);
+            if (report != null) {
+                inFlight.created.complete(report);
+                inFlight.completed.complete(report);
+                inFlightAnalyses.remove(rangeKey, inFlight);
+                return report;
+            }
+
+            report = prepareAnalysisReport(rangeKey, startDate, endDate);
+            inFlight.created.complete(report);
+            return report;
+        } catch (RuntimeException e) {
+            releaseInFlight(rangeKey, inFlight, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行进行中的分析任务，并将结果通知所有等待者
+     */
+    private void runInFlight(ReportRangeKey rangeKey, InFlightAnalysis inFlight, AnalysisReport report,
+                             String startDate, String endDate) {
+        try {
+            executeAnalysis(report, startDate, endDate);
+            inFlightAnalyses.remove(rangeKey, inFlight);
+            inFlight.completed.complete(report);
+        } catch (RuntimeException e) {
+            // 失败状态已在executeAnalysis中记录
+            log.warn("分析任务失败: reportId={}, error={}", report.getReportId(), e.getMessage());
+            releaseInFlight(rangeKey, inFlight, e);
+        }
+    }
+
+    /**
+     * 释放进行中任务槽位，并将异常传递给所有等待者
+     */
+    private void releaseInFlight(ReportRangeKey rangeKey, InFlightAnalysis inFlight, RuntimeException e) {
+        inFlightAnalyses.remove(rangeKey, inFlight);
+        inFlight.created.completeExceptionally(e);
+        inFlight.completed.completeExceptionally(e);
+    }
+
+    /**
+     * 等待进行中任务的结果
+     */
+    private static AnalysisReport await(CompletableFuture<AnalysisReport> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 进行中的分析任务：报告创建后完成created，分析结束后完成completed
+     */
+    private static class InFlightAnalysis {
+        private final CompletableFuture<AnalysisReport> created = new CompletableFuture<>();
+        private final CompletableFuture<AnalysisReport> completed = new CompletableFuture<>();
+    }
+
+    /**
+     * 获取分析任务状态
+     */
+    public AnalysisJobStatus getJobStatus(String reportId) {
+        AnalysisReport report = getAnalysisReport(reportId);
+        if (report == null) {
+            return null;
+        }
+
+        AnalysisJobStatus jobStatus = new AnalysisJobStatus()
+                .setReportId(reportId)
+                .setStatus(report.getStatus())
+                .setStage(report.getStage())
+                .setQueuePosition(0);
+
+        if ("PROCESSING".equals(report.getStatus())) {
+            jobStatus.setQueuePosition(analysisJobService.getQueuePosition(reportId));
+        } else if ("FAILED".equals(report.getStatus())) {
+            jobStatus.setErrorMessage(report.getFinalReport());
+        }
+        return jobStatus;
+    }
+
+    /**
+     * 校验聊天会话并创建报告记录
+     */
+    private AnalysisReport prepareAnalysisReport(ReportRangeKey rangeKey, String startDate, String endDate) {
         // 获取聊天会话信息
-        ChatlogService.ChatSession chatSession = chatlogService.getChatSessionByNiceName(niceName);
+        String niceName = rangeKey.getChatId();
+        ChatlogService.ChatSession chatSession = chatlogService.getChatSessionByNiceName(rangeKey.getAccount(), niceName);
         if (chatSession == null) {
             throw new RuntimeException("未找到聊天会话: " + niceName);
         }
 
         // 创建新的分析报告记录
-        AnalysisReport report = createAnalysisReportRange(niceName, chatSession.getNickName(), LocalDate.parse(startDate), LocalDate.parse(endDate));
+        return createAnalysisReportRange(rangeKey.getAccount(), rangeKey.getSource(), niceName, chatSession.getNickName(),
+                LocalDate.parse(startDate), LocalDate.parse(endDate));
+    }
+
+    /**
+     * 执行分析流水线：获取数据、预处理、结构化分析、生成报告、保存结果
+     */
+    private void executeAnalysis(AnalysisReport report, String startDate, String endDate) {
+        String niceName = report.getChatId();
+        String model = report.getModel();
 
         try {
             // 1. 获取日期范围内的聊天数据
             log.info("步骤1: 获取日期范围内的聊天数据");
-            List<ChatlogService.ChatMessage> allMessages = chatlogService.getChatMessagesRange(niceName, startDate, endDate);
+            updateStage(report, AppConstants.ReportStage.FETCHING);
+            MessageBatch allMessages = analysisMetrics.timeStage(AnalysisMetrics.STAGE_FETCH, model,
+                    () -> chatlogService.getChatMessagesRange(report.getAccount(), niceName, startDate, endDate));
 
             if (allMessages.isEmpty()) {
-                updateReportAsFailed(report, "指定日期范围无聊天数据");
                 throw new RuntimeException("指定日期范围无聊天数据");
             }
 
             // 2. 数据预处理
             log.info("步骤2: 数据预处理");
-            String processedData = dataProcessorService.processMessages(allMessages);
-            String statistics = dataProcessorService.generateMessageStatistics(allMessages);
-            String rawData = statistics + "\n\n" + processedData;
-
-            // 更新原始数据
-            report.setRawData(rawData);
-            reportStorage.put(report.getReportId(), report);
+            updateStage(report, AppConstants.ReportStage.PREPROCESSING);
+            String processedData = analysisMetrics.timeStage(AnalysisMetrics.STAGE_PREPROCESS, model, () -> {
+                String processed = dataProcessorService.processMessages(allMessages);
+                String statistics = dataProcessorService.generateMessageStatistics(allMessages);
+
+                // 更新原始数据
+                report.setRawData(statistics + "\n\n" + processed);
+                return processed;
+            });
+            analysisMetrics.recordTranscript(model, allMessages.size(),
+                    processedData.getBytes(StandardCharsets.UTF_8).length);
 
             // 3. AI结构化分析
             log.info("步骤3: AI结构化分析");
-            String structuredData = aiService.structureAnalysis(processedData);
+            updateStage(report, AppConstants.ReportStage.STRUCTURING);
+            String structuredData = analysisMetrics.timeStage(AnalysisMetrics.STAGE_STRUCTURE, model,
+                    () -> structureMergeService.applyStatistics(structureAnalysis(report, allMessages, processedData),
+                            chatStatisticsService.compute(allMessages)));
 
             // 更新结构化数据
             report.setStructuredData(structuredData);
-            reportStorage.put(report.getReportId(), report);
 
             // 4. AI生成最终报告
             log.info("步骤4: AI生成最终报告");
-            String finalReport = aiService.generateReport(structuredData);
+            updateStage(report, AppConstants.ReportStage.GENERATING);
+            String finalReport = analysisMetrics.timeStage(AnalysisMetrics.STAGE_REPORT, model, () -> streamingEnabled
+                    ? aiService.generateReportStreaming(structuredData,
+                            delta -> reportStreamService.publish(report.getReportId(), delta))
+                    : aiService.generateReport(structuredData));
 
             // 5. 保存最终结果
             log.info("步骤5: 保存分析结果");
+            updateStage(report, AppConstants.ReportStage.SAVING);
             report.setFinalReport(finalReport)
+                    .setRangeFinished(isRangeFinished(report, allMessages))
+                    .setStage(AppConstants.ReportStage.DONE)
                     .setStatus("COMPLETED")
                     .setCompletedAt(LocalDateTime.now());
 
-            reportStorage.put(report.getReportId(), report);
+            reportRepository.save(report);
+            activeReports.remove(report.getReportId());
+            reportStreamService.complete(report.getReportId());
 
             log.info("日期范围聊天分析完成: reportId={}", report.getReportId());
-            return report;
 
         } catch (Exception e) {
             log.error("日期范围聊天分析失败: reportId={}", report.getReportId(), e);
@@ -228,78 +535,110 @@ public class ChatAnalysisService {
     }
 
     /**
-     * 获取分析报告
+     * 报告创建时日期范围是否已经结束（按消息的时区偏移判断，与消息缓存和每日结构化分析的规则一致）。
+     * 范围包含当天时消息仍在增加，这样的报告不被复用，之后的相同请求重新分析
      */
-    public AnalysisReport getAnalysisReport(String reportId) {
-        return reportStorage.get(reportId);
+    static boolean isRangeFinished(AnalysisReport report, MessageBatch messages) {
+        ZoneOffset offset = messages.getTime(messages.size() - 1).getOffset();
+        return ChatlogService.isDayOver(report.getEndDate(), offset,
+                report.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant());
     }
 
     /**
-     * 获取分析历史记录
+     * 结构化分析：启用分层分析时按天分析并复用已保存的日期；
+     * 否则数据量超过单次请求的令牌上限时切分为多个分段并行分析后合并
      */
-    public Map<String, AnalysisReport> getAnalysisHistory() {
-        return new HashMap<>(reportStorage);
+    private String structureAnalysis(AnalysisReport report, MessageBatch allMessages, String processedData) {
+        if (dailyStructureService.isEnabled()) {
+            return dailyStructureService.analyze(report.getAccount(), report.getSource(), report.getChatId(),
+                    report.getModel(), allMessages);
+        }
+        if (chunkEnabled) {
+            List<MessageBatch> segments = dataProcessorService.splitIntoSegments(allMessages);
+            if (segments.size() > 1) {
+                List<String> segmentData = segments.stream()
+                        .map(dataProcessorService::processMessages)
+                        .collect(Collectors.toList());
+                return aiService.structureAnalysisChunked(segmentData);
+            }
+        }
+        return aiService.structureAnalysis(processedData);
     }
 
     /**
-     * 检查是否存在相同的分析报告
+     * 更新报告处理阶段
      */
-    private AnalysisReport getExistingReport(String chatId, LocalDate analysisDate) {
-        return reportStorage.values().stream()
-                .filter(report -> chatId.equals(report.getChatId()) &&
-                        analysisDate.equals(report.getAnalysisDate()))
-                .findFirst()
-                .orElse(null);
+    private void updateStage(AnalysisReport report, String stage) {
+        report.setStage(stage);
     }
 
     /**
-     * 检查是否存在相同的日期范围分析报告
+     * 将服务重启前未完成的报告标记为失败
      */
-    private AnalysisReport getExistingRangeReport(String niceName, String startDate, String endDate) {
-        return reportStorage.values().stream()
-                .filter(report -> niceName.equals(report.getChatId()) &&
-                        startDate.equals(report.getStartDate()) &&
-                        endDate.equals(report.getEndDate()))
-                .findFirst()
-                .orElse(null);
+    @PostConstruct
+    public void recoverInterruptedReports() {
+        for (String reportId : reportRepository.findIdsByStatus("PROCESSING")) {
+            AnalysisReport report = reportRepository.findById(reportId);
+            if (report != null) {
+                log.warn("服务重启前的分析任务未完成，标记为失败: reportId={}", reportId);
+                updateReportAsFailed(report, "服务重启，分析任务中断");
+            }
+        }
     }
 
     /**
-     * 创建分析报告记录
+     * 获取分析报告
      */
-    private AnalysisReport createAnalysisReport(String chatId, String chatName, LocalDate analysisDate) {
-        String reportId = UUID.randomUUID().toString().replace("-", "");
+    public AnalysisReport getAnalysisReport(String reportId) {
+        AnalysisReport activeReport = activeReports.get(reportId);
+        return activeReport != null ? activeReport : reportRepository.findById(reportId);
+    }
 
-        AnalysisReport report = new AnalysisReport()
-                .setReportId(reportId)
-                .setChatId(chatId)
-                .setChatName(chatName)
-                .setAnalysisDate(analysisDate)
-                .setStatus("PROCESSING")
-                .setCreatedAt(LocalDateTime.now());
+    /**
+     * 分页查询分析历史记录（报告摘要，按创建时间倒序）
+     */
+    public PageResult<ReportSummary> getAnalysisHistory(ReportHistoryQuery query, int page, int size) {
+        return reportRepository.findSummaries(query, page, size);
+    }
 
-        reportStorage.put(reportId, report);
-        log.info("创建分析报告记录: reportId={}", reportId);
+    /**
+     * 检查是否存在相同的日期范围分析报告
+     */
+    private AnalysisReport getExistingRangeReport(ReportRangeKey rangeKey) {
+        return reportRepository.findCompletedByRangeKey(rangeKey);
+    }
 
-        return report;
+    /**
+     * 生成日期范围分析的去重键
+     */
+    private ReportRangeKey buildRangeKey(String account, String niceName, String startDate, String endDate) {
+        return new ReportRangeKey(ChatlogClientRouter.normalizeAccount(account), chatlogClientRouter.sourceOf(account),
+                niceName, LocalDate.parse(startDate), LocalDate.parse(endDate),
+                aiConfigService.getAIConfig().getModel());
     }
 
     /**
      * 创建日期范围分析报告记录
      */
-    private AnalysisReport createAnalysisReportRange(String chatId, String chatName, LocalDate startDate, LocalDate endDate) {
+    private AnalysisReport createAnalysisReportRange(String account, String source, String chatId, String chatName,
+                                                     LocalDate startDate, LocalDate endDate) {
         String reportId = UUID.randomUUID().toString().replace("-", "");
 
         AnalysisReport report = new AnalysisReport()
                 .setReportId(reportId)
+                .setAccount(account)
+                .setSource(source)
                 .setChatId(chatId)
                 .setChatName(chatName)
                 .setStartDate(startDate)
                 .setEndDate(endDate)
+                .setModel(aiConfigService.getAIConfig().getModel())
                 .setStatus("PROCESSING")
+                .setStage(AppConstants.ReportStage.QUEUED)
                 .setCreatedAt(LocalDateTime.now());
 
-        reportStorage.put(reportId, report);
+        reportRepository.save(report);
+        activeReports.put(reportId, report);
         log.info("创建日期范围分析报告记录: reportId={}, startDate={}, endDate={}", reportId, startDate, endDate);
 
         return report;
@@ -314,9 +653,12 @@ public class ChatAnalysisService {
                     .setFinalReport("分析失败: " + errorMessage)
                     .setCompletedAt(LocalDateTime.now());
 
-            reportStorage.put(report.getReportId(), report);
+            reportRepository.save(report);
         } catch (Exception e) {
             log.error("更新报告失败状态时出错", e);
+        } finally {
+            activeReports.remove(report.getReportId());
+            reportStreamService.fail(report.getReportId(), errorMessage);
         }
     }
 }
\ No newline at end of file
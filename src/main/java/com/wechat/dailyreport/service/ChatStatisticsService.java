@@ -0,0 +1,143 @@
+package com.wechat.dailyreport.service;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 聊天统计服务
+ * <p>
+ * 消息数、参与者、发言排行和活跃时段等精确统计在本地一次遍历完成，不再交给AI计数，
+ * 结构化分析只需要AI给出话题、情感、评价等定性内容。
+ */
+@Service
+@Slf4j
+public class ChatStatisticsService {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Autowired
+    private DataProcessorService dataProcessorService;
+
+    /**
+     * 统计有效消息
+     *
+     * @param messages 聊天消息批次（按时间排序）
+     * @return 统计结果
+     */
+    public ChatStatistics compute(MessageBatch messages) {
+        int totalMessages = 0;
+        int[] hourly = new int[24];
+        Map<Long, Integer> daily = new TreeMap<>();
+        // 发言者下标 → 发言数，以及首次发言的先后顺序
+        int[] senderCounts = new int[messages.getSenderCount()];
+        List<Integer> senders = new ArrayList<>();
+        int first = -1;
+        int last = -1;
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (!dataProcessorService.isValidMessage(messages, i)) {
+                continue;
+            }
+            totalMessages++;
+            hourly[messages.getHour(i)]++;
+            daily.merge(messages.getEpochDay(i), 1, Integer::sum);
+            if (senderCounts[messages.getSender(i)]++ == 0) {
+                senders.add(messages.getSender(i));
+            }
+            if (first < 0 || messages.getEpochSecond(i) < messages.getEpochSecond(first)) {
+                first = i;
+            }
+            if (last < 0 || messages.getEpochSecond(i) >= messages.getEpochSecond(last)) {
+                last = i;
+            }
+        }
+
+        // 稳定排序，计数相同时保持首次发言顺序
+        senders.sort((left, right) -> Integer.compare(senderCounts[right], senderCounts[left]));
+
+        // 不同发言者昵称相同时合并计数
+        Map<String, Integer> countsByName = new LinkedHashMap<>();
+        for (int sender : senders) {
+            countsByName.merge(messages.getSenderName(sender), senderCounts[sender], Integer::sum);
+        }
+        Map<String, Integer> dailyCounts = new LinkedHashMap<>();
+        daily.forEach((day, count) -> dailyCounts.put(LocalDate.ofEpochDay(day).toString(), count));
+        List<Integer> hourlyCounts = new ArrayList<>(24);
+        Arrays.stream(hourly).forEach(hourlyCounts::add);
+
+        ChatStatistics statistics = new ChatStatistics();
+        statistics.setTotalMessages(totalMessages);
+        statistics.setParticipants(new ArrayList<>(countsByName.keySet()));
+        statistics.setSenderCounts(countsByName);
+        statistics.setHourlyActivity(hourlyCounts);
+        statistics.setDailyActivity(dailyCounts);
+        statistics.setStartTime(first >= 0 ? messages.getTime(first).format(TIME_FORMATTER) : null);
+        statistics.setEndTime(last >= 0 ? messages.getTime(last).format(TIME_FORMATTER) : null);
+
+        log.info("聊天统计完成，有效消息数量: {}, 参与人数: {}", totalMessages, countsByName.size());
+        return statistics;
+    }
+
+    /**
+     * 聊天统计结果
+     */
+    @Data
+    public static class ChatStatistics {
+        /**
+         * 有效消息数
+         */
+        private int totalMessages;
+
+        /**
+         * 参与者昵称，按发言数从多到少排列
+         */
+        private List<String> participants;
+
+        /**
+         * 昵称 → 发言数，按发言数从多到少排列
+         */
+        private Map<String, Integer> senderCounts;
+
+        /**
+         * 0-23时每小时的发言数
+         */
+        private List<Integer> hourlyActivity;
+
+        /**
+         * 日期（yyyy-MM-dd）→ 发言数，按日期排列
+         */
+        private Map<String, Integer> dailyActivity;
+
+        /**
+         * 第一条消息时间（yyyy-MM-dd HH:mm）
+         */
+        private String startTime;
+
+        /**
+         * 最后一条消息时间（yyyy-MM-dd HH:mm）
+         */
+        private String endTime;
+
+        /**
+         * 时间范围描述
+         */
+        public String getTimeRange() {
+            if (StringUtils.isBlank(startTime)) {
+                return null;
+            }
+            return startTime.equals(endTime) ? startTime : startTime + " 至 " + endTime;
+        }
+    }
+}
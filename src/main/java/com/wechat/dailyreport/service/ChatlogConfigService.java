@@ -1,8 +1,11 @@
 package com.wechat.dailyreport.service;
 
 import com.wechat.dailyreport.dto.config.ChatlogServiceConfig;
+import com.wechat.dailyreport.event.ChatlogConfigChangedEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
@@ -15,6 +18,9 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class ChatlogConfigService {
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     @Value("${app.chatlog.default.base-url:http://127.0.0.1:5030}")
     private String defaultBaseUrl;
     
@@ -42,6 +48,9 @@ public class ChatlogConfigService {
         saveConfigValue("base_url", config.getBaseUrl());
         saveConfigValue("timeout", String.valueOf(config.getTimeout()));
         
+        // 通知Chatlog客户端按新配置重建HTTP连接池
+        eventPublisher.publishEvent(new ChatlogConfigChangedEvent(this, getChatlogConfig()));
+        
         log.info("Chatlog服务配置更新完成");
     }
     
@@ -1,16 +1,21 @@
 package com.wechat.dailyreport.service;
 
 import com.wechat.dailyreport.client.ChatlogClient;
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.repository.ChatMessageDayCache;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -21,15 +26,25 @@ import java.util.stream.Collectors;
 public class ChatlogService {
 
     @Autowired
-    private ChatlogClient chatlogClient;
+    private ChatlogClientRouter chatlogClientRouter;
 
     @Autowired
-    private ChatlogConfigService chatlogConfigService;
+    private ChatMessageDayCache messageDayCache;
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     public ChatSession getChatSessionByNiceName(String niceName) {
-        log.info("根据昵称获取聊天会话: niceName={}", niceName);
+        return getChatSessionByNiceName(null, niceName);
+    }
+
+    /**
+     * 在指定账号下根据昵称获取聊天会话
+     *
+     * @param account  Chatlog账号，为空时使用默认账号
+     * @param niceName 群聊名称
+     */
+    public ChatSession getChatSessionByNiceName(String account, String niceName) {
+        log.info("根据昵称获取聊天会话: account={}, niceName={}", account, niceName);
 
         if (niceName == null || niceName.trim().isEmpty()) {
             return null;
@@ -37,7 +52,7 @@ public class ChatlogService {
 
         try {
             // 先尝试搜索群聊
-            List<ChatSession> groupSessions = searchGroupChatsByName(niceName);
+            List<ChatSession> groupSessions = searchGroupChatsByName(account, niceName);
 
             // 查找完全匹配的群聊
             ChatSession exactMatch = groupSessions.stream()
@@ -119,10 +134,7 @@ public class ChatlogService {
         log.info("获取所有聊天会话");
 
         try {
-            // 设置客户端 URL
-            chatlogClient.setBaseUrl(chatlogConfigService.getChatlogConfig().getBaseUrl());
-
-            List<ChatSession> sessions = chatlogClient.getGroupChatSessionsByNiceName(null);
+            List<ChatSession> sessions = chatlogClientRouter.route(null).getGroupChatSessionsByNiceName(null);
             log.info("从 Chatlog服务获取到 {} 个聊天会话", sessions.size());
 
             return sessions;
@@ -139,14 +151,22 @@ public class ChatlogService {
      * @return 匹配的群聊会话列表
      */
     public List<ChatSession> searchGroupChatsByName(String groupName) {
+        return searchGroupChatsByName(null, groupName);
+    }
+
+    /**
+     * 在指定账号下根据群聊名称搜索群聊会话
+     *
+     * @param account   Chatlog账号，为空时使用默认账号
+     * @param groupName 群聊名称（支持模糊匹配，可为空字符串返回所有群聊）
+     * @return 匹配的群聊会话列表
+     */
+    public List<ChatSession> searchGroupChatsByName(String account, String groupName) {
         // 对于空字符串或null，传空字符串给客户端以获取所有群聊
         String searchKeyword = (groupName == null || groupName.trim().isEmpty()) ? "" : groupName.trim();
-        log.info("根据名称搜索群聊: groupName={}, searchKeyword={}", groupName, searchKeyword);
+        log.info("根据名称搜索群聊: account={}, groupName={}, searchKeyword={}", account, groupName, searchKeyword);
         try {
-            // 设置Client URL
-            chatlogClient.setBaseUrl(chatlogConfigService.getChatlogConfig().getBaseUrl());
-            // 调用客户端方法
-            List<ChatSession> groups = chatlogClient.getGroupChatSessionsByNiceName(searchKeyword);
+            List<ChatSession> groups = chatlogClientRouter.route(account).getGroupChatSessionsByNiceName(searchKeyword);
             log.info("搜索到 {} 个匹配的群聊", groups != null ? groups.size() : 0);
 
             return groups != null ? groups : Collections.emptyList();
@@ -194,7 +214,7 @@ public class ChatlogService {
         log.info("获取聊天消息: chatId={}, date={}", chatId, dateStr);
 
         try {
-            List<ChatMessage> messages = chatlogClient.getChatMessages(chatId, dateStr);
+            List<ChatMessage> messages = chatlogClientRouter.route(null).getChatMessages(chatId, dateStr);
             log.info("从 Chatlog服务获取到 {} 条消息", messages.size());
 
             return messages;
@@ -205,22 +225,60 @@ public class ChatlogService {
     }
 
     /**
-     * 获取指定日期范围内的聊天消息
+     * 获取指定日期范围内的文本聊天消息（非文本消息在解析时已过滤）
+     * <p>
+     * 已经结束的日期从本地消息缓存直接解码到列式消息批次，缺失的日期按连续区间从Chatlog服务获取后写入缓存；
+     * 当天的消息仍在变化，每次都重新获取且不缓存。
      */
-    public List<ChatMessage> getChatMessagesRange(String niceName, String startDate, String endDate) {
-        log.info("获取日期范围内的聊天消息: chatId={}, startDate={}, endDate={}", niceName, startDate, endDate);
+    public MessageBatch getChatMessagesRange(String niceName, String startDate, String endDate) {
+        return getChatMessagesRange(null, niceName, startDate, endDate);
+    }
 
-        try {
-            // 设置客户端 URL
-            chatlogClient.setBaseUrl(chatlogConfigService.getChatlogConfig().getBaseUrl());
+    /**
+     * 从指定账号获取日期范围内的文本聊天消息
+     *
+     * @param account Chatlog账号，为空时使用默认账号
+     */
+    public MessageBatch getChatMessagesRange(String account, String niceName, String startDate, String endDate) {
+        log.info("获取日期范围内的聊天消息: account={}, chatId={}, startDate={}, endDate={}", account, niceName, startDate, endDate);
 
-            List<ChatMessage> allMessages = chatlogClient.getChatMessagesRange(
-                    niceName,
-                    String.format("%s~%s", startDate, endDate),
-                    "json"
-            );
+        try {
+            LocalDate start = LocalDate.parse(startDate);
+            LocalDate end = LocalDate.parse(endDate);
+            Instant now = Instant.now();
+            // 整个范围使用同一个客户端，缓存键与实际获取数据的服务一致
+            ChatlogClient client = chatlogClientRouter.route(account);
+            String cacheKey = messageCacheKey(client, niceName);
+
+            MessageBatch.Builder builder = new MessageBatch.Builder();
+            LocalDate missingStart = null;
+            int cachedDays = 0;
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                // 缺失区间需要先获取，以保证消息按日期顺序写入批次；在任何时区都还没结束的日期不会有缓存
+                boolean cached = isDayOver(day, ZoneOffset.MAX, now) && messageDayCache.isEnabled()
+                        && messageDayCache.contains(cacheKey, day);
+                if (!cached) {
+                    if (missingStart == null) {
+                        missingStart = day;
+                    }
+                    continue;
+                }
+                if (missingStart != null) {
+                    builder.addAll(fetchAndCache(client, cacheKey, niceName, missingStart, day.minusDays(1), now));
+                    missingStart = null;
+                }
+                if (messageDayCache.readInto(cacheKey, day, builder)) {
+                    cachedDays++;
+                } else {
+                    builder.addAll(fetchAndCache(client, cacheKey, niceName, day, day, now));
+                }
+            }
+            if (missingStart != null) {
+                builder.addAll(fetchAndCache(client, cacheKey, niceName, missingStart, end, now));
+            }
 
-            log.info("从 Chatlog服务获取到 {} 条消息（日期范围:{}-{}）", allMessages.size(), startDate, endDate);
+            MessageBatch allMessages = builder.build();
+            log.info("获取到 {} 条消息（日期范围:{}-{}，缓存命中{}天）", allMessages.size(), startDate, endDate, cachedDays);
             return allMessages;
         } catch (Exception e) {
             log.error("从 Chatlog服务获取日期范围消息失败: chatId={}, startDate={}, endDate={}",
@@ -228,4 +286,50 @@ public class ChatlogService {
             throw new RuntimeException("获取日期范围内的聊天消息失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 从Chatlog服务获取连续日期区间的消息，并将已经结束的日期按天写入缓存。
+     * 消息按各自的时区偏移划分日期，是否已经结束也按同一偏移判断（{@link #isDayOver}），与服务器时区无关
+     */
+    private List<ChatMessage> fetchAndCache(ChatlogClient client, String cacheKey, String niceName,
+                                            LocalDate start, LocalDate end, Instant now) {
+        List<ChatMessage> messages = client.getChatMessagesRange(niceName, start, end);
+        log.info("从 Chatlog服务获取到 {} 条消息（日期范围:{}-{}）", messages.size(), start, end);
+
+        if (messageDayCache.isEnabled() && isDayOver(start, ZoneOffset.MAX, now)) {
+            Map<LocalDate, List<ChatMessage>> messagesByDay = messages.stream()
+                    .collect(Collectors.groupingBy(message -> message.getTime().toLocalDate()));
+            // 没有消息的日期使用本次获取到的消息的时区偏移；完全没有消息时只缓存在所有时区都已结束的日期
+            ZoneOffset defaultOffset = messages.isEmpty()
+                    ? ZoneOffset.MIN : messages.get(messages.size() - 1).getTime().getOffset();
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                List<ChatMessage> dayMessages = messagesByDay.getOrDefault(day, Collections.emptyList());
+                ZoneOffset offset = dayMessages.isEmpty() ? defaultOffset : dayMessages.get(0).getTime().getOffset();
+                if (isDayOver(day, offset, now)) {
+                    // 没有消息的日期同样缓存，避免重复请求
+                    messageDayCache.put(cacheKey, day, dayMessages);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 日期在指定时刻是否已经结束：日期按消息发送地的时区偏移划分，当天也按同一偏移计算，而不是服务器时区。
+     * 消息缓存、每日结构化分析和报告去重都用这一规则判断数据是否还会变化。
+     *
+     * @param day    日期
+     * @param offset 消息的时区偏移
+     * @param at     判断时刻
+     */
+    public static boolean isDayOver(LocalDate day, ZoneOffset offset, Instant at) {
+        return day.isBefore(at.atOffset(offset).toLocalDate());
+    }
+
+    /**
+     * 消息缓存键：账号、数据源标识和聊天对象，不同账号或修改服务地址后的缓存互不复用
+     */
+    static String messageCacheKey(ChatlogClient client, String niceName) {
+        return client.getAccount() + "@" + ChatlogClientRouter.sourceOf(client) + "/" + niceName;
+    }
+}
@@ -0,0 +1,238 @@
+package com.wechat.dailyreport.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.repository.DailyStructureStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分层结构化分析服务
+ * <p>
+ * 聊天数据按天切分，每天单独进行结构化分析并保存（已结束的日期），多天的报告复用已保存的日期，
+ * 只把缺失的日期发送给AI。每天的结果合并时，发言者等内容在本地合并（计数由本地统计写入），
+ * 话题、情感、互动模式和关键事件再用一次输入很小的AI调用合并为整个时间段的结论，合并失败时保留本地合并结果。
+ */
+@Service
+@Slf4j
+public class DailyStructureService {
+
+    @Autowired
+    private DailyStructureStore dailyStructureStore;
+
+    @Autowired
+    private DataProcessorService dataProcessorService;
+
+    @Autowired
+    private AIService aiService;
+
+    @Autowired
+    private StructureMergeService structureMergeService;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Value("${app.analysis.chunk.enabled:true}")
+    private boolean chunkEnabled;
+
+    @Value("${app.analysis.hierarchical.llm-merge:true}")
+    private boolean llmMerge;
+
+    /**
+     * 是否启用分层分析
+     */
+    public boolean isEnabled() {
+        return dailyStructureStore.isEnabled();
+    }
+
+    /**
+     * 分层结构化分析
+     *
+     * @param account  Chatlog账号
+     * @param source   Chatlog数据源标识
+     * @param chatId   聊天ID
+     * @param model    AI模型名称
+     * @param messages 聊天消息批次（按时间排序）
+     * @return 结构化分析结果（尚未写入本地统计）
+     */
+    public String analyze(String account, String source, String chatId, String model, MessageBatch messages) {
+        String promptVersion = aiService.getStructurePromptVersion();
+        List<LocalDate> days = new ArrayList<>();
+        List<MessageBatch> dayBatches = splitByDay(messages, days);
+        boolean[] finished = new boolean[days.size()];
+        for (int d = 0; d < days.size(); d++) {
+            finished[d] = isFinished(days.get(d), dayBatches.get(d));
+        }
+
+        // 每天的结构化结果，缺失的日期先为null
+        List<JSONObject> structures = new ArrayList<>(Collections.nCopies(days.size(), null));
+        // 需要分析的分段及其所属日期下标
+        List<String> segmentData = new ArrayList<>();
+        List<Integer> segmentDays = new ArrayList<>();
+        for (int d = 0; d < days.size(); d++) {
+            LocalDate day = days.get(d);
+            if (finished[d]) {
+                String stored = dailyStructureStore.get(account, source, chatId, model, promptVersion, day);
+                JSONObject structure = stored != null ? structureMergeService.parseStructure(stored) : null;
+                if (structure != null) {
+                    structures.set(d, structure);
+                    continue;
+                }
+                if (stored != null) {
+                    log.warn("每日结构化分析内容损坏，重新分析: chatId={}, day={}", chatId, day);
+                    dailyStructureStore.remove(account, source, chatId, model, promptVersion, day);
+                }
+            }
+            List<MessageBatch> segments = chunkEnabled
+                    ? dataProcessorService.splitIntoSegments(dayBatches.get(d))
+                    : Collections.singletonList(dayBatches.get(d));
+            for (MessageBatch segment : segments) {
+                segmentData.add(dataProcessorService.processMessages(segment));
+                segmentDays.add(d);
+            }
+        }
+
+        int missDays = (int) structures.stream().filter(structure -> structure == null).count();
+        analysisMetrics.recordDailyStructures(model, days.size() - missDays, missDays);
+        log.info("分层结构化分析: 天数={}, 复用={}, 需分析={}, 分段数={}", days.size(), days.size() - missDays,
+                missDays, segmentData.size());
+
+        analyzeMissingDays(account, source, chatId, model, promptVersion, days, finished, structures, segmentData,
+                segmentDays);
+
+        List<JSONObject> dailyStructures = new ArrayList<>();
+        List<LocalDate> structuredDays = new ArrayList<>();
+        for (int d = 0; d < days.size(); d++) {
+            if (structures.get(d) != null) {
+                dailyStructures.add(structures.get(d));
+                structuredDays.add(days.get(d));
+            }
+        }
+        if (dailyStructures.isEmpty()) {
+            throw new RuntimeException("结构化分析未返回有效结果");
+        }
+        if (dailyStructures.size() == 1) {
+            return JSON.toJSONString(dailyStructures.get(0));
+        }
+        return JSON.toJSONString(mergeDays(structuredDays, dailyStructures));
+    }
+
+    /**
+     * 分析缺失的日期：所有分段并行分析，同一天的多个分段在本地合并，已结束的日期保存结果
+     */
+    private void analyzeMissingDays(String account, String source, String chatId, String model, String promptVersion,
+                                    List<LocalDate> days, boolean[] finished, List<JSONObject> structures,
+                                    List<String> segmentData, List<Integer> segmentDays) {
+        if (segmentData.isEmpty()) {
+            return;
+        }
+        List<String> contents = aiService.structureAnalysisAll(segmentData);
+
+        List<List<JSONObject>> partialsByDay = new ArrayList<>();
+        for (int d = 0; d < days.size(); d++) {
+            partialsByDay.add(new ArrayList<>());
+        }
+        for (int i = 0; i < contents.size(); i++) {
+            JSONObject partial = structureMergeService.parseStructure(contents.get(i));
+            if (partial == null) {
+                log.warn("结构化分析结果不是有效的JSON，已忽略: day={}", days.get(segmentDays.get(i)));
+                continue;
+            }
+            partialsByDay.get(segmentDays.get(i)).add(partial);
+        }
+
+        for (int d = 0; d < days.size(); d++) {
+            List<JSONObject> partials = partialsByDay.get(d);
+            if (structures.get(d) != null || partials.isEmpty()) {
+                continue;
+            }
+            JSONObject structure = partials.size() == 1 ? partials.get(0) : structureMergeService.merge(partials);
+            structures.set(d, structure);
+            // 某个分段无效时当天结果不完整，不保存，下次重新分析
+            boolean complete = partials.size() == Collections.frequency(segmentDays, d);
+            if (complete && finished[d]) {
+                dailyStructureStore.put(account, source, chatId, model, promptVersion, days.get(d),
+                        JSON.toJSONString(structure));
+            }
+        }
+    }
+
+    /**
+     * 合并多天的结构化结果：先在本地合并，再用AI合并定性内容并覆盖本地结果
+     */
+    private JSONObject mergeDays(List<LocalDate> days, List<JSONObject> dailyStructures) {
+        JSONObject merged = structureMergeService.merge(dailyStructures);
+        if (!llmMerge) {
+            return merged;
+        }
+
+        JSONArray qualitative = new JSONArray();
+        for (int d = 0; d < days.size(); d++) {
+            JSONObject structure = dailyStructures.get(d);
+            JSONObject summary = structure.getJSONObject("summary");
+            JSONObject day = new JSONObject();
+            day.put("date", days.get(d).toString());
+            day.put("main_topics", summary != null ? summary.getJSONArray("main_topics") : null);
+            day.put("sentiment_analysis", structure.get("sentiment_analysis"));
+            day.put("interaction_patterns", structure.get("interaction_patterns"));
+            day.put("key_events", structure.get("key_events"));
+            qualitative.add(day);
+        }
+
+        try {
+            JSONObject result = structureMergeService.parseStructure(aiService.mergeStructures(qualitative.toJSONString()));
+            if (result == null) {
+                log.warn("AI合并结果不是有效的JSON，使用本地合并结果");
+                return merged;
+            }
+            if (result.getJSONArray("main_topics") != null) {
+                merged.getJSONObject("summary").put("main_topics", result.getJSONArray("main_topics"));
+            }
+            for (String field : new String[]{"sentiment_analysis", "interaction_patterns", "key_events"}) {
+                if (result.get(field) != null) {
+                    merged.put(field, result.get(field));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("AI合并每日结构化分析失败，使用本地合并结果: {}", e.getMessage());
+        }
+        return merged;
+    }
+
+    /**
+     * 日期是否已经结束：与消息缓存的规则一致（{@link ChatlogService#isDayOver}），按当天消息的时区偏移判断
+     */
+    static boolean isFinished(LocalDate day, MessageBatch dayMessages) {
+        return ChatlogService.isDayOver(day, dayMessages.getTime(0).getOffset(), Instant.now());
+    }
+
+    /**
+     * 按消息所在日期切分（消息按时间排序，同一天的消息连续）
+     *
+     * @param messages 聊天消息批次
+     * @param days     输出：每个切片对应的日期
+     * @return 每天的消息切片
+     */
+    static List<MessageBatch> splitByDay(MessageBatch messages, List<LocalDate> days) {
+        List<MessageBatch> batches = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= messages.size(); i++) {
+            if (i == messages.size() || messages.getEpochDay(i) != messages.getEpochDay(start)) {
+                batches.add(messages.slice(start, i));
+                days.add(LocalDate.ofEpochDay(messages.getEpochDay(start)));
+                start = i;
+            }
+        }
+        return batches;
+    }
+}
@@ -1,84 +1,301 @@
 package com.wechat.dailyreport.service;
 
 import com.wechat.dailyreport.constant.AppConstants;
-import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 /**
  * 数据处理服务
+ * <p>
+ * 聊天记录以紧凑格式发送给AI，减少提示词令牌数：
+ * <pre>
+ * [发言人]
+ * A=张三
+ * B=李四
+ * [聊天记录]
+ * # 2024-08-01
+ * 09:00 A: 早上好 / 今天开会吗
+ * 09:05 B: 开[表情]
+ * </pre>
+ * 发言人使用别名表（按发言数从多到少排列），日期只在每天开头出现一次，同一人短时间内的连续发言合并为一行，
+ * 空白、零宽字符和重复表情做归一化处理。
+ * <p>
+ * 消息以 {@link MessageBatch} 列式批次输入，按下标遍历，不为每条消息创建对象。
  */
 @Service
 @Slf4j
 public class DataProcessorService {
     
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int TEXT_TYPE = AppConstants.MessageType.Type.TEXT.getCode();
+    
+    /**
+     * 逐条格式 "[时:分:秒] 昵称: 内容" 中时间、标点和换行约占的令牌数
+     */
+    private static final int PLAIN_LINE_OVERHEAD_TOKENS = 4;
+    
+    /**
+     * 紧凑格式下每行的时间、别名和分隔符约占的令牌数
+     */
+    private static final int COMPACT_LINE_OVERHEAD_TOKENS = 3;
+    
+    private static final String MERGE_SEPARATOR = " / ";
+    
+    private static final Pattern INVISIBLE_CHARS = Pattern.compile("[\\u200B\\uFEFF\\uFE0F]");
+    
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\u3000]+");
+    
+    private static final Pattern STICKER_PLACEHOLDER = Pattern.compile("\\[(动画表情|表情包|自定义表情)]");
+    
+    private static final Pattern REPEATED_BRACKET_EMOJI = Pattern.compile("(\\[[^\\[\\]\\s]{1,6}])(?:\\s*\\1)+");
+    
+    private static final Pattern REPEATED_SYMBOL_EMOJI = Pattern.compile("(\\p{So})\\1+");
+    
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+    
+    @Value("${app.analysis.transcript.merge-window-minutes:5}")
+    private int mergeWindowMinutes;
+    
+    @Value("${app.analysis.chunk.max-tokens:24000}")
+    private int segmentMaxTokens;
+    
+    @Value("${app.analysis.chunk.gap-minutes:30}")
+    private int segmentGapMinutes;
     
     /**
      * 处理聊天消息，转换为AI分析所需的格式
-     * 
-     * @param messages 聊天消息列表
+     *
+     * @param messages 聊天消息批次
      * @return 格式化后的聊天数据
      */
-    public String processMessages(List<ChatMessage> messages) {
+    public String processMessages(MessageBatch messages) {
         log.info("开始处理聊天消息，消息数量: {}", messages.size());
         
-        String processedData = messages.stream()
-                .filter(this::isValidMessage)
-                .map(this::formatMessage)
-                .collect(Collectors.joining("\n"));
+        int validCount = 0;
+        // 与逐条 "[时:分:秒] 昵称: 内容" 格式相比的令牌节省情况
+        int plainTokens = 0;
+        MessageBatch.ContentView content = messages.contentView();
+        for (int i = 0; i < messages.size(); i++) {
+            if (isValidMessage(messages, i)) {
+                validCount++;
+                plainTokens += estimateTokens(content.moveTo(i))
+                        + estimateTokens(messages.getSenderName(messages.getSender(i))) + PLAIN_LINE_OVERHEAD_TOKENS;
+            }
+        }
+        String processedData = encodeTranscript(messages);
+        int compactTokens = estimateTokens(processedData);
+        analysisMetrics.recordTranscriptEncoding(plainTokens, compactTokens);
         
-        log.info("聊天消息处理完成，有效消息数量: {}", 
-                processedData.split("\n").length);
+        log.info("聊天消息处理完成，有效消息数量: {}, 估算令牌数: {} -> {}（减少 {}%）", validCount,
+                plainTokens, compactTokens, plainTokens > 0 ? (plainTokens - compactTokens) * 100 / plainTokens : 0);
         
         return processedData;
     }
     
     /**
-     * 验证消息是否有效
+     * 将有效消息编码为紧凑格式的聊天记录
+     */
+    private String encodeTranscript(MessageBatch messages) {
+        // 按发言数从多到少分配别名，发言数相同时按首次发言顺序
+        int[] counts = new int[messages.getSenderCount()];
+        int[] firstSeen = new int[messages.getSenderCount()];
+        List<Integer> ranking = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (isValidMessage(messages, i)) {
+                int sender = messages.getSender(i);
+                if (counts[sender]++ == 0) {
+                    firstSeen[sender] = ranking.size();
+                    ranking.add(sender);
+                }
+            }
+        }
+        ranking.sort((left, right) -> counts[left] != counts[right]
+                ? Integer.compare(counts[right], counts[left])
+                : Integer.compare(firstSeen[left], firstSeen[right]));
+        
+        String[] aliases = new String[messages.getSenderCount()];
+        StringBuilder transcript = new StringBuilder("[发言人]\n");
+        for (int rank = 0; rank < ranking.size(); rank++) {
+            int sender = ranking.get(rank);
+            aliases[sender] = alias(rank);
+            transcript.append(aliases[sender]).append('=').append(messages.getSenderName(sender)).append('\n');
+        }
+        
+        transcript.append("[聊天记录]");
+        long mergeWindowSeconds = mergeWindowMinutes * 60L;
+        MessageBatch.ContentView view = messages.contentView();
+        int previous = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            if (!isValidMessage(messages, i)) {
+                continue;
+            }
+            String content = normalizeContent(view.moveTo(i));
+            if (content.isEmpty()) {
+                continue;
+            }
+            
+            long day = messages.getEpochDay(i);
+            boolean newDay = previous < 0 || day != messages.getEpochDay(previous);
+            if (newDay) {
+                transcript.append("\n# ").append(LocalDate.ofEpochDay(day));
+            }
+            
+            boolean merge = !newDay
+                    && messages.getSender(i) == messages.getSender(previous)
+                    && messages.getEpochSecond(i) - messages.getEpochSecond(previous) <= mergeWindowSeconds;
+            if (merge) {
+                transcript.append(MERGE_SEPARATOR).append(content);
+            } else {
+                int minuteOfDay = messages.getMinuteOfDay(i);
+                transcript.append('\n');
+                appendTwoDigits(transcript, minuteOfDay / 60).append(':');
+                appendTwoDigits(transcript, minuteOfDay % 60).append(' ')
+                        .append(aliases[messages.getSender(i)]).append(": ")
+                        .append(content);
+            }
+            previous = i;
+        }
+        return transcript.toString();
+    }
+    
+    private static StringBuilder appendTwoDigits(StringBuilder builder, int value) {
+        return builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+    
+    /**
+     * 归一化消息内容：去除零宽字符、合并空白、统一表情包占位符、折叠连续重复的表情
+     */
+    String normalizeContent(CharSequence content) {
+        String normalized = INVISIBLE_CHARS.matcher(content).replaceAll("");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        normalized = STICKER_PLACEHOLDER.matcher(normalized).replaceAll("[表情]");
+        normalized = REPEATED_BRACKET_EMOJI.matcher(normalized).replaceAll("$1");
+        normalized = REPEATED_SYMBOL_EMOJI.matcher(normalized).replaceAll("$1");
+        return normalized;
+    }
+    
+    /**
+     * 生成别名：A-Z，之后为AA、AB...
      */
-    private boolean isValidMessage(ChatMessage message) {
-        return message != null &&
-               StringUtils.isNotBlank(message.getContent()) &&
-               AppConstants.MessageType.Type.TEXT.getCode().equals(message.getType()) &&
-               message.getTime() != null;
+    private static String alias(int index) {
+        StringBuilder alias = new StringBuilder();
+        int value = index;
+        do {
+            alias.insert(0, (char) ('A' + value % 26));
+            value = value / 26 - 1;
+        } while (value >= 0);
+        return alias.toString();
     }
     
     /**
-     * 格式化单条消息
+     * 按令牌上限切分聊天消息，优先在对话间隔处切分
+     * 每个分段的估算令牌数不超过配置的上限（单条消息超限时独立成段）
+     *
+     * @param messages 聊天消息批次（按时间排序）
+     * @return 分段后的消息批次，与输入共享底层数组，无效消息留在分段内由后续处理跳过
      */
-    private String formatMessage(ChatMessage message) {
-        String timeStr = message.getTime().format(FORMATTER);
-        String senderName = StringUtils.isNotBlank(message.getSenderName()) ? 
-                           message.getSenderName() : "未知用户";
+    public List<MessageBatch> splitIntoSegments(MessageBatch messages) {
+        List<MessageBatch> segments = new ArrayList<>();
+        long gapSeconds = segmentGapMinutes * 60L;
         
-        return String.format("[%s] %s: %s", timeStr, senderName, message.getContent().trim());
+        int segmentStart = 0;
+        int segmentTokens = 0;
+        // 当前分段内最后一个对话间隔的位置（间隔之后第一条消息的下标）及其之前的令牌数
+        int lastGapIndex = -1;
+        int tokensBeforeGap = 0;
+        // 上一条有效消息的下标
+        int previous = -1;
+        MessageBatch.ContentView content = messages.contentView();
+        
+        for (int i = 0; i < messages.size(); i++) {
+            if (!isValidMessage(messages, i)) {
+                continue;
+            }
+            int messageTokens = estimateTokens(content.moveTo(i)) + COMPACT_LINE_OVERHEAD_TOKENS;
+            
+            if (previous >= segmentStart && messages.getEpochSecond(i) - messages.getEpochSecond(previous) >= gapSeconds) {
+                lastGapIndex = i;
+                tokensBeforeGap = segmentTokens;
+            }
+            
+            while (segmentTokens > 0 && segmentTokens + messageTokens > segmentMaxTokens) {
+                // 优先在最近的对话间隔处切分，否则在当前消息前切分
+                int cutIndex = lastGapIndex > segmentStart ? lastGapIndex : i;
+                segments.add(messages.slice(segmentStart, cutIndex));
+                segmentTokens = cutIndex == i ? 0 : segmentTokens - tokensBeforeGap;
+                segmentStart = cutIndex;
+                lastGapIndex = -1;
+            }
+            segmentTokens += messageTokens;
+            previous = i;
+        }
+        
+        if (segmentStart < messages.size() && segmentTokens > 0) {
+            segments.add(messages.slice(segmentStart, messages.size()));
+        }
+        
+        log.info("聊天消息分段完成，消息数量: {}, 分段数量: {}", messages.size(), segments.size());
+        return segments;
+    }
+    
+    /**
+     * 估算文本的令牌数
+     * 中日韩字符按每字1个令牌计算，其他字符按每4个字符1个令牌计算
+     */
+    public int estimateTokens(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        
+        int cjkChars = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                cjkChars++;
+            } else {
+                otherChars++;
+            }
+        }
+        return cjkChars + (otherChars + 3) / 4;
+    }
+    
+    /**
+     * 验证消息是否有效：文本消息且内容不为空
+     */
+    boolean isValidMessage(MessageBatch messages, int index) {
+        return messages.getType(index) == TEXT_TYPE && !messages.isContentBlank(index);
     }
     
     /**
      * 统计消息基本信息
      */
-    public String generateMessageStatistics(List<ChatMessage> messages) {
+    public String generateMessageStatistics(MessageBatch messages) {
         if (messages == null || messages.isEmpty()) {
             return "本日无有效聊天记录";
         }
         
-        long validMessages = messages.stream()
-                .filter(this::isValidMessage)
-                .count();
-        
-        long participantCount = messages.stream()
-                .filter(this::isValidMessage)
-                .map(ChatMessage::getSender)
-                .distinct()
-                .count();
+        int validMessages = 0;
+        boolean[] participants = new boolean[messages.getSenderCount()];
+        int participantCount = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            if (isValidMessage(messages, i)) {
+                validMessages++;
+                if (!participants[messages.getSender(i)]) {
+                    participants[messages.getSender(i)] = true;
+                    participantCount++;
+                }
+            }
+        }
         
         return String.format("统计信息：总消息数 %d 条，有效消息 %d 条，参与人数 %d 人",
                 messages.size(), validMessages, participantCount);
     }
-}
\ No newline at end of file
+}
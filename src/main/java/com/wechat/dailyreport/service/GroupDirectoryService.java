@@ -0,0 +1,336 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.dto.response.GroupSuggestion;
+import com.wechat.dailyreport.event.ChatlogConfigChangedEvent;
+import com.wechat.dailyreport.service.ChatlogService.ChatSession;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.pinyin4j.PinyinHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 群聊目录服务
+ * <p>
+ * 在内存中按Chatlog账号缓存群聊列表，并对 nickName、name、remark 及中文名称的拼音首字母建立一元/二元字符索引，
+ * 群聊搜索直接在内存中完成。缓存超过有效期后在后台刷新，刷新期间继续使用旧数据。
+ * 缓存只保留群ID、名称和备注，不保留群成员列表。
+ */
+@Service
+@Slf4j
+public class GroupDirectoryService {
+
+    private static final int MATCH_NONE = 0;
+    private static final int MATCH_CONTAINS = 1;
+    private static final int MATCH_PREFIX = 2;
+
+    @Autowired
+    private ChatlogService chatlogService;
+
+    @Value("${app.chatlog.group-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${app.chatlog.group-cache.max-results:20}")
+    private int maxResults;
+
+    /**
+     * 账号 → 群聊目录快照
+     */
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * 正在刷新的账号，同一账号同一时间只有一个刷新在执行
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-directory-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 启动后台定时刷新：默认账号预加载，其他账号在首次搜索后加入刷新
+     */
+    @PostConstruct
+    public void init() {
+        refreshScheduler.scheduleWithFixedDelay(() -> {
+            refreshQuietly(ChatlogClientRouter.DEFAULT_ACCOUNT);
+            snapshots.keySet().stream()
+                    .filter(account -> !ChatlogClientRouter.DEFAULT_ACCOUNT.equals(account))
+                    .forEach(this::refreshQuietly);
+        }, 0, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    @PreDestroy
+    public void shutdown() {
+        refreshScheduler.shutdownNow();
+    }
+
+    /**
+     * 默认账号的Chatlog配置变更后群聊列表可能来自另一个微信账号，立即丢弃缓存并刷新
+     */
+    @EventListener
+    public void onChatlogConfigChanged(ChatlogConfigChangedEvent event) {
+        snapshots.remove(ChatlogClientRouter.DEFAULT_ACCOUNT);
+        refreshScheduler.execute(() -> refreshQuietly(ChatlogClientRouter.DEFAULT_ACCOUNT));
+    }
+
+    /**
+     * 在默认账号下搜索群聊
+     */
+    public List<GroupSuggestion> search(String keyword) {
+        return search(null, keyword);
+    }
+
+    /**
+     * 搜索群聊
+     *
+     * @param account Chatlog账号，为空时使用默认账号
+     * @param keyword 关键词，匹配群名称、群ID、备注或拼音首字母，为空时返回前若干个群聊
+     * @return 匹配的群聊列表（最多 max-results 个），前缀匹配的排在前面
+     */
+    public List<GroupSuggestion> search(String account, String keyword) {
+        String normalizedAccount = ChatlogClientRouter.normalizeAccount(account);
+        Snapshot current = currentSnapshot(normalizedAccount);
+        if (current == null) {
+            // 缓存尚不可用时退回实时查询
+            return chatlogService.searchGroupChatsByName(normalizedAccount, keyword).stream()
+                    .limit(maxResults)
+                    .map(GroupDirectoryService::toSuggestion)
+                    .collect(Collectors.toList());
+        }
+
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return current.groups.subList(0, Math.min(maxResults, current.groups.size()));
+        }
+
+        // 前缀匹配的数量达到上限后不再需要其他匹配
+        int[] candidates = current.candidates(query);
+        List<GroupSuggestion> prefixMatches = new ArrayList<>();
+        List<GroupSuggestion> otherMatches = new ArrayList<>();
+        for (int i = 0; i < candidates.length && prefixMatches.size() < maxResults; i++) {
+            int match = current.match(candidates[i], query);
+            if (match == MATCH_PREFIX) {
+                prefixMatches.add(current.groups.get(candidates[i]));
+            } else if (match == MATCH_CONTAINS && otherMatches.size() < maxResults) {
+                otherMatches.add(current.groups.get(candidates[i]));
+            }
+        }
+        prefixMatches.addAll(otherMatches);
+        return prefixMatches.subList(0, Math.min(maxResults, prefixMatches.size()));
+    }
+
+    private static GroupSuggestion toSuggestion(ChatSession session) {
+        return new GroupSuggestion()
+                .setName(session.getName())
+                .setNickName(session.getNickName())
+                .setRemark(session.getRemark());
+    }
+
+    /**
+     * 返回可用的缓存，过期时触发后台刷新；首次使用且没有缓存时同步加载
+     */
+    private Snapshot currentSnapshot(String account) {
+        Snapshot current = snapshots.get(account);
+        if (current == null) {
+            refresh(account);
+            return snapshots.get(account);
+        }
+        if (System.currentTimeMillis() - current.loadedAt > TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+            refreshScheduler.execute(() -> refreshQuietly(account));
+        }
+        return current;
+    }
+
+    private void refreshQuietly(String account) {
+        try {
+            refresh(account);
+        } catch (Exception e) {
+            log.warn("刷新群聊目录失败: account={}, error={}", account, e.getMessage());
+        }
+    }
+
+    /**
+     * 从Chatlog服务加载群聊列表并重建索引
+     */
+    private void refresh(String account) {
+        if (!refreshing.add(account)) {
+            return;
+        }
+        try {
+            List<ChatSession> sessions = chatlogService.searchGroupChatsByName(account, "");
+            snapshots.put(account, new Snapshot(sessions));
+            log.info("群聊目录已刷新: account={}, 群聊数={}", account, sessions.size());
+        } finally {
+            refreshing.remove(account);
+        }
+    }
+
+    /**
+     * 归一化：去除首尾空白并转为小写
+     */
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 计算文本的拼音首字母，非汉字字符原样保留，不含汉字时返回null
+     */
+    static String pinyinInitials(String text) {
+        StringBuilder initials = new StringBuilder(text.length());
+        boolean hasHan = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String[] pinyin = Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN
+                    ? PinyinHelper.toHanyuPinyinStringArray(c) : null;
+            if (pinyin != null && pinyin.length > 0) {
+                initials.append(pinyin[0].charAt(0));
+                hasHan = true;
+            } else {
+                initials.append(c);
+            }
+        }
+        return hasHan ? initials.toString() : null;
+    }
+
+    /**
+     * 不可变的群聊列表及其索引
+     */
+    private static class Snapshot {
+        private final List<GroupSuggestion> groups;
+        private final long loadedAt = System.currentTimeMillis();
+
+        /**
+         * 每个群聊可检索的文本（已归一化）
+         */
+        private final String[][] searchTexts;
+
+        /**
+         * 一元/二元字符 → 升序排列的群聊下标
+         */
+        private final Map<String, int[]> gramIndex;
+
+        Snapshot(List<ChatSession> sessions) {
+            this.groups = Collections.unmodifiableList(sessions.stream()
+                    .map(GroupDirectoryService::toSuggestion)
+                    .collect(Collectors.toList()));
+            this.searchTexts = new String[sessions.size()][];
+
+            Map<String, List<Integer>> postings = new HashMap<>();
+            for (int i = 0; i < sessions.size(); i++) {
+                searchTexts[i] = searchTextsOf(groups.get(i));
+                Set<String> grams = new LinkedHashSet<>();
+                for (String text : searchTexts[i]) {
+                    for (int j = 0; j < text.length(); j++) {
+                        grams.add(text.substring(j, j + 1));
+                        if (j + 1 < text.length()) {
+                            grams.add(text.substring(j, j + 2));
+                        }
+                    }
+                }
+                for (String gram : grams) {
+                    postings.computeIfAbsent(gram, key -> new ArrayList<>()).add(i);
+                }
+            }
+
+            this.gramIndex = new HashMap<>(postings.size() * 2);
+            postings.forEach((gram, ids) -> gramIndex.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        /**
+         * 用查询词的二元字符（单字查询用一元字符）求交集得到候选群聊
+         */
+        int[] candidates(String query) {
+            if (query.length() == 1) {
+                return gramIndex.getOrDefault(query, new int[0]);
+            }
+            int[] result = null;
+            for (int i = 0; i + 1 < query.length(); i++) {
+                int[] posting = gramIndex.get(query.substring(i, i + 2));
+                if (posting == null) {
+                    return new int[0];
+                }
+                result = result == null ? posting : intersect(result, posting);
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 校验候选群聊是否真正包含查询词
+         */
+        int match(int sessionIndex, String query) {
+            int match = MATCH_NONE;
+            for (String text : searchTexts[sessionIndex]) {
+                if (text.startsWith(query)) {
+                    return MATCH_PREFIX;
+                }
+                if (text.contains(query)) {
+                    match = MATCH_CONTAINS;
+                }
+            }
+            return match;
+        }
+
+        private static String[] searchTextsOf(GroupSuggestion group) {
+            Set<String> texts = new LinkedHashSet<>();
+            for (String field : Arrays.asList(group.getNickName(), group.getName(), group.getRemark())) {
+                String text = normalize(field);
+                if (text.isEmpty()) {
+                    continue;
+                }
+                texts.add(text);
+                String initials = pinyinInitials(text);
+                if (initials != null) {
+                    texts.add(initials);
+                }
+            }
+            return texts.toArray(new String[0]);
+        }
+
+        private static int[] intersect(int[] left, int[] right) {
+            int[] result = new int[Math.min(left.length, right.length)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    result[count++] = left[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式存储的聊天消息批次
+ * <p>
+ * 每个字段存放在一个基本类型数组中（时间为epoch秒、发言者为去重后的下标、类型为整数编码），
+ * 所有消息内容共用一个字符缓冲区。与逐条的 {@link ChatMessage} 相比，每条消息只占几十字节加内容本身，
+ * 按下标遍历时不需要为每条消息创建对象。
+ * <p>
+ * 批次创建后不可变，{@link #slice(int, int)} 返回共享底层数组的视图。
+ */
+public final class MessageBatch {
+
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    /**
+     * 未知发言者的显示名称
+     */
+    public static final String UNKNOWN_SENDER = "未知用户";
+
+    private final int from;
+    private final int to;
+    private final long[] seqs;
+    private final long[] epochSeconds;
+    private final int[] offsetSeconds;
+    private final int[] senders;
+    private final int[] types;
+    /**
+     * 第i条消息的内容位于 contents[contentOffsets[i], contentOffsets[i + 1])
+     */
+    private final int[] contentOffsets;
+    private final char[] contents;
+    private final String[] senderIds;
+    private final String[] senderNames;
+
+    private MessageBatch(int from, int to, long[] seqs, long[] epochSeconds, int[] offsetSeconds, int[] senders,
+                         int[] types, int[] contentOffsets, char[] contents, String[] senderIds, String[] senderNames) {
+        this.from = from;
+        this.to = to;
+        this.seqs = seqs;
+        this.epochSeconds = epochSeconds;
+        this.offsetSeconds = offsetSeconds;
+        this.senders = senders;
+        this.types = types;
+        this.contentOffsets = contentOffsets;
+        this.contents = contents;
+        this.senderIds = senderIds;
+        this.senderNames = senderNames;
+    }
+
+    /**
+     * 由消息列表创建批次
+     */
+    public static MessageBatch of(List<ChatMessage> messages) {
+        Builder builder = new Builder();
+        builder.addAll(messages);
+        return builder.build();
+    }
+
+    /**
+     * 消息数
+     */
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    /**
+     * 截取 [fromIndex, toIndex) 范围的消息，与当前批次共享底层数组
+     */
+    public MessageBatch slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex=" + fromIndex + ", toIndex=" + toIndex + ", size=" + size());
+        }
+        return new MessageBatch(from + fromIndex, from + toIndex, seqs, epochSeconds, offsetSeconds, senders,
+                types, contentOffsets, contents, senderIds, senderNames);
+    }
+
+    /**
+     * 消息序号，未知时为 {@link Long#MIN_VALUE}
+     */
+    public long getSeq(int index) {
+        return seqs[from + index];
+    }
+
+    /**
+     * 消息时间（epoch秒）
+     */
+    public long getEpochSecond(int index) {
+        return epochSeconds[from + index];
+    }
+
+    /**
+     * 消息发送地的日期（epoch日），与 {@code LocalDate.ofEpochDay} 对应
+     */
+    public long getEpochDay(int index) {
+        return Math.floorDiv(localSecond(index), SECONDS_PER_DAY);
+    }
+
+    /**
+     * 消息发送地时间在当天的分钟数（0-1439）
+     */
+    public int getMinuteOfDay(int index) {
+        return (int) Math.floorMod(localSecond(index), SECONDS_PER_DAY) / 60;
+    }
+
+    /**
+     * 消息发送地时间的小时（0-23）
+     */
+    public int getHour(int index) {
+        return getMinuteOfDay(index) / 60;
+    }
+
+    /**
+     * 消息时间，会创建新对象，批量处理时应优先使用 {@link #getEpochSecond}、{@link #getEpochDay} 等方法
+     */
+    public OffsetDateTime getTime(int index) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(getEpochSecond(index)),
+                ZoneOffset.ofTotalSeconds(offsetSeconds[from + index]));
+    }
+
+    /**
+     * 发言者下标，同一发言者的所有消息下标相同
+     */
+    public int getSender(int index) {
+        return senders[from + index];
+    }
+
+    /**
+     * 批次中的发言者数（含切片之外的发言者）
+     */
+    public int getSenderCount() {
+        return senderNames.length;
+    }
+
+    /**
+     * 发言者的微信ID，可能为null
+     */
+    public String getSenderId(int sender) {
+        return senderIds[sender];
+    }
+
+    /**
+     * 发言者的显示名称
+     */
+    public String getSenderName(int sender) {
+        return senderNames[sender];
+    }
+
+    /**
+     * 消息类型
+     */
+    public int getType(int index) {
+        return types[from + index];
+    }
+
+    /**
+     * 消息内容的只读视图，不复制字符，但每次调用创建一个视图对象；
+     * 遍历批次时应使用 {@link #contentView()} 复用同一个视图
+     */
+    public CharSequence getContent(int index) {
+        int start = contentOffsets[from + index];
+        return CharBuffer.wrap(contents, start, contentOffsets[from + index + 1] - start).asReadOnlyBuffer();
+    }
+
+    /**
+     * 创建可复用的消息内容视图，通过 {@link ContentView#moveTo(int)} 指向不同的消息
+     */
+    public ContentView contentView() {
+        return new ContentView();
+    }
+
+    /**
+     * 消息内容是否为空或只有空白
+     */
+    public boolean isContentBlank(int index) {
+        for (int i = contentOffsets[from + index]; i < contentOffsets[from + index + 1]; i++) {
+            if (!Character.isWhitespace(contents[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long localSecond(int index) {
+        return epochSeconds[from + index] + offsetSeconds[from + index];
+    }
+
+    /**
+     * 可复用的消息内容视图：指向批次中的一条消息，不复制字符，遍历时不为每条消息创建对象。
+     * 视图在下一次 {@link #moveTo(int)} 之前有效，不应保存或在线程间共享。
+     */
+    public final class ContentView implements CharSequence {
+        private int start;
+        private int length;
+
+        private ContentView() {
+        }
+
+        /**
+         * 指向第index条消息的内容
+         */
+        public ContentView moveTo(int index) {
+            start = contentOffsets[from + index];
+            length = contentOffsets[from + index + 1] - start;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+            }
+            return contents[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int startIndex, int endIndex) {
+            if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+                throw new IndexOutOfBoundsException("start: " + startIndex + ", end: " + endIndex + ", length: " + length);
+            }
+            return new String(contents, start + startIndex, endIndex - startIndex);
+        }
+
+        @Override
+        public String toString() {
+            return new String(contents, start, length);
+        }
+    }
+
+    /**
+     * 批次构建器，按添加顺序保存消息，发言者按ID（无ID时按名称）去重
+     */
+    public static final class Builder {
+        private int size;
+        private long[] seqs = new long[64];
+        private long[] epochSeconds = new long[64];
+        private int[] offsetSeconds = new int[64];
+        private int[] senders = new int[64];
+        private int[] types = new int[64];
+        private int[] contentOffsets = new int[65];
+        private char[] contents = new char[4096];
+        private int contentLength;
+        private final Map<String, Integer> senderIndex = new HashMap<>();
+        private String[] senderIds = new String[16];
+        private String[] senderNames = new String[16];
+
+        /**
+         * 添加消息，没有时间的消息无法排序和分组，直接忽略
+         */
+        public Builder add(ChatMessage message) {
+            if (message.getTime() == null) {
+                return this;
+            }
+            OffsetDateTime time = message.getTime();
+            return add(message.getSeq() != null ? message.getSeq() : Long.MIN_VALUE, time.toEpochSecond(),
+                    time.getOffset().getTotalSeconds(), message.getSender(), message.getSenderName(),
+                    message.getType() != null ? message.getType() : 0, message.getContent());
+        }
+
+        public Builder addAll(List<ChatMessage> messages) {
+            messages.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * 添加消息
+         *
+         * @param seq           消息序号，未知时为 {@link Long#MIN_VALUE}
+         * @param epochSecond   消息时间（epoch秒）
+         * @param offsetSeconds 时区偏移秒数
+         * @param senderId      发言者微信ID
+         * @param senderName    发言者昵称
+         * @param type          消息类型
+         * @param content       消息内容
+         */
+        public Builder add(long seq, long epochSecond, int offsetSeconds, String senderId, String senderName,
+                           int type, String content) {
+            ensureCapacity(size + 1);
+            seqs[size] = seq;
+            epochSeconds[size] = epochSecond;
+            this.offsetSeconds[size] = offsetSeconds;
+            senders[size] = internSender(senderId, senderName);
+            types[size] = type;
+
+            int length = content != null ? content.length() : 0;
+            if (contentLength + length > contents.length) {
+                contents = Arrays.copyOf(contents, Math.max(contents.length * 2, contentLength + length));
+            }
+            if (length > 0) {
+                content.getChars(0, length, contents, contentLength);
+                contentLength += length;
+            }
+            contentOffsets[size + 1] = contentLength;
+            size++;
+            return this;
+        }
+
+        /**
+         * 记录当前位置，配合 {@link #rollback(Mark)} 撤销之后添加的消息
+         */
+        public Mark mark() {
+            return new Mark(size, senderIndex.size());
+        }
+
+        /**
+         * 撤销标记之后添加的消息和发言者
+         */
+        public Builder rollback(Mark mark) {
+            int senderCount = senderIndex.size();
+            for (int sender = mark.senderCount; sender < senderCount; sender++) {
+                senderIndex.remove(StringUtils.isNotBlank(senderIds[sender]) ? senderIds[sender] : senderNames[sender]);
+                senderIds[sender] = null;
+                senderNames[sender] = null;
+            }
+            size = mark.size;
+            contentLength = contentOffsets[size];
+            return this;
+        }
+
+        /**
+         * 构建批次，数组裁剪为实际大小
+         */
+        public MessageBatch build() {
+            int senderCount = senderIndex.size();
+            return new MessageBatch(0, size, Arrays.copyOf(seqs, size), Arrays.copyOf(epochSeconds, size),
+                    Arrays.copyOf(offsetSeconds, size), Arrays.copyOf(senders, size), Arrays.copyOf(types, size),
+                    Arrays.copyOf(contentOffsets, size + 1), Arrays.copyOf(contents, contentLength),
+                    Arrays.copyOf(senderIds, senderCount), Arrays.copyOf(senderNames, senderCount));
+        }
+
+        private int internSender(String senderId, String senderName) {
+            String name = StringUtils.isNotBlank(senderName) ? senderName.trim() : UNKNOWN_SENDER;
+            String key = StringUtils.isNotBlank(senderId) ? senderId : name;
+            Integer index = senderIndex.get(key);
+            if (index != null) {
+                return index;
+            }
+            int sender = senderIndex.size();
+            if (sender == senderNames.length) {
+                senderIds = Arrays.copyOf(senderIds, sender * 2);
+                senderNames = Arrays.copyOf(senderNames, sender * 2);
+            }
+            senderIds[sender] = senderId;
+            senderNames[sender] = name;
+            senderIndex.put(key, sender);
+            return sender;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= seqs.length) {
+                return;
+            }
+            int newCapacity = Math.max(seqs.length * 2, capacity);
+            seqs = Arrays.copyOf(seqs, newCapacity);
+            epochSeconds = Arrays.copyOf(epochSeconds, newCapacity);
+            offsetSeconds = Arrays.copyOf(offsetSeconds, newCapacity);
+            senders = Arrays.copyOf(senders, newCapacity);
+            types = Arrays.copyOf(types, newCapacity);
+            contentOffsets = Arrays.copyOf(contentOffsets, newCapacity + 1);
+        }
+
+        /**
+         * 构建器位置标记
+         */
+        public static final class Mark {
+            private final int size;
+            private final int senderCount;
+
+            private Mark(int size, int senderCount) {
+                this.size = size;
+                this.senderCount = senderCount;
+            }
+        }
+    }
+}
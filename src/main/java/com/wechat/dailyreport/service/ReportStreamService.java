@@ -0,0 +1,132 @@
+package com.wechat.dailyreport.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 报告流式推送服务
+ * <p>
+ * 最终报告生成过程中，将AI返回的增量内容通过SSE推送给正在查看进度页面的浏览器。
+ * 新的订阅者会先收到已生成的全部内容，再接收后续增量。
+ * <p>
+ * 事件：delta（{"text": 增量内容}）、done（报告已保存）、error（{"message": 错误信息}）
+ */
+@Service
+@Slf4j
+public class ReportStreamService {
+
+    @Value("${app.analysis.report.stream-timeout-ms:600000}")
+    private long emitterTimeoutMillis;
+
+    private final Map<String, ReportStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅报告的生成内容
+     *
+     * @param reportId 报告ID
+     * @return SSE发射器
+     */
+    public SseEmitter subscribe(String reportId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        ReportStream stream = streams.computeIfAbsent(reportId, id -> new ReportStream());
+        stream.addEmitter(emitter);
+        return emitter;
+    }
+
+    /**
+     * 推送增量内容
+     */
+    public void publish(String reportId, String delta) {
+        streams.computeIfAbsent(reportId, id -> new ReportStream()).append(delta);
+    }
+
+    /**
+     * 报告已保存，通知订阅者并结束推送
+     */
+    public void complete(String reportId) {
+        ReportStream stream = streams.remove(reportId);
+        if (stream != null) {
+            stream.finish(() -> SseEmitter.event().name("done").data(reportId));
+        }
+    }
+
+    /**
+     * 报告生成失败，通知订阅者并结束推送
+     */
+    public void fail(String reportId, String errorMessage) {
+        ReportStream stream = streams.remove(reportId);
+        if (stream != null) {
+            stream.finish(() -> SseEmitter.event().name("error")
+                    .data(Collections.singletonMap("message", errorMessage), MediaType.APPLICATION_JSON));
+        }
+    }
+
+    /**
+     * 单个报告的生成内容及其订阅者
+     */
+    private static class ReportStream {
+        private final StringBuilder content = new StringBuilder();
+        private final List<SseEmitter> emitters = new ArrayList<>();
+
+        synchronized void addEmitter(SseEmitter emitter) {
+            emitter.onCompletion(() -> removeEmitter(emitter));
+            emitter.onTimeout(() -> removeEmitter(emitter));
+            String generated = content.toString();
+            if (!generated.isEmpty() && !send(emitter, () -> delta(generated))) {
+                return;
+            }
+            emitters.add(emitter);
+        }
+
+        synchronized void removeEmitter(SseEmitter emitter) {
+            emitters.remove(emitter);
+        }
+
+        synchronized void append(String delta) {
+            content.append(delta);
+            for (SseEmitter emitter : new ArrayList<>(emitters)) {
+                if (!send(emitter, () -> delta(delta))) {
+                    emitters.remove(emitter);
+                }
+            }
+        }
+
+        synchronized void finish(Supplier<SseEmitter.SseEventBuilder> event) {
+            for (SseEmitter emitter : new ArrayList<>(emitters)) {
+                if (send(emitter, event)) {
+                    emitter.complete();
+                }
+            }
+            emitters.clear();
+        }
+
+        private static SseEmitter.SseEventBuilder delta(String text) {
+            return SseEmitter.event().name("delta").data(Collections.singletonMap("text", text), MediaType.APPLICATION_JSON);
+        }
+
+        /**
+         * 发送事件，浏览器已断开时返回false
+         */
+        private static boolean send(SseEmitter emitter, Supplier<SseEmitter.SseEventBuilder> event) {
+            try {
+                emitter.send(event.get());
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("SSE订阅者已断开: {}", e.getMessage());
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
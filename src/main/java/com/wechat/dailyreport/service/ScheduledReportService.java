@@ -0,0 +1,183 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.config.ScheduledReportProperties;
+import com.wechat.dailyreport.dto.config.WatchListEntry;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 定时报告服务
+ * <p>
+ * 按关注列表中每个条目的cron表达式触发分析，在独立的线程池中执行（并发数为 {@code app.schedule.parallelism}），
+ * 不占用页面提交任务的队列。分析结果与页面提交的分析一样写入报告存储，相同的群聊、日期范围和模型再次提交时直接返回。
+ * 同一条目上一次触发的分析尚未结束时跳过本次触发。
+ */
+@Service
+@Slf4j
+public class ScheduledReportService {
+
+    private static final Pattern LAST_N_DAYS = Pattern.compile("last-(\\d+)-days");
+
+    @Autowired
+    private ScheduledReportProperties properties;
+
+    @Autowired
+    private ChatAnalysisService chatAnalysisService;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    private ThreadPoolExecutor executor;
+
+    private ZoneId zone;
+
+    /**
+     * 已触发但尚未结束的条目（按关注列表下标）
+     */
+    private final Set<Integer> pendingEntries = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 按关注列表注册定时任务
+     */
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled() || properties.getWatchList().isEmpty()) {
+            log.info("定时报告未启用或关注列表为空");
+            return;
+        }
+        zone = StringUtils.isNotBlank(properties.getZone()) ? ZoneId.of(properties.getZone()) : ZoneId.systemDefault();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        int parallelism = Math.max(1, properties.getParallelism());
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-report-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("scheduled-report-trigger-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+
+        for (int i = 0; i < properties.getWatchList().size(); i++) {
+            WatchListEntry entry = properties.getWatchList().get(i);
+            if (StringUtils.isBlank(entry.getGroup())) {
+                log.warn("定时报告条目缺少群聊，已忽略: index={}", i);
+                continue;
+            }
+            // 提前校验日期范围规则，配置错误在启动时暴露
+            resolveRange(entry.getRange(), LocalDate.now(zone));
+
+            String cron = StringUtils.defaultIfBlank(entry.getCron(), properties.getDefaultCron());
+            int index = i;
+            scheduler.schedule(() -> trigger(index, entry), new CronTrigger(cron, TimeZone.getTimeZone(zone)));
+            log.info("注册定时报告: group={}, account={}, range={}, cron={}", entry.getGroup(), entry.getAccount(),
+                    entry.getRange(), cron);
+        }
+        log.info("定时报告初始化完成: 条目数={}, 并发数={}, 时区={}", properties.getWatchList().size(), parallelism, zone);
+    }
+
+    /**
+     * 停止定时任务和执行中的分析
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 触发一个条目的分析，上一次触发尚未结束时跳过
+     */
+    private void trigger(int index, WatchListEntry entry) {
+        if (!pendingEntries.add(index)) {
+            log.warn("定时报告上一次的分析尚未结束，跳过本次触发: group={}", entry.getGroup());
+            analysisMetrics.recordScheduledReport("skipped");
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                run(entry);
+            } finally {
+                pendingEntries.remove(index);
+            }
+        });
+    }
+
+    /**
+     * 执行一个条目的分析
+     */
+    private void run(WatchListEntry entry) {
+        LocalDate[] range = resolveRange(entry.getRange(), LocalDate.now(zone));
+        LocalDateTime startedAt = LocalDateTime.now();
+        log.info("开始定时报告: group={}, account={}, startDate={}, endDate={}", entry.getGroup(), entry.getAccount(),
+                range[0], range[1]);
+        try {
+            ChatAnalysisService.AnalysisReport report = chatAnalysisService.analyzeChatRange(entry.getAccount(),
+                    entry.getGroup(), range[0].toString(), range[1].toString());
+            boolean existing = report.getCreatedAt() != null && report.getCreatedAt().isBefore(startedAt);
+            analysisMetrics.recordScheduledReport(existing ? "existing" : "completed");
+            log.info("定时报告完成: group={}, reportId={}, 已存在={}", entry.getGroup(), report.getReportId(), existing);
+        } catch (Exception e) {
+            analysisMetrics.recordScheduledReport("failed");
+            log.error("定时报告失败: group={}, startDate={}, endDate={}, error={}", entry.getGroup(), range[0], range[1],
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * 解析日期范围规则，只支持截至昨天的范围：未结束的日期分析结果不完整，也不会被复用
+     *
+     * @param rule  日期范围规则，为空时视为yesterday
+     * @param today 当前日期
+     * @return [开始日期, 结束日期]
+     */
+    static LocalDate[] resolveRange(String rule, LocalDate today) {
+        String normalized = StringUtils.defaultIfBlank(rule, "yesterday").trim().toLowerCase();
+        LocalDate yesterday = today.minusDays(1);
+        switch (normalized) {
+            case "yesterday":
+                return new LocalDate[]{yesterday, yesterday};
+            case "this-week":
+                // 本周一至昨天；周一触发时为上一整周
+                LocalDate monday = yesterday.with(DayOfWeek.MONDAY);
+                return new LocalDate[]{monday, yesterday};
+            default:
+                Matcher matcher = LAST_N_DAYS.matcher(normalized);
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) > 0) {
+                    return new LocalDate[]{yesterday.minusDays(Integer.parseInt(matcher.group(1)) - 1L), yesterday};
+                }
+                throw new IllegalArgumentException("不支持的日期范围规则: " + rule);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.wechat.dailyreport.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.wechat.dailyreport.service.ChatStatisticsService.ChatStatistics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 结构化分析结果合并服务
+ * 将分段结构化分析得到的多个JSON结果合并为一个完整的结构化文档，并写入本地统计的精确数据
+ */
+@Service
+@Slf4j
+public class StructureMergeService {
+
+    private static final int MAX_TOP_SPEAKERS = 10;
+    private static final int MAX_HOT_MESSAGES = 10;
+    private static final int MAX_KEY_EVENTS = 20;
+    private static final int MAX_TOPICS = 10;
+    private static final int MAX_HIGHLIGHTS = 10;
+    private static final int MAX_TAGS = 5;
+
+    /**
+     * 解析AI返回的结构化分析结果，兼容Markdown代码块包裹的JSON
+     *
+     * @param content AI返回内容
+     * @return JSON对象，解析失败时返回null
+     */
+    public JSONObject parseStructure(String content) {
+        if (StringUtils.isBlank(content)) {
+            return null;
+        }
+
+        String json = content.trim();
+        int start = json.indexOf('{');
+        int end = json.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+
+        try {
+            return JSON.parseObject(json.substring(start, end + 1));
+        } catch (Exception e) {
+            log.warn("解析结构化分析结果失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 合并多个分段的结构化分析结果（分段需按时间顺序排列）
+     *
+     * @param partials 分段结构化分析结果
+     * @return 合并后的结构化分析结果
+     */
+    public JSONObject merge(List<JSONObject> partials) {
+        JSONObject merged = new JSONObject();
+        merged.put("summary", mergeSummary(partials));
+        merged.put("sentiment_analysis", mergeSentiment(partials));
+        merged.put("key_events", mergeKeyEvents(partials));
+        merged.put("top_speakers", mergeTopSpeakers(partials));
+        merged.put("interaction_patterns", mergeInteractionPatterns(partials));
+        merged.put("hot_messages", mergeHotMessages(partials));
+
+        log.info("结构化分析结果合并完成，分段数量: {}", partials.size());
+        return merged;
+    }
+
+    /**
+     * 写入本地统计的精确数据，覆盖AI给出的计数
+     * <ul>
+     *     <li>summary：total_messages、participants、time_range</li>
+     *     <li>top_speakers：按本地发言排行取前若干人，写入 message_count，定性内容沿用AI结果</li>
+     *     <li>interaction_patterns.most_active_participant：发言最多的人</li>
+     *     <li>statistics：每小时/每天的发言数和每人发言数</li>
+     * </ul>
+     *
+     * @param content    结构化分析结果
+     * @param statistics 本地统计结果
+     * @return 写入统计数据后的结构化分析结果，内容不是有效的JSON时原样返回
+     */
+    public String applyStatistics(String content, ChatStatistics statistics) {
+        JSONObject structure = parseStructure(content);
+        if (structure == null) {
+            log.warn("结构化分析结果不是有效的JSON，未写入本地统计数据");
+            return content;
+        }
+
+        JSONObject summary = structure.getJSONObject("summary");
+        if (summary == null) {
+            summary = new JSONObject();
+        }
+        JSONObject orderedSummary = new JSONObject();
+        orderedSummary.put("total_messages", statistics.getTotalMessages());
+        orderedSummary.put("participants", statistics.getParticipants());
+        orderedSummary.put("time_range", statistics.getTimeRange());
+        orderedSummary.put("main_topics", summary.getJSONArray("main_topics"));
+        structure.put("summary", orderedSummary);
+
+        structure.put("top_speakers", rankTopSpeakers(structure.getJSONArray("top_speakers"), statistics));
+
+        JSONObject patterns = structure.getJSONObject("interaction_patterns");
+        if (patterns == null) {
+            patterns = new JSONObject();
+            structure.put("interaction_patterns", patterns);
+        }
+        patterns.put("most_active_participant", statistics.getParticipants().isEmpty()
+                ? null : statistics.getParticipants().get(0));
+
+        JSONObject activity = new JSONObject();
+        activity.put("hourly_messages", statistics.getHourlyActivity());
+        activity.put("daily_messages", statistics.getDailyActivity());
+        activity.put("sender_messages", statistics.getSenderCounts());
+        structure.put("statistics", activity);
+
+        return JSON.toJSONString(structure);
+    }
+
+    /**
+     * 按本地发言排行生成发言达人榜，AI未评价的人只保留昵称和发言数
+     */
+    private JSONArray rankTopSpeakers(JSONArray speakers, ChatStatistics statistics) {
+        Map<String, JSONObject> qualitative = new HashMap<>();
+        if (speakers != null) {
+            for (int i = 0; i < speakers.size(); i++) {
+                JSONObject speaker = speakers.getJSONObject(i);
+                String nickname = speaker == null ? null : speaker.getString("nickname");
+                if (StringUtils.isNotBlank(nickname)) {
+                    qualitative.putIfAbsent(nickname.trim(), speaker);
+                }
+            }
+        }
+
+        JSONArray topSpeakers = new JSONArray();
+        for (Map.Entry<String, Integer> sender : statistics.getSenderCounts().entrySet()) {
+            if (topSpeakers.size() >= MAX_TOP_SPEAKERS) {
+                break;
+            }
+            JSONObject source = qualitative.getOrDefault(sender.getKey(), new JSONObject());
+            JSONObject speaker = new JSONObject();
+            speaker.put("nickname", sender.getKey());
+            speaker.put("message_count", sender.getValue());
+            speaker.put("main_topics", source.getJSONArray("main_topics"));
+            speaker.put("speaking_style", source.getJSONArray("speaking_style"));
+            speaker.put("tone_type", source.getString("tone_type"));
+            speaker.put("ai_comment", source.getString("ai_comment"));
+            speaker.put("profile_tags", source.getJSONArray("profile_tags"));
+            topSpeakers.add(speaker);
+        }
+        return topSpeakers;
+    }
+
+    /**
+     * 合并概况：话题取并集（消息数、参与者和时间范围由本地统计写入）
+     */
+    private JSONObject mergeSummary(List<JSONObject> partials) {
+        Set<String> topics = new LinkedHashSet<>();
+        for (JSONObject partial : partials) {
+            JSONObject summary = partial.getJSONObject("summary");
+            if (summary != null) {
+                addAllStrings(topics, summary.getJSONArray("main_topics"), Integer.MAX_VALUE);
+            }
+        }
+
+        JSONObject summary = new JSONObject();
+        summary.put("main_topics", limit(new ArrayList<>(topics), MAX_TOPICS));
+        return summary;
+    }
+
+    /**
+     * 合并情感分析：整体情感取多数，情感亮点拼接
+     */
+    private JSONObject mergeSentiment(List<JSONObject> partials) {
+        Map<String, Integer> votes = new HashMap<>();
+        Set<String> highlights = new LinkedHashSet<>();
+
+        for (JSONObject partial : partials) {
+            JSONObject sentiment = partial.getJSONObject("sentiment_analysis");
+            if (sentiment == null) {
+                continue;
+            }
+            String overall = sentiment.getString("overall_sentiment");
+            if (StringUtils.isNotBlank(overall)) {
+                votes.merge(overall, 1, Integer::sum);
+            }
+            addAllStrings(highlights, sentiment.getJSONArray("emotional_highlights"), Integer.MAX_VALUE);
+        }
+
+        JSONObject sentiment = new JSONObject();
+        sentiment.put("overall_sentiment", votes.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("中性"));
+        sentiment.put("emotional_highlights", limit(new ArrayList<>(highlights), MAX_HIGHLIGHTS));
+        return sentiment;
+    }
+
+    /**
+     * 合并互动模式：描述性字段去重拼接（最活跃参与者由本地统计写入）
+     */
+    private JSONObject mergeInteractionPatterns(List<JSONObject> partials) {
+        Set<String> responsePatterns = new LinkedHashSet<>();
+        Set<String> conversationFlows = new LinkedHashSet<>();
+
+        for (JSONObject partial : partials) {
+            JSONObject patterns = partial.getJSONObject("interaction_patterns");
+            if (patterns == null) {
+                continue;
+            }
+            addIfNotBlank(responsePatterns, patterns.getString("response_patterns"));
+            addIfNotBlank(conversationFlows, patterns.getString("conversation_flow"));
+        }
+
+        JSONObject patterns = new JSONObject();
+        patterns.put("response_patterns", String.join("；", responsePatterns));
+        patterns.put("conversation_flow", String.join("；", conversationFlows));
+        return patterns;
+    }
+
+    /**
+     * 合并关键事件：按分段顺序拼接
+     */
+    private JSONArray mergeKeyEvents(List<JSONObject> partials) {
+        JSONArray keyEvents = new JSONArray();
+        for (JSONObject partial : partials) {
+            JSONArray events = partial.getJSONArray("key_events");
+            if (events == null) {
+                continue;
+            }
+            for (int i = 0; i < events.size() && keyEvents.size() < MAX_KEY_EVENTS; i++) {
+                keyEvents.add(events.get(i));
+            }
+        }
+        return keyEvents;
+    }
+
+    /**
+     * 合并发言达人：按昵称聚合，评价取该人排名最靠前的分段（各分段按发言数从多到少列出），
+     * 最终排行和发言数由本地统计决定，此处不做截断
+     */
+    private JSONArray mergeTopSpeakers(List<JSONObject> partials) {
+        Map<String, SpeakerAccumulator> speakers = new LinkedHashMap<>();
+
+        for (JSONObject partial : partials) {
+            JSONArray partialSpeakers = partial.getJSONArray("top_speakers");
+            if (partialSpeakers == null) {
+                continue;
+            }
+            for (int i = 0; i < partialSpeakers.size(); i++) {
+                JSONObject speaker = partialSpeakers.getJSONObject(i);
+                String nickname = speaker == null ? null : speaker.getString("nickname");
+                if (StringUtils.isBlank(nickname)) {
+                    continue;
+                }
+                speakers.computeIfAbsent(nickname, SpeakerAccumulator::new).add(speaker, i);
+            }
+        }
+
+        JSONArray topSpeakers = new JSONArray();
+        speakers.values().forEach(speaker -> topSpeakers.add(speaker.toJson()));
+        return topSpeakers;
+    }
+
+    /**
+     * 合并热门发言：按热度分数排序取前若干条
+     */
+    private JSONArray mergeHotMessages(List<JSONObject> partials) {
+        List<JSONObject> hotMessages = new ArrayList<>();
+        for (JSONObject partial : partials) {
+            JSONArray messages = partial.getJSONArray("hot_messages");
+            if (messages == null) {
+                continue;
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                JSONObject message = messages.getJSONObject(i);
+                if (message != null) {
+                    hotMessages.add(message);
+                }
+            }
+        }
+
+        hotMessages.sort(Comparator.comparingInt((JSONObject message) -> parseCount(message.get("hot_score"))).reversed());
+        return new JSONArray(limit(hotMessages, MAX_HOT_MESSAGES));
+    }
+
+    /**
+     * 解析计数字段，兼容数字和"123条"之类的字符串
+     */
+    static int parseCount(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value == null) {
+            return 0;
+        }
+        String digits = value.toString().replaceAll("[^0-9]", "");
+        if (digits.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void addAllStrings(Set<String> target, JSONArray source, int maxSize) {
+        if (source == null) {
+            return;
+        }
+        for (int i = 0; i < source.size() && target.size() < maxSize; i++) {
+            addIfNotBlank(target, source.getString(i));
+        }
+    }
+
+    private static void addIfNotBlank(Set<String> target, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            target.add(value.trim());
+        }
+    }
+
+    private static <T> List<T> limit(List<T> list, int maxSize) {
+        return list.size() > maxSize ? new ArrayList<>(list.subList(0, maxSize)) : list;
+    }
+
+    /**
+     * 发言者合并累加器
+     */
+    private static class SpeakerAccumulator {
+        private final String nickname;
+        private int bestRank = Integer.MAX_VALUE;
+        private JSONObject bestSegment;
+        private final Set<String> mainTopics = new LinkedHashSet<>();
+        private final Set<String> speakingStyles = new LinkedHashSet<>();
+        private final Set<String> profileTags = new LinkedHashSet<>();
+
+        SpeakerAccumulator(String nickname) {
+            this.nickname = nickname;
+        }
+
+        void add(JSONObject speaker, int rank) {
+            if (rank < bestRank) {
+                bestRank = rank;
+                bestSegment = speaker;
+            }
+            addAllStrings(mainTopics, speaker.getJSONArray("main_topics"), MAX_TAGS);
+            addAllStrings(speakingStyles, speaker.getJSONArray("speaking_style"), MAX_TAGS);
+            addAllStrings(profileTags, speaker.getJSONArray("profile_tags"), MAX_TAGS);
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("nickname", nickname);
+            json.put("main_topics", new ArrayList<>(mainTopics));
+            json.put("speaking_style", new ArrayList<>(speakingStyles));
+            json.put("tone_type", bestSegment.getString("tone_type"));
+            json.put("ai_comment", bestSegment.getString("ai_comment"));
+            json.put("profile_tags", new ArrayList<>(profileTags));
+            return json;
+        }
+    }
+}
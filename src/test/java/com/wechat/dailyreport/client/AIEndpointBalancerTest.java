@@ -0,0 +1,195 @@
+package com.wechat.dailyreport.client;
+
+import com.wechat.dailyreport.config.AIEndpointProperties;
+import com.wechat.dailyreport.dto.config.AIEndpointConfig;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AI服务端点负载均衡测试
+ */
+class AIEndpointBalancerTest {
+
+    private final AIServiceConfig config = new AIServiceConfig()
+            .setBaseUrl("https://primary.example.com/v1")
+            .setApiKey("sk-primary")
+            .setTimeout(60000);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AIEndpointProperties properties;
+
+    private AIEndpointBalancer balancer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+
+        AIResilienceGuard guard = new AIResilienceGuard();
+        ReflectionTestUtils.setField(guard, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(guard, "maxAttempts", 1);
+        ReflectionTestUtils.setField(guard, "initialLimit", 8);
+        ReflectionTestUtils.setField(guard, "minLimit", 1);
+        ReflectionTestUtils.setField(guard, "maxLimit", 16);
+        ReflectionTestUtils.setField(guard, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(guard, "acquireTimeoutMillis", 1000L);
+        ReflectionTestUtils.setField(guard, "failureThreshold", 3);
+        ReflectionTestUtils.setField(guard, "openDurationMillis", 60000L);
+
+        properties = new AIEndpointProperties();
+        properties.getEndpoints().add(new AIEndpointConfig()
+                .setName("backup")
+                .setBaseUrl("https://backup.example.com/v1")
+                .setApiKey("sk-backup")
+                .setRequestsPerMinute(1));
+
+        balancer = new AIEndpointBalancer();
+        ReflectionTestUtils.setField(balancer, "endpointProperties", properties);
+        ReflectionTestUtils.setField(balancer, "resilienceGuard", guard);
+        ReflectionTestUtils.setField(balancer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(balancer, "acquireTimeoutMillis", 50L);
+        ReflectionTestUtils.setField(balancer, "hedgeQuantile", 0.95);
+        ReflectionTestUtils.setField(balancer, "hedgeMinSamples", 5);
+        ReflectionTestUtils.setField(balancer, "hedgeMinDelayMillis", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        balancer.close();
+    }
+
+    @Test
+    void endpointsIncludeDefaultOnlyWhenKeyConfigured() {
+        assertEquals(2, balancer.getEndpoints(config).size());
+        assertEquals(AIEndpointBalancer.DEFAULT_ENDPOINT, balancer.getEndpoints(config).get(0).getName());
+        assertEquals(60000, balancer.getEndpoints(config).get(1).getTimeout());
+
+        List<AIEndpointBalancer.Endpoint> withoutDefault = balancer.getEndpoints(new AIServiceConfig().setApiKey(""));
+        assertEquals(Collections.singletonList("backup"), names(withoutDefault));
+
+        properties.getEndpoints().clear();
+        assertThrows(RuntimeException.class, () -> balancer.execute(new AIServiceConfig(),
+                AIEndpointBalancer.Endpoint::getName, false, () -> true));
+    }
+
+    @Test
+    void rateLimitedEndpointIsSkippedOnceBudgetIsSpent() {
+        List<String> used = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            used.add(balancer.execute(config, AIEndpointBalancer.Endpoint::getName, false, () -> true));
+        }
+
+        // backup每分钟只有1个令牌，用完后请求都发往默认端点
+        assertEquals(1, Collections.frequency(used, "backup"));
+        assertEquals(5, Collections.frequency(used, AIEndpointBalancer.DEFAULT_ENDPOINT));
+    }
+
+    @Test
+    void slowCallIsHedgedToAnotherEndpoint() {
+        ReflectionTestUtils.setField(balancer, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(balancer, "hedgeMinDelayMillis", 200L);
+        properties.getEndpoints().get(0).setRequestsPerMinute(0);
+        // 先积累足够的耗时样本
+        for (int i = 0; i < 5; i++) {
+            balancer.execute(config, AIEndpointBalancer.Endpoint::getName, true, () -> true);
+        }
+
+        AtomicInteger rotation = (AtomicInteger) ReflectionTestUtils.getField(balancer, "rotation");
+        for (int i = 0; i < 3; i++) {
+            // 固定从默认端点开始轮转，两个端点条件相同时默认端点作为主端点
+            rotation.set(0);
+            String result = balancer.execute(config, endpoint -> {
+                if (AIEndpointBalancer.DEFAULT_ENDPOINT.equals(endpoint.getName())) {
+                    Thread.sleep(10_000);
+                }
+                return endpoint.getName();
+            }, true, () -> true);
+            assertEquals("backup", result);
+        }
+        double fired = meterRegistry.get("report.ai.hedges").tag("result", "fired").counter().count();
+        double won = meterRegistry.get("report.ai.hedges").tag("result", "won").counter().count();
+        assertTrue(won > 0);
+        assertTrue(won <= fired);
+        // 被取消的慢调用不计入熔断
+        assertEquals(0.0, meterRegistry.get("report.ai.circuit.state").tag("endpoint", "default").gauge().value());
+    }
+
+    @Test
+    void rateLimitWaitDoesNotHoldConcurrencyOrTripBreaker() {
+        properties.getEndpoints().clear();
+        ReflectionTestUtils.setField(balancer, "defaultRequestsPerMinute", 1);
+        assertEquals(AIEndpointBalancer.DEFAULT_ENDPOINT,
+                balancer.execute(config, AIEndpointBalancer.Endpoint::getName, false, () -> true));
+
+        // 令牌用完后等待超时，调用不会发出，也不计入熔断
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> balancer.execute(config, AIEndpointBalancer.Endpoint::getName, false, () -> true));
+        assertTrue(error.getMessage().contains("速率配额"));
+        assertEquals(1.0, meterRegistry.get("report.ai.rejected").tag("reason", "rate_limit_timeout").counter().count());
+        assertEquals(0.0, meterRegistry.get("report.ai.concurrency.in-flight").tag("endpoint", "default").gauge().value());
+        assertEquals(0.0, meterRegistry.get("report.ai.circuit.state").tag("endpoint", "default").gauge().value());
+    }
+
+    @Test
+    void keysOnSameBaseUrlHaveSeparateBudgets() {
+        properties.getEndpoints().clear();
+        for (String apiKey : new String[]{"sk-one", "sk-two"}) {
+            properties.getEndpoints().add(new AIEndpointConfig()
+                    .setBaseUrl("https://shared.example.com/v1")
+                    .setApiKey(apiKey)
+                    .setRequestsPerMinute(1));
+        }
+        balancer.init();
+
+        List<String> endpointNames = names(balancer.getEndpoints(new AIServiceConfig()));
+        assertEquals(2, new HashSet<>(endpointNames).size());
+        assertTrue(endpointNames.stream().allMatch(name -> name.startsWith("https://shared.example.com/v1#")));
+        assertTrue(endpointNames.stream().noneMatch(name -> name.contains("sk-")));
+
+        // 每个API密钥各有1个令牌，两次调用分别发往两个密钥，第三次等待配额超时
+        AIServiceConfig withoutDefault = new AIServiceConfig().setTimeout(60000);
+        List<String> used = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            used.add(balancer.execute(withoutDefault, AIEndpointBalancer.Endpoint::getApiKey, false, () -> true));
+        }
+        assertEquals(2, new HashSet<>(used).size());
+        assertThrows(RuntimeException.class, () -> balancer.execute(withoutDefault,
+                AIEndpointBalancer.Endpoint::getApiKey, false, () -> true));
+    }
+
+    @Test
+    void duplicateEndpointNamesAreRejected() {
+        properties.getEndpoints().add(new AIEndpointConfig()
+                .setName("backup")
+                .setBaseUrl("https://other.example.com/v1")
+                .setApiKey("sk-other"));
+        assertThrows(RuntimeException.class, balancer::init);
+
+        properties.getEndpoints().clear();
+        properties.getEndpoints().add(new AIEndpointConfig()
+                .setName(AIEndpointBalancer.DEFAULT_ENDPOINT)
+                .setBaseUrl("https://other.example.com/v1")
+                .setApiKey("sk-other"));
+        assertThrows(RuntimeException.class, balancer::init);
+    }
+
+    private static List<String> names(List<AIEndpointBalancer.Endpoint> endpoints) {
+        List<String> names = new ArrayList<>();
+        endpoints.forEach(endpoint -> names.add(endpoint.getName()));
+        return names;
+    }
+}
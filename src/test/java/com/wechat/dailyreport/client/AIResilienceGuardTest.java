@@ -0,0 +1,143 @@
+package com.wechat.dailyreport.client;
+
+import com.openai.core.http.Headers;
+import com.openai.errors.BadRequestException;
+import com.openai.errors.InternalServerException;
+import com.openai.errors.RateLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * AI调用保护测试
+ */
+class AIResilienceGuardTest {
+
+    private static final String ENDPOINT = "https://api.example.com/v1";
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AIResilienceGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new AIResilienceGuard();
+        ReflectionTestUtils.setField(guard, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(guard, "maxAttempts", 3);
+        ReflectionTestUtils.setField(guard, "backoffBaseMillis", 1L);
+        ReflectionTestUtils.setField(guard, "backoffMaxMillis", 5L);
+        ReflectionTestUtils.setField(guard, "maxRetryAfterMillis", 1000L);
+        ReflectionTestUtils.setField(guard, "initialLimit", 8);
+        ReflectionTestUtils.setField(guard, "minLimit", 1);
+        ReflectionTestUtils.setField(guard, "maxLimit", 16);
+        ReflectionTestUtils.setField(guard, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(guard, "acquireTimeoutMillis", 1000L);
+        ReflectionTestUtils.setField(guard, "failureThreshold", 3);
+        ReflectionTestUtils.setField(guard, "openDurationMillis", 60000L);
+    }
+
+    @Test
+    void retriesRateLimitAndLowersConcurrencyLimit() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = guard.execute(ENDPOINT, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw rateLimited("0");
+            }
+            return "ok";
+        }, () -> true);
+
+        assertEquals("ok", result);
+        assertEquals(2, calls.get());
+        assertEquals(1.0, meterRegistry.get("report.ai.retries").tag("reason", "rate_limit").counter().count());
+        assertEquals(4.0, meterRegistry.get("report.ai.concurrency.limit").gauge().value());
+        assertEquals(0.0, meterRegistry.get("report.ai.concurrency.in-flight").gauge().value());
+    }
+
+    @Test
+    void honoursRetryAfterAndStopsWhenTooLong() {
+        assertEquals(2000, AIResilienceGuard.retryAfterMillis(rateLimited("2")));
+        assertEquals(2000, guard.retryDelayMillis(rateLimited("2"), 1));
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(RuntimeException.class, () -> guard.execute(ENDPOINT, () -> {
+            calls.incrementAndGet();
+            throw rateLimited("2");
+        }, () -> true));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(RuntimeException.class, () -> guard.execute(ENDPOINT, () -> {
+            calls.incrementAndGet();
+            throw BadRequestException.builder().headers(Headers.builder().build()).build();
+        }, () -> true));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void circuitOpensAfterConsecutiveServerErrors() {
+        AtomicInteger calls = new AtomicInteger();
+
+        // 3次尝试都失败，达到熔断阈值
+        assertThrows(RuntimeException.class, () -> guard.execute(ENDPOINT, () -> {
+            calls.incrementAndGet();
+            throw InternalServerException.builder().statusCode(503).headers(Headers.builder().build()).build();
+        }, () -> true));
+        assertEquals(3, calls.get());
+        assertEquals(2.0, meterRegistry.get("report.ai.circuit.state").gauge().value());
+
+        RuntimeException rejected = assertThrows(RuntimeException.class,
+                () -> guard.execute(ENDPOINT, calls::incrementAndGet, () -> true));
+        // 调用方（AIService）统一加上"调用AI服务失败"前缀
+        assertEquals("AI服务暂时不可用，请稍后再试", rejected.getMessage());
+        assertEquals(3, calls.get());
+        assertEquals(1.0, meterRegistry.get("report.ai.rejected").tag("reason", "circuit_open").counter().count());
+    }
+
+    @Test
+    void streamingIsNotRetriedAfterOutput() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(RuntimeException.class, () -> guard.execute(ENDPOINT, () -> {
+            calls.incrementAndGet();
+            throw rateLimited("0");
+        }, () -> false));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void cancelledCallMakesNoFurtherAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        // 第一次尝试失败后调用被取消（如对冲请求已有结果），不再重试
+        RuntimeException error = assertThrows(RuntimeException.class, () -> guard.execute(ENDPOINT, () -> {
+            calls.incrementAndGet();
+            throw InternalServerException.builder().statusCode(503).headers(Headers.builder().build()).build();
+        }, () -> {
+            cancelled.set(calls.get() > 0);
+            return true;
+        }, cancelled::get, () -> { }));
+        assertEquals("调用已取消", error.getMessage());
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.get("report.ai.concurrency.in-flight").gauge().value());
+    }
+
+    private static RateLimitException rateLimited(String retryAfter) {
+        return RateLimitException.builder()
+                .headers(Headers.builder().put("Retry-After", retryAfter).build())
+                .build();
+    }
+}
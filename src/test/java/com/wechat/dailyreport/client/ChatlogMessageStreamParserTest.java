@@ -0,0 +1,56 @@
+package com.wechat.dailyreport.client;
+
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Chatlog消息流式解析测试
+ */
+class ChatlogMessageStreamParserTest {
+
+    private static final String PAYLOAD = "["
+            + "{\"seq\":1,\"time\":\"2024-08-01T09:00:00+08:00\",\"talker\":\"g1@chatroom\",\"sender\":\"u1\","
+            + "\"senderName\":\"张三\",\"type\":1,\"subType\":0,\"content\":\"早上好\"},"
+            + "{\"seq\":2,\"time\":\"2024-08-01T09:01:00+08:00\",\"sender\":\"u2\",\"senderName\":\"李四\","
+            + "\"type\":3,\"content\":\"<img/>\",\"contents\":{\"md5\":\"abc\",\"imgfile\":\"a.jpg\"}},"
+            + "{\"seq\":3,\"time\":\"2024-08-01T09:02:00+08:00\",\"sender\":\"u1\",\"senderName\":\"张三\","
+            + "\"type\":1,\"content\":\"   \"},"
+            + "{\"seq\":4,\"time\":\"2024-08-03T10:00:00+08:00\",\"sender\":\"u1\",\"senderName\":\"张三\","
+            + "\"type\":1,\"content\":\"范围外\"},"
+            + "{\"seq\":5,\"time\":\"2024-08-02T23:59:00+08:00\",\"sender\":\"u1\",\"senderName\":\"张三\","
+            + "\"type\":1,\"content\":\"晚安\",\"contents\":null}"
+            + "]";
+
+    @Test
+    void keepsOnlyTextMessagesInsideRange() throws Exception {
+        ChatlogMessageStreamParser parser = new ChatlogMessageStreamParser(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 2));
+        List<ChatMessage> messages = parser.parse(stream(PAYLOAD));
+
+        assertEquals(5, parser.getTotalCount());
+        assertEquals(2, messages.size());
+        assertEquals("早上好", messages.get(0).getContent());
+        assertEquals("晚安", messages.get(1).getContent());
+        assertEquals(Long.valueOf(5), messages.get(1).getSeq());
+        assertSame(messages.get(0).getSenderName(), messages.get(1).getSenderName());
+    }
+
+    @Test
+    void acceptsItemsWrapper() throws Exception {
+        ChatlogMessageStreamParser parser = new ChatlogMessageStreamParser(null, null);
+        List<ChatMessage> messages = parser.parse(stream("{\"total\":5,\"items\":" + PAYLOAD + "}"));
+
+        assertEquals(3, messages.size());
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,141 @@
+package com.wechat.dailyreport.client;
+
+import com.openai.client.OpenAIClient;
+import com.wechat.dailyreport.config.AIEndpointProperties;
+import com.wechat.dailyreport.config.AiConfig;
+import com.wechat.dailyreport.dto.config.AIEndpointConfig;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import com.wechat.dailyreport.dto.response.OpenAIClientPoolStats;
+import com.wechat.dailyreport.event.AIConfigChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * OpenAI客户端池测试
+ */
+class OpenAIClientPoolTest {
+
+    private static final String BASE_URL = "https://api.example.com/v1";
+
+    private OpenAIClientPool pool;
+
+    private AIEndpointProperties endpointProperties;
+
+    @BeforeEach
+    void setUp() {
+        // 每次创建新的模拟客户端，便于区分新建和复用
+        AiConfig aiConfig = mock(AiConfig.class);
+        when(aiConfig.createOpenAIClient(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> mock(OpenAIClient.class));
+        endpointProperties = new AIEndpointProperties();
+
+        pool = new OpenAIClientPool();
+        ReflectionTestUtils.setField(pool, "aiConfig", aiConfig);
+        ReflectionTestUtils.setField(pool, "endpointProperties", endpointProperties);
+    }
+
+    @Test
+    void sameConfigReusesClientAndCountsHitsAndMisses() {
+        OpenAIClient client;
+        try (OpenAIClientPool.Lease lease = pool.acquire("key-a", BASE_URL, 60000)) {
+            client = lease.client();
+            assertEquals(1, pool.getStats().getActiveLeases());
+        }
+        try (OpenAIClientPool.Lease lease = pool.acquire("key-a", BASE_URL, 60000)) {
+            assertSame(client, lease.client());
+        }
+        try (OpenAIClientPool.Lease lease = pool.acquire("key-a", BASE_URL, 30000)) {
+            assertNotSame(client, lease.client());
+        }
+
+        OpenAIClientPoolStats stats = pool.getStats();
+        assertEquals(2, stats.getPoolSize());
+        assertEquals(0, stats.getActiveLeases());
+        assertEquals(1L, stats.getHits());
+        assertEquals(2L, stats.getMisses());
+        assertEquals(0L, stats.getEvictions());
+    }
+
+    @Test
+    void retiredClientClosesAfterLastLeaseIsReturned() {
+        OpenAIClientPool.Lease first = pool.acquire("key-a", BASE_URL, 60000);
+        OpenAIClientPool.Lease second = pool.acquire("key-a", BASE_URL, 60000);
+        OpenAIClient client = first.client();
+
+        // 配置改为另一个API密钥，旧客户端被淘汰，但仍在使用中
+        changeConfig("key-b");
+        assertEquals(0, pool.getStats().getPoolSize());
+        assertEquals(1L, pool.getStats().getEvictions());
+        verify(client, never()).close();
+
+        first.close();
+        // 重复关闭同一个租约不影响计数
+        first.close();
+        verify(client, never()).close();
+        assertEquals(1, pool.getStats().getActiveLeases());
+
+        second.close();
+        verify(client, times(1)).close();
+        assertEquals(0, pool.getStats().getActiveLeases());
+
+        // 旧配置再次出现时创建新客户端
+        try (OpenAIClientPool.Lease lease = pool.acquire("key-a", BASE_URL, 60000)) {
+            assertNotSame(client, lease.client());
+        }
+    }
+
+    @Test
+    void configChangeEvictsOnlyKeysThatNoLongerMatch() {
+        OpenAIClient defaultClient = leaseAndReturn("key-a", 60000);
+        OpenAIClient endpointClient = leaseAndReturn("key-b", 30000);
+        OpenAIClient staleClient = leaseAndReturn("key-c", 60000);
+
+        endpointProperties.setEndpoints(Collections.singletonList(
+                new AIEndpointConfig().setBaseUrl(BASE_URL).setApiKey("key-b").setTimeout(30000)));
+        changeConfig("key-a");
+
+        assertEquals(2, pool.getStats().getPoolSize());
+        assertEquals(1L, pool.getStats().getEvictions());
+        verify(staleClient, times(1)).close();
+        verify(defaultClient, never()).close();
+        verify(endpointClient, never()).close();
+        try (OpenAIClientPool.Lease lease = pool.acquire("key-b", BASE_URL, 30000)) {
+            assertSame(endpointClient, lease.client());
+        }
+    }
+
+    @Test
+    void closeShutsDownIdleClients() {
+        OpenAIClient client = leaseAndReturn("key-a", 60000);
+        pool.close();
+        verify(client, times(1)).close();
+        assertEquals(0, pool.getStats().getPoolSize());
+    }
+
+    private OpenAIClient leaseAndReturn(String apiKey, int timeoutMillis) {
+        try (OpenAIClientPool.Lease lease = pool.acquire(apiKey, BASE_URL, timeoutMillis)) {
+            return lease.client();
+        }
+    }
+
+    private void changeConfig(String apiKey) {
+        pool.onAIConfigChanged(new AIConfigChangedEvent(this, new AIServiceConfig()
+                .setApiKey(apiKey)
+                .setBaseUrl(BASE_URL)
+                .setTimeout(60000)));
+    }
+}
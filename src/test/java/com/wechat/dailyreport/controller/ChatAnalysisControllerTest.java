@@ -0,0 +1,165 @@
+package com.wechat.dailyreport.controller;
+
+import com.wechat.dailyreport.service.ChatAnalysisService;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * 报告页面缓存测试
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ChatAnalysisControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ChatAnalysisService chatAnalysisService;
+
+    @Test
+    void completedReportIsServedWithEtagAndNotModified() throws Exception {
+        String reportId = newReport("COMPLETED");
+
+        MvcResult gzip = mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+        String gzipEtag = gzip.getResponse().getHeader(HttpHeaders.ETAG);
+        String gzipPage = gunzip(gzip.getResponse().getContentAsByteArray());
+        assertTrue(gzipPage.contains("测试群"));
+
+        MvcResult identity = mockMvc.perform(get("/chat-analysis/report/" + reportId))
+                .andExpect(status().isOk())
+                .andReturn();
+        String identityEtag = identity.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNull(identity.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(gzipPage, identity.getResponse().getContentAsString(StandardCharsets.UTF_8));
+        // 两种内容编码的强ETag不同
+        assertNotEquals(gzipEtag, identityEtag);
+
+        mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.IF_NONE_MATCH, identityEtag))
+                .andExpect(status().isNotModified());
+        // ETag与内容编码不匹配时返回完整页面
+        mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isOk());
+
+        // 页面只渲染一次，之后不再读取报告
+        verify(chatAnalysisService, times(1)).getAnalysisReport(reportId);
+    }
+
+    @Test
+    void gzipRefusedByQualityIsServedUncompressed() throws Exception {
+        String reportId = newReport("COMPLETED");
+
+        MvcResult refused = mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, deflate"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertNull(refused.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(refused.getResponse().getContentAsString(StandardCharsets.UTF_8).contains("测试群"));
+
+        mockMvc.perform(get("/chat-analysis/report/" + reportId)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+
+    @Test
+    void acceptEncodingQualityValuesAreHonoured() {
+        assertTrue(ChatAnalysisController.acceptsGzip("gzip, deflate"));
+        assertTrue(ChatAnalysisController.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ChatAnalysisController.acceptsGzip("*"));
+        assertFalse(ChatAnalysisController.acceptsGzip(null));
+        assertFalse(ChatAnalysisController.acceptsGzip("identity"));
+        assertFalse(ChatAnalysisController.acceptsGzip("gzip;q=0"));
+        assertFalse(ChatAnalysisController.acceptsGzip("gzip; q=0.000"));
+        // 显式列出的gzip优先于通配符
+        assertFalse(ChatAnalysisController.acceptsGzip("*, gzip;q=0"));
+        assertTrue(ChatAnalysisController.acceptsGzip("*;q=0, gzip"));
+        assertFalse(ChatAnalysisController.acceptsGzip("*;q=0"));
+    }
+
+    @Test
+    void onlyCompletedReportsAreCached() throws Exception {
+        String processing = newReport("PROCESSING");
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/chat-analysis/report/" + processing))
+                    .andExpect(status().isOk())
+                    .andExpect(view().name("processing"))
+                    .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        }
+        verify(chatAnalysisService, times(2)).getAnalysisReport(processing);
+
+        String failed = newReport("FAILED");
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/chat-analysis/report/" + failed))
+                    .andExpect(status().isOk())
+                    .andExpect(view().name("report"))
+                    .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        }
+        verify(chatAnalysisService, times(2)).getAnalysisReport(failed);
+    }
+
+    private String newReport(String status) {
+        // 渲染目录在多次运行间保留，每次使用新的报告ID
+        String reportId = UUID.randomUUID().toString().replace("-", "");
+        when(chatAnalysisService.getAnalysisReport(reportId)).thenReturn(new AnalysisReport()
+                .setReportId(reportId)
+                .setChatId("测试群")
+                .setChatName("测试群")
+                .setStartDate(LocalDate.of(2024, 8, 1))
+                .setEndDate(LocalDate.of(2024, 8, 7))
+                .setModel("test-model")
+                .setStatus(status)
+                .setFinalReport("<p>报告内容</p>")
+                .setCreatedAt(LocalDateTime.of(2024, 8, 8, 9, 0))
+                .setCompletedAt(LocalDateTime.of(2024, 8, 8, 9, 5)));
+        return reportId;
+    }
+
+    private static String gunzip(byte[] gzip) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.wechat.dailyreport.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文件原子写入测试
+ */
+class AtomicFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void concurrentWritersNeverExposePartialContent() throws Exception {
+        Path file = tempDir.resolve("a").resolve("page.html.gz");
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                byte[] content = content(i);
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 20; round++) {
+                        AtomicFiles.write(file, content);
+                    }
+                    return null;
+                }));
+            }
+            // 读取方只会看到某个写入方的完整内容
+            futures.add(executor.submit(() -> {
+                for (int round = 0; round < 200; round++) {
+                    if (Files.exists(file)) {
+                        byte[] read = Files.readAllBytes(file);
+                        assertArrayEquals(content(read[0]), read);
+                    }
+                }
+                return null;
+            }));
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(Arrays.asList(file), files());
+    }
+
+    @Test
+    void failedWriteKeepsTargetAndRemovesTempFile() throws Exception {
+        // 目标是非空目录，原子替换失败
+        Path target = tempDir.resolve("target");
+        Files.createDirectories(target);
+        Path existing = Files.write(target.resolve("existing"), new byte[]{1});
+
+        assertThrows(IOException.class, () -> AtomicFiles.write(target, new byte[]{2}));
+
+        assertEquals(Arrays.asList(existing), files());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> walk = Files.walk(tempDir)) {
+            return walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] content(int writer) {
+        byte[] content = new byte[256 * 1024];
+        Arrays.fill(content, (byte) writer);
+        return content;
+    }
+}
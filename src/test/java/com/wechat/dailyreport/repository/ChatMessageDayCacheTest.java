@@ -0,0 +1,169 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import com.wechat.dailyreport.service.MessageBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按天分区的消息缓存测试
+ */
+class ChatMessageDayCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 8, 1);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void messagesRoundTrip() throws Exception {
+        ChatMessageDayCache cache = open();
+        List<ChatMessage> messages = Arrays.asList(
+                message(1L, 9, "u1", "张三", "早上好"),
+                message(2L, 10, "u2", "李四", "你好 👋"),
+                message(null, 11, "u1", "张三", "早上好"));
+        cache.put("测试群", DAY, messages);
+
+        MessageBatch.Builder builder = new MessageBatch.Builder();
+        assertTrue(cache.readInto("测试群", DAY, builder));
+        MessageBatch cached = builder.build();
+        MessageBatch expected = MessageBatch.of(messages);
+        assertEquals(expected.size(), cached.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getSeq(i), cached.getSeq(i));
+            assertEquals(expected.getTime(i), cached.getTime(i));
+            assertEquals(expected.getSenderId(expected.getSender(i)), cached.getSenderId(cached.getSender(i)));
+            assertEquals(expected.getSenderName(expected.getSender(i)), cached.getSenderName(cached.getSender(i)));
+            assertEquals(expected.getType(i), cached.getType(i));
+            assertEquals(expected.getContent(i).toString(), cached.getContent(i).toString());
+        }
+        assertFalse(cache.readInto("其他群", DAY, builder));
+    }
+
+    @Test
+    void partitionDecodesIntoBatch() throws Exception {
+        ChatMessageDayCache cache = open();
+        cache.put("测试群", DAY, Arrays.asList(
+                message(1L, 9, "u1", "张三", "早上好"),
+                message(2L, 23, "u2", "李四", "晚安"),
+                message(3L, 23, "u1", "张三", "晚安")));
+
+        MessageBatch.Builder builder = new MessageBatch.Builder();
+        assertTrue(cache.readInto("测试群", DAY, builder));
+        assertFalse(cache.readInto("测试群", DAY.plusDays(1), builder));
+        MessageBatch batch = builder.build();
+
+        assertEquals(3, batch.size());
+        assertEquals(2, batch.getSenderCount());
+        assertEquals(batch.getSender(0), batch.getSender(2));
+        assertEquals("李四", batch.getSenderName(batch.getSender(1)));
+        assertEquals("晚安", batch.getContent(1).toString());
+        assertEquals(2L, batch.getSeq(1));
+        assertEquals(DAY.toEpochDay(), batch.getEpochDay(1));
+        assertEquals(23 * 60 + 30, batch.getMinuteOfDay(1));
+        assertEquals(message(2L, 23, "u2", "李四", "晚安").getTime().toEpochSecond(), batch.getEpochSecond(1));
+        assertEquals("晚安", batch.slice(1, 3).getContent(1).toString());
+    }
+
+    @Test
+    void emptyDayIsCached() throws Exception {
+        ChatMessageDayCache cache = open();
+        cache.put("测试群", DAY, Collections.emptyList());
+
+        MessageBatch.Builder builder = new MessageBatch.Builder();
+        assertTrue(cache.readInto("测试群", DAY, builder));
+        assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    void corruptedPartitionIsDiscarded() throws Exception {
+        ChatMessageDayCache cache = open();
+        cache.put("测试群", DAY, Collections.singletonList(message(1L, 9, "u1", "张三", "早上好")));
+        Path partition = partitionFile();
+        try (RandomAccessFile file = new RandomAccessFile(partition.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            file.write('x');
+        }
+
+        MessageBatch.Builder builder = new MessageBatch.Builder();
+        assertFalse(cache.readInto("测试群", DAY, builder));
+        assertTrue(builder.build().isEmpty());
+        assertTrue(Files.notExists(partition));
+    }
+
+    @Test
+    void corruptedRecordRollsBackDecodedMessages() throws Exception {
+        ChatMessageDayCache cache = open();
+        cache.put("测试群", DAY, Arrays.asList(
+                message(1L, 9, "u1", "张三", "早上好"),
+                message(2L, 10, "u2", "李四", "你好")));
+        Path partition = partitionFile();
+
+        // 第二条记录的内容下标越界，并重新计算CRC，使损坏在解码到一半时才被发现
+        byte[] bytes = Files.readAllBytes(partition);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(20 + 45 + 32, 999);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 20, bytes.length - 20);
+        buffer.putInt(16, (int) crc.getValue());
+        Files.write(partition, bytes);
+
+        MessageBatch.Builder builder = new MessageBatch.Builder()
+                .add(message(0L, 8, "u3", "王五", "前一天的消息"));
+        assertFalse(cache.readInto("测试群", DAY, builder));
+        MessageBatch batch = builder.build();
+
+        // 已解码的第一条消息及其发言者被撤销，构建器恢复到读取之前的状态
+        assertEquals(1, batch.size());
+        assertEquals(1, batch.getSenderCount());
+        assertEquals("王五", batch.getSenderName(batch.getSender(0)));
+        assertEquals("前一天的消息", batch.getContent(0).toString());
+        assertTrue(Files.notExists(partition));
+    }
+
+    private Path partitionFile() throws Exception {
+        try (Stream<Path> walk = Files.walk(tempDir)) {
+            List<Path> files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            assertEquals(1, files.size());
+            return files.get(0);
+        }
+    }
+
+    private ChatMessageDayCache open() {
+        ChatMessageDayCache cache = new ChatMessageDayCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        return FileStores.open(cache, "cacheDir", tempDir);
+    }
+
+    private static ChatMessage message(Long seq, int hour, String sender, String senderName, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setSeq(seq);
+        message.setTime(OffsetDateTime.of(DAY.atTime(hour, 30, 15), ZoneOffset.ofHours(8)));
+        message.setIsChatRoom(true);
+        message.setSender(sender);
+        message.setSenderName(senderName);
+        message.setType(1);
+        message.setSubType(0);
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,95 @@
+package com.wechat.dailyreport.repository;
+
+import com.wechat.dailyreport.dto.request.AIAnalysisRequest;
+import com.wechat.dailyreport.dto.response.AIAnalysisResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * AI响应磁盘缓存测试
+ */
+class CompletionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keyCoversModelParametersAndMessages() {
+        String key = CompletionCache.keyOf(request("gpt-4o", 0.7, "聊天记录"));
+
+        assertEquals(key, CompletionCache.keyOf(request("gpt-4o", 0.7, "聊天记录")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o-mini", 0.7, "聊天记录")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o", 0.2, "聊天记录")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o", 0.7, "其他聊天记录")));
+    }
+
+    @Test
+    void responsesSurviveRestart() throws Exception {
+        CompletionCache cache = open(1024 * 1024);
+        String key = CompletionCache.keyOf(request("gpt-4o", 0.7, "聊天记录"));
+        assertNull(cache.get(key));
+
+        cache.put(key, response("分析结果"));
+
+        AIAnalysisResponse cached = open(1024 * 1024).get(key);
+        assertEquals("分析结果", cached.getChoices().get(0).getMessage().getContent());
+        assertEquals(Integer.valueOf(10), cached.getUsage().getPromptTokens());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        CompletionCache cache = open(1024 * 1024);
+        String first = CompletionCache.keyOf(request("gpt-4o", 0.7, "1"));
+        String second = CompletionCache.keyOf(request("gpt-4o", 0.7, "2"));
+        String third = CompletionCache.keyOf(request("gpt-4o", 0.7, "3"));
+        cache.put(first, response("第一条"));
+        long entryBytes = (long) ReflectionTestUtils.getField(cache, "totalBytes");
+
+        // 只能容纳两条缓存
+        ReflectionTestUtils.setField(cache, "maxBytes", entryBytes * 2 + entryBytes / 2);
+        cache.put(second, response("第二条"));
+        assertNotNull(cache.get(first));
+        cache.put(third, response("第三条"));
+
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+    }
+
+    private CompletionCache open(long maxBytes) {
+        CompletionCache cache = new CompletionCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        return FileStores.open(cache, "cacheDir", tempDir);
+    }
+
+    private static AIAnalysisRequest request(String model, double temperature, String content) {
+        return new AIAnalysisRequest()
+                .setModel(model)
+                .setTemperature(temperature)
+                .setMaxTokens(4000)
+                .setMessages(Arrays.asList(
+                        new AIAnalysisRequest.AIMessage().setRole("system").setContent("提示词"),
+                        new AIAnalysisRequest.AIMessage().setRole("user").setContent(content)));
+    }
+
+    private static AIAnalysisResponse response(String content) {
+        return new AIAnalysisResponse()
+                .setModel("gpt-4o")
+                .setChoices(Collections.singletonList(new AIAnalysisResponse.AIChoice()
+                        .setIndex(0)
+                        .setFinishReason("stop")
+                        .setMessage(new AIAnalysisResponse.AIMessage().setRole("assistant").setContent(content))))
+                .setUsage(new AIAnalysisResponse.AIUsage().setPromptTokens(10).setCompletionTokens(5).setTotalTokens(15));
+    }
+}
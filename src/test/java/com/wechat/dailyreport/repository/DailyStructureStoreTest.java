@@ -0,0 +1,49 @@
+package com.wechat.dailyreport.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 每日结构化分析存储测试
+ */
+class DailyStructureStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 15);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void structuresSurviveRestart() throws Exception {
+        open().put("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY, "{\"summary\":{}}");
+
+        DailyStructureStore reopened = open();
+        assertEquals("{\"summary\":{}}", reopened.get("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY));
+        assertNull(reopened.get("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY.plusDays(1)));
+
+        reopened.remove("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY);
+        assertNull(reopened.get("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY));
+    }
+
+    @Test
+    void keyCoversAccountSourceChatModelAndPromptVersion() throws Exception {
+        DailyStructureStore store = open();
+        store.put("wxid_a", "source-a", "测试群", "gpt-4o", "v1", DAY, "{}");
+
+        assertNull(store.get("wxid_b", "source-a", "测试群", "gpt-4o", "v1", DAY));
+        assertNull(store.get("wxid_a", "source-b", "测试群", "gpt-4o", "v1", DAY));
+        assertNull(store.get("wxid_a", "source-a", "其他群", "gpt-4o", "v1", DAY));
+        assertNull(store.get("wxid_a", "source-a", "测试群", "gpt-4o-mini", "v1", DAY));
+        assertNull(store.get("wxid_a", "source-a", "测试群", "gpt-4o", "v2", DAY));
+    }
+
+    private DailyStructureStore open() {
+        return FileStores.open(new DailyStructureStore(), "storeDir", tempDir);
+    }
+}
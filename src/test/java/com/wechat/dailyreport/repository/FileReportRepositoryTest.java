@@ -0,0 +1,254 @@
+package com.wechat.dailyreport.repository;
+
+import com.alibaba.fastjson2.JSON;
+import com.wechat.dailyreport.dto.request.ReportHistoryQuery;
+import com.wechat.dailyreport.dto.response.PageResult;
+import com.wechat.dailyreport.dto.response.ReportStoreStats;
+import com.wechat.dailyreport.dto.response.ReportSummary;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文件报告存储测试
+ */
+class FileReportRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileReportRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    @Test
+    void savedReportsSurviveReopen() throws Exception {
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        repository.save(report("r1", "PROCESSING"));
+        repository.save(report("r2", "COMPLETED"));
+        repository.save(report("r1", "COMPLETED").setFinalReport("<p>done</p>"));
+        repository.close();
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertEquals(2, repository.count());
+        AnalysisReport reopened = repository.findById("r1");
+        assertEquals("COMPLETED", reopened.getStatus());
+        assertEquals("<p>done</p>", reopened.getFinalReport());
+        assertEquals(LocalDate.of(2024, 8, 1), reopened.getStartDate());
+        assertNull(repository.findById("missing"));
+    }
+
+    @Test
+    void truncatedTailIsDiscardedOnReopen() throws Exception {
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        repository.save(report("r1", "COMPLETED"));
+        repository.save(report("r2", "COMPLETED"));
+        repository.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            segment = files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertEquals(1, repository.count());
+        assertEquals("COMPLETED", repository.findById("r1").getStatus());
+        assertNull(repository.findById("r2"));
+    }
+
+    @Test
+    void compactionKeepsLatestVersionOfEachReport() throws Exception {
+        repository = open(4 * 1024, 1);
+        for (int i = 0; i < 50; i++) {
+            repository.save(report("r1", "PROCESSING").setRawData("version-" + i));
+            repository.save(report("r2", "PROCESSING").setRawData("version-" + i));
+            // 后台压缩期间读取的始终是最新版本
+            assertEquals("version-" + i, repository.findById("r1").getRawData());
+        }
+        // 关闭时等待后台压缩结束
+        repository.close();
+
+        repository = open(4 * 1024, 1);
+        // 100条记录中只剩2条有效记录，压缩后磁盘占用不超过两个分段
+        assertTrue(repository.getStats().getDiskBytes() < 8 * 1024);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.count() <= 2);
+        }
+        assertEquals(2, repository.count());
+        assertEquals("version-49", repository.findById("r1").getRawData());
+        assertEquals("version-49", repository.findById("r2").getRawData());
+        assertEquals(2, repository.findIdsByStatus("PROCESSING").size());
+    }
+
+    @Test
+    void completedRangeReportIsIndexedByKey() throws Exception {
+        ReportRangeKey rangeKey = new ReportRangeKey("default", "source-a", "测试群",
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 7), "test-model");
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        repository.save(report("r1", "PROCESSING"));
+        assertNull(repository.findCompletedByRangeKey(rangeKey));
+
+        repository.save(report("r1", "COMPLETED"));
+        assertEquals("r1", repository.findCompletedByRangeKey(rangeKey).getReportId());
+        repository.close();
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertEquals("r1", repository.findCompletedByRangeKey(rangeKey).getReportId());
+        assertNull(repository.findCompletedByRangeKey(new ReportRangeKey("default", "source-a", "测试群",
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 7), "other-model")));
+        // 默认账号修改服务地址后不复用之前数据源的报告
+        assertNull(repository.findCompletedByRangeKey(new ReportRangeKey("default", "source-b", "测试群",
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 7), "test-model")));
+    }
+
+    @Test
+    void rangeNotFinishedAtCreationIsNotIndexed() throws Exception {
+        ReportRangeKey rangeKey = new ReportRangeKey("default", "source-a", "测试群",
+                LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 7), "test-model");
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        repository.save(report("r1", "COMPLETED").setRangeFinished(false));
+        assertNull(repository.findCompletedByRangeKey(rangeKey));
+        repository.close();
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertNull(repository.findCompletedByRangeKey(rangeKey));
+        assertEquals("COMPLETED", repository.findById("r1").getStatus());
+    }
+
+    @Test
+    void historyIsPagedNewestFirstAndFiltered() throws Exception {
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        for (int i = 1; i <= 5; i++) {
+            repository.save(report("r" + i, "COMPLETED").setCreatedAt(LocalDateTime.of(2024, 8, i, 9, 0)));
+        }
+        repository.save(report("other", "FAILED").setChatId("其他群").setCreatedAt(LocalDateTime.of(2024, 8, 3, 12, 0)));
+        // 状态变化后从原状态的索引中移除
+        repository.save(report("r2", "FAILED").setCreatedAt(LocalDateTime.of(2024, 8, 2, 9, 0)));
+        repository.close();
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        PageResult<ReportSummary> first = repository.findSummaries(new ReportHistoryQuery(), 1, 4);
+        assertEquals(6, first.getTotal());
+        assertEquals(2, first.getPages());
+        assertEquals(Arrays.asList("r5", "r4", "other", "r3"), ids(first));
+        assertEquals(Arrays.asList("r2", "r1"), ids(repository.findSummaries(new ReportHistoryQuery(), 2, 4)));
+
+        PageResult<ReportSummary> failed = repository.findSummaries(new ReportHistoryQuery().setStatus("FAILED"), 1, 10);
+        assertEquals(Arrays.asList("other", "r2"), ids(failed));
+        assertEquals(Arrays.asList("r5", "r4", "r3", "r1"), ids(repository.findSummaries(
+                new ReportHistoryQuery().setChatId("测试群").setStatus("COMPLETED"), 1, 10)));
+
+        PageResult<ReportSummary> ranged = repository.findSummaries(new ReportHistoryQuery()
+                .setCreatedFrom(LocalDate.of(2024, 8, 2)).setCreatedTo(LocalDate.of(2024, 8, 3)), 1, 10);
+        assertEquals(3, ranged.getTotal());
+        assertEquals(Arrays.asList("other", "r3", "r2"), ids(ranged));
+        assertEquals(0, repository.findSummaries(new ReportHistoryQuery().setChatId("不存在"), 1, 10).getTotal());
+    }
+
+    @Test
+    void bodiesAreCompressedAndHotReportsServedFromMemory() throws Exception {
+        String rawData = String.join("\n", Collections.nCopies(20000, "[09:00] 张三: 今天的会议改到下午三点"));
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        repository.save(report("r1", "COMPLETED").setRawData(rawData).setFinalReport("<p>done</p>"));
+        repository.close();
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        ReflectionTestUtils.setField(repository, "hotCacheMaxBytes", 16L * 1024 * 1024);
+        assertTrue(repository.getStats().getDiskBytes() < rawData.length() / 10);
+
+        AnalysisReport first = repository.findById("r1");
+        assertEquals(rawData, first.getRawData());
+        assertEquals("测试群", first.getChatName());
+        // 修改返回的报告不影响缓存
+        first.setFinalReport("changed");
+        assertEquals("<p>done</p>", repository.findById("r1").getFinalReport());
+
+        ReportStoreStats stats = repository.getStats();
+        assertEquals(1L, stats.getHotMisses());
+        assertEquals(1L, stats.getHotHits());
+        assertEquals(1, stats.getHotReports());
+
+        // 超过热缓存上限时淘汰最久未访问的报告
+        ReflectionTestUtils.setField(repository, "hotCacheMaxBytes", rawData.length() * 3L);
+        repository.save(report("r2", "COMPLETED").setRawData(rawData));
+        assertEquals(1, repository.getStats().getHotReports());
+        assertEquals(rawData, repository.findById("r1").getRawData());
+        assertEquals(2L, repository.getStats().getHotMisses());
+    }
+
+    @Test
+    void legacyJsonRecordsAreReadable() throws Exception {
+        byte[] payload = JSON.toJSONBytes(report("r1", "COMPLETED").setFinalReport("<p>legacy</p>"));
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc32.getValue()).put(payload);
+        Files.write(tempDir.resolve("segment-00000001.log"), record.array());
+
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertEquals("<p>legacy</p>", repository.findById("r1").getFinalReport());
+        assertEquals(Collections.singletonList("r1"), ids(repository.findSummaries(new ReportHistoryQuery(), 1, 10)));
+
+        repository.save(report("r2", "COMPLETED").setFinalReport("<p>new</p>"));
+        repository.close();
+        repository = open(64 * 1024 * 1024, Long.MAX_VALUE);
+        assertEquals("<p>legacy</p>", repository.findById("r1").getFinalReport());
+        assertEquals("<p>new</p>", repository.findById("r2").getFinalReport());
+    }
+
+    private static List<String> ids(PageResult<ReportSummary> page) {
+        List<String> ids = new ArrayList<>();
+        page.getRecords().forEach(summary -> ids.add(summary.getReportId()));
+        return ids;
+    }
+
+    private FileReportRepository open(long segmentMaxBytes, long compactionMinDeadBytes) throws Exception {
+        FileReportRepository fileRepository = new FileReportRepository();
+        ReflectionTestUtils.setField(fileRepository, "storeDir", tempDir.toString());
+        ReflectionTestUtils.setField(fileRepository, "segmentMaxBytes", segmentMaxBytes);
+        ReflectionTestUtils.setField(fileRepository, "compactionMinDeadBytes", compactionMinDeadBytes);
+        fileRepository.open();
+        return fileRepository;
+    }
+
+    private static AnalysisReport report(String reportId, String status) {
+        return new AnalysisReport()
+                .setReportId(reportId)
+                .setSource("source-a")
+                .setChatId("测试群")
+                .setChatName("测试群")
+                .setStartDate(LocalDate.of(2024, 8, 1))
+                .setEndDate(LocalDate.of(2024, 8, 7))
+                .setModel("test-model")
+                .setStatus(status)
+                .setCreatedAt(LocalDateTime.of(2024, 8, 8, 9, 0))
+                .setRangeFinished(true);
+    }
+}
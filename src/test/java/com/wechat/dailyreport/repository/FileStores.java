@@ -0,0 +1,28 @@
+package com.wechat.dailyreport.repository;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+/**
+ * 文件存储测试的公共方法
+ */
+final class FileStores {
+
+    private FileStores() {
+    }
+
+    /**
+     * 将存储目录指向临时目录并打开存储（调用 {@code @PostConstruct} 的 open 方法）
+     *
+     * @param store    尚未打开的存储，其他配置项已设置
+     * @param dirField 存储目录配置对应的字段名
+     * @param dir      临时目录
+     * @return 已打开的存储
+     */
+    static <T> T open(T store, String dirField, Path dir) {
+        ReflectionTestUtils.setField(store, dirField, dir.toString());
+        ReflectionTestUtils.invokeMethod(store, "open");
+        return store;
+    }
+}
@@ -0,0 +1,77 @@
+package com.wechat.dailyreport.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 已渲染报告页面存储测试
+ */
+class RenderedReportStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void renderedPagesSurviveRestartWithStableEtag() throws Exception {
+        RenderedReportStore.RenderedReport rendered = open().put("r1", "<html>报告</html>");
+
+        RenderedReportStore reopened = open();
+        assertEquals(rendered.getEtag(), reopened.getEtag("r1"));
+        RenderedReportStore.RenderedReport stored = reopened.get("r1");
+        assertEquals("<html>报告</html>", gunzip(stored.getGzip()));
+        assertNull(reopened.get("r2"));
+        assertNull(reopened.getEtag("r2"));
+
+        assertNotEquals(rendered.getEtag(), reopened.put("r2", "<html>其他报告</html>").getEtag());
+    }
+
+    @Test
+    void templateChangeInvalidatesRenderedPages() throws Exception {
+        RenderedReportStore.RenderedReport rendered = open("<html>v1</html>").put("r1", "<html>报告</html>");
+        assertEquals(rendered.getEtag(), open("<html>v1</html>").getEtag("r1"));
+
+        // 升级模板后旧页面不再命中并在启动时删除，重新渲染的ETag不同
+        RenderedReportStore upgraded = open("<html>v2</html>");
+        assertNull(upgraded.get("r1"));
+        assertNull(upgraded.getEtag("r1"));
+        assertNotEquals(rendered.getEtag(), upgraded.put("r1", "<html>报告</html>").getEtag());
+        assertNull(open("<html>v1</html>").get("r1"));
+    }
+
+    @Test
+    void reportIdCannotEscapeDirectory() throws Exception {
+        RenderedReportStore store = open();
+        store.put("../r1", "<html></html>");
+
+        assertNull(store.get("../r1"));
+        assertNull(store.getEtag("../r1"));
+    }
+
+    private RenderedReportStore open() {
+        return open("<html th:text=\"${report.chatName}\"></html>");
+    }
+
+    private RenderedReportStore open(String template) {
+        RenderedReportStore store = new RenderedReportStore();
+        ReflectionTestUtils.setField(store, "template", new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8)));
+        return FileStores.open(store, "storeDir", tempDir);
+    }
+
+    private static String gunzip(byte[] gzip) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.wechat.dailyreport.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段并行结构化分析测试
+ */
+class AIServiceTest {
+
+    private final AtomicInteger slowInterrupted = new AtomicInteger();
+
+    private final Set<String> started = ConcurrentHashMap.newKeySet();
+
+    /**
+     * "慢"开头的分段一直等待到被中断，分段"失败"立即失败，其余分段直接返回
+     */
+    private final AIService aiService = new AIService() {
+        @Override
+        public String structureAnalysis(String chatData) {
+            started.add(chatData);
+            if (chatData.startsWith("慢")) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    slowInterrupted.incrementAndGet();
+                }
+                throw new RuntimeException("调用已取消");
+            }
+            if ("失败".equals(chatData)) {
+                throw new RuntimeException("调用AI服务失败: 400");
+            }
+            return "{\"segment\":\"" + chatData + "\"}";
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        aiService.shutdown();
+    }
+
+    @Test
+    void resultsFollowInputOrder() {
+        init(3);
+        assertEquals(Arrays.asList("{\"segment\":\"1\"}", "{\"segment\":\"2\"}", "{\"segment\":\"3\"}"),
+                aiService.structureAnalysisAll(Arrays.asList("1", "2", "3")));
+    }
+
+    @Test
+    void failedSegmentCancelsRunningAndQueuedSegments() throws Exception {
+        init(2);
+
+        // 两个线程都被"慢"分段占用后，最后一个分段只能排队
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> aiService.structureAnalysisAll(Arrays.asList("慢1", "失败", "慢2", "排队")));
+        assertTrue(error.getMessage().contains("400"));
+
+        // 执行中的分段被中断，排队中的分段不再执行
+        long deadline = System.currentTimeMillis() + 5000;
+        while (slowInterrupted.get() < slowStarted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(slowStarted(), slowInterrupted.get());
+        assertFalse(started.contains("排队"));
+    }
+
+    private long slowStarted() {
+        return started.stream().filter(data -> data.startsWith("慢")).count();
+    }
+
+    private void init(int concurrency) {
+        ReflectionTestUtils.setField(aiService, "chunkMaxConcurrency", concurrency);
+        aiService.init();
+    }
+}
@@ -0,0 +1,269 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.dto.config.AIServiceConfig;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.repository.FileReportRepository;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import com.wechat.dailyreport.service.ChatlogService.ChatSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天分析服务测试
+ */
+class ChatAnalysisServiceTest {
+
+    private static final ZoneOffset MESSAGE_OFFSET = ZoneOffset.ofHours(8);
+
+    @TempDir
+    Path tempDir;
+
+    private ChatAnalysisService chatAnalysisService;
+
+    private FileReportRepository reportRepository;
+
+    private AnalysisJobService analysisJobService;
+
+    private final ChatlogService chatlogService = mock(ChatlogService.class);
+
+    private final AIService aiService = mock(AIService.class);
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    /**
+     * 生成最终报告前等待放行，用于让多个请求同时处于进行中
+     */
+    private final CountDownLatch reportGate = new CountDownLatch(1);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        reportRepository = new FileReportRepository();
+        ReflectionTestUtils.setField(reportRepository, "storeDir", tempDir.toString());
+        ReflectionTestUtils.setField(reportRepository, "segmentMaxBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(reportRepository, "compactionMinDeadBytes", Long.MAX_VALUE);
+        reportRepository.open();
+
+        analysisJobService = new AnalysisJobService();
+        ReflectionTestUtils.setField(analysisJobService, "workerThreads", 2);
+        ReflectionTestUtils.setField(analysisJobService, "queueCapacity", 10);
+        analysisJobService.init();
+
+        AnalysisMetrics analysisMetrics = mock(AnalysisMetrics.class);
+        when(analysisMetrics.timeStage(anyString(), any(), any()))
+                .thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(2)).get());
+        DataProcessorService dataProcessorService = new DataProcessorService();
+        ReflectionTestUtils.setField(dataProcessorService, "analysisMetrics", analysisMetrics);
+        ReflectionTestUtils.setField(dataProcessorService, "mergeWindowMinutes", 5);
+        ChatStatisticsService chatStatisticsService = new ChatStatisticsService();
+        ReflectionTestUtils.setField(chatStatisticsService, "dataProcessorService", dataProcessorService);
+
+        ChatlogClientRouter chatlogClientRouter = mock(ChatlogClientRouter.class);
+        when(chatlogClientRouter.sourceOf(nullable(String.class))).thenReturn("source-a");
+        AIConfigService aiConfigService = mock(AIConfigService.class);
+        when(aiConfigService.getAIConfig()).thenReturn(new AIServiceConfig().setModel("test-model"));
+
+        ChatSession session = new ChatSession();
+        session.setName("测试群");
+        session.setNickName("测试群");
+        when(chatlogService.getChatSessionByNiceName(any(), anyString())).thenReturn(session);
+        // 每天一条消息，时间为发送地的上午9点；当天的消息时间为当前时刻
+        when(chatlogService.getChatMessagesRange(any(), anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> MessageBatch.of(Collections.singletonList(
+                        message(LocalDate.parse(invocation.getArgument(3))))));
+        when(aiService.structureAnalysis(anyString())).thenReturn("{\"summary\":{\"main_topics\":[\"话题\"]}}");
+        when(aiService.generateReport(anyString())).thenReturn("<p>报告内容</p>");
+
+        chatAnalysisService = new ChatAnalysisService();
+        ReflectionTestUtils.setField(chatAnalysisService, "chatlogService", chatlogService);
+        ReflectionTestUtils.setField(chatAnalysisService, "chatlogClientRouter", chatlogClientRouter);
+        ReflectionTestUtils.setField(chatAnalysisService, "dataProcessorService", dataProcessorService);
+        ReflectionTestUtils.setField(chatAnalysisService, "aiService", aiService);
+        ReflectionTestUtils.setField(chatAnalysisService, "chatStatisticsService", chatStatisticsService);
+        ReflectionTestUtils.setField(chatAnalysisService, "structureMergeService", new StructureMergeService());
+        ReflectionTestUtils.setField(chatAnalysisService, "analysisJobService", analysisJobService);
+        ReflectionTestUtils.setField(chatAnalysisService, "aiConfigService", aiConfigService);
+        ReflectionTestUtils.setField(chatAnalysisService, "reportRepository", reportRepository);
+        ReflectionTestUtils.setField(chatAnalysisService, "reportStreamService", mock(ReportStreamService.class));
+        ReflectionTestUtils.setField(chatAnalysisService, "analysisMetrics", analysisMetrics);
+        ReflectionTestUtils.setField(chatAnalysisService, "dailyStructureService", mock(DailyStructureService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reportGate.countDown();
+        callers.shutdownNow();
+        analysisJobService.shutdown();
+        reportRepository.close();
+    }
+
+    @Test
+    void finishedRangeIsReused() {
+        AnalysisReport first = chatAnalysisService.analyzeChatRange("测试群", "2024-08-01", "2024-08-07");
+        assertEquals("COMPLETED", first.getStatus());
+        assertTrue(first.isRangeFinished());
+
+        AnalysisReport second = chatAnalysisService.analyzeChatRange("测试群", "2024-08-01", "2024-08-07");
+        assertEquals(first.getReportId(), second.getReportId());
+        verify(aiService, times(1)).generateReport(anyString());
+    }
+
+    @Test
+    void rangeEndingTodayIsNotReused() {
+        // 当天按消息发送地的时区计算，与服务器时区无关
+        String today = LocalDate.now(MESSAGE_OFFSET).toString();
+        AnalysisReport first = chatAnalysisService.analyzeChatRange("测试群", today, today);
+        assertEquals("COMPLETED", first.getStatus());
+        assertFalse(first.isRangeFinished());
+
+        AnalysisReport second = chatAnalysisService.analyzeChatRange("测试群", today, today);
+        assertEquals("COMPLETED", second.getStatus());
+        assertNotEquals(first.getReportId(), second.getReportId());
+        verify(aiService, times(2)).generateReport(anyString());
+    }
+
+    @Test
+    void concurrentIdenticalSubmissionsShareOneReport() throws Exception {
+        blockReport(null);
+
+        List<Future<AnalysisReport>> submissions = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            submissions.add(callers.submit(() -> {
+                start.await();
+                return chatAnalysisService.submitAnalysisRange("测试群", "2024-08-01", "2024-08-07");
+            }));
+        }
+        start.countDown();
+
+        String reportId = submissions.get(0).get(5, TimeUnit.SECONDS).getReportId();
+        for (Future<AnalysisReport> submission : submissions) {
+            assertEquals(reportId, submission.get(5, TimeUnit.SECONDS).getReportId());
+        }
+
+        // 进行中的分析结束后，同步请求直接复用已完成的报告
+        reportGate.countDown();
+        AnalysisReport completed = chatAnalysisService.analyzeChatRange("测试群", "2024-08-01", "2024-08-07");
+        assertEquals(reportId, completed.getReportId());
+        assertEquals("COMPLETED", completed.getStatus());
+        verify(aiService, times(1)).generateReport(anyString());
+        // 报告保存后槽位随即释放
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!inFlightAnalyses().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(inFlightAnalyses().isEmpty());
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndReleasesTheSlot() throws Exception {
+        blockReport(new RuntimeException("调用AI服务失败: 503"));
+
+        String reportId = chatAnalysisService.submitAnalysisRange("测试群", "2024-08-01", "2024-08-07").getReportId();
+        List<Thread> waiterThreads = new ArrayList<>();
+        List<Future<AnalysisReport>> waiters = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            waiters.add(callers.submit(() -> {
+                synchronized (waiterThreads) {
+                    waiterThreads.add(Thread.currentThread());
+                }
+                return chatAnalysisService.analyzeChatRange("测试群", "2024-08-01", "2024-08-07");
+            }));
+        }
+        awaitWaiting(waiterThreads, 2);
+        reportGate.countDown();
+
+        for (Future<AnalysisReport> waiter : waiters) {
+            Exception error = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause().getMessage().contains("503"));
+        }
+        assertEquals("FAILED", chatAnalysisService.getAnalysisReport(reportId).getStatus());
+        assertTrue(inFlightAnalyses().isEmpty());
+
+        // 槽位已释放，相同请求重新分析
+        doAnswer(invocation -> "<p>报告内容</p>").when(aiService).generateReport(anyString());
+        AnalysisReport retried = chatAnalysisService.analyzeChatRange("测试群", "2024-08-01", "2024-08-07");
+        assertEquals("COMPLETED", retried.getStatus());
+        assertNotEquals(reportId, retried.getReportId());
+        verify(aiService, times(2)).generateReport(anyString());
+    }
+
+    /**
+     * 生成最终报告时等待放行，放行后返回报告或抛出指定异常
+     */
+    private void blockReport(RuntimeException failure) {
+        doAnswer(invocation -> {
+            reportGate.await();
+            if (failure != null) {
+                throw failure;
+            }
+            return "<p>报告内容</p>";
+        }).when(aiService).generateReport(anyString());
+    }
+
+    /**
+     * 等待指定数量的调用线程进入等待状态（等待进行中的分析结果）
+     */
+    private static void awaitWaiting(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (threads) {
+                if (threads.size() == count && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("等待线程未进入等待状态");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> inFlightAnalyses() {
+        return (Map<Object, Object>) ReflectionTestUtils.getField(chatAnalysisService, "inFlightAnalyses");
+    }
+
+    private static ChatMessage message(LocalDate day) {
+        OffsetDateTime now = OffsetDateTime.now(MESSAGE_OFFSET);
+        ChatMessage message = new ChatMessage();
+        message.setSender("u1");
+        message.setSenderName("张三");
+        message.setTime(day.equals(now.toLocalDate()) ? now : day.atTime(9, 0).atOffset(MESSAGE_OFFSET));
+        message.setType(1);
+        message.setContent(day + "的消息");
+        return message;
+    }
+}
@@ -0,0 +1,99 @@
+package com.wechat.dailyreport.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.wechat.dailyreport.service.ChatStatisticsService.ChatStatistics;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 聊天统计及统计数据写入测试
+ */
+class ChatStatisticsServiceTest {
+
+    private ChatStatisticsService chatStatisticsService;
+
+    private final StructureMergeService structureMergeService = new StructureMergeService();
+
+    @BeforeEach
+    void setUp() {
+        chatStatisticsService = new ChatStatisticsService();
+        ReflectionTestUtils.setField(chatStatisticsService, "dataProcessorService", new DataProcessorService());
+    }
+
+    @Test
+    void computesCountsHistogramsAndRanking() {
+        ChatStatistics statistics = chatStatisticsService.compute(messages());
+
+        assertEquals(5, statistics.getTotalMessages());
+        assertEquals(Arrays.asList("李四", "张三"), statistics.getParticipants());
+        assertEquals(Integer.valueOf(3), statistics.getSenderCounts().get("李四"));
+        assertEquals(Integer.valueOf(2), statistics.getSenderCounts().get("张三"));
+        assertEquals(Integer.valueOf(2), statistics.getHourlyActivity().get(9));
+        assertEquals(Integer.valueOf(3), statistics.getHourlyActivity().get(21));
+        assertEquals(Integer.valueOf(4), statistics.getDailyActivity().get("2024-08-01"));
+        assertEquals(Integer.valueOf(1), statistics.getDailyActivity().get("2024-08-02"));
+        assertEquals("2024-08-01 09:00 至 2024-08-02 21:30", statistics.getTimeRange());
+    }
+
+    @Test
+    void overridesModelCountsWithLocalStatistics() {
+        String content = "```json\n{\"summary\":{\"total_messages\":\"约100条\",\"main_topics\":[\"开会\"]},"
+                + "\"interaction_patterns\":{\"most_active_participant\":\"张三\",\"conversation_flow\":\"平稳\"},"
+                + "\"top_speakers\":[{\"nickname\":\"张三\",\"message_count\":99,\"ai_comment\":\"话多\"}]}\n```";
+
+        JSONObject structure = JSON.parseObject(
+                structureMergeService.applyStatistics(content, chatStatisticsService.compute(messages())));
+
+        JSONObject summary = structure.getJSONObject("summary");
+        assertEquals(5, summary.getIntValue("total_messages"));
+        assertEquals("开会", summary.getJSONArray("main_topics").getString(0));
+        assertEquals("李四", structure.getJSONObject("interaction_patterns").getString("most_active_participant"));
+        assertEquals("平稳", structure.getJSONObject("interaction_patterns").getString("conversation_flow"));
+
+        JSONArray topSpeakers = structure.getJSONArray("top_speakers");
+        assertEquals(2, topSpeakers.size());
+        assertEquals("李四", topSpeakers.getJSONObject(0).getString("nickname"));
+        assertNull(topSpeakers.getJSONObject(0).getString("ai_comment"));
+        assertEquals(2, topSpeakers.getJSONObject(1).getIntValue("message_count"));
+        assertEquals("话多", topSpeakers.getJSONObject(1).getString("ai_comment"));
+
+        assertEquals(3, structure.getJSONObject("statistics").getJSONObject("sender_messages").getIntValue("李四"));
+    }
+
+    @Test
+    void keepsContentThatIsNotJson() {
+        assertEquals("分析失败", structureMergeService.applyStatistics("分析失败", chatStatisticsService.compute(messages())));
+    }
+
+    private static MessageBatch messages() {
+        return MessageBatch.of(Arrays.asList(
+                message("u1", "张三", "2024-08-01T09:00:00", "早上好"),
+                message("u2", "李四", "2024-08-01T09:10:00", "早"),
+                message("u2", "李四", "2024-08-01T21:00:00", "晚上聚餐"),
+                message("u1", "张三", "2024-08-01T21:05:00", "好"),
+                message("u3", "王五", "2024-08-01T21:06:00", "  "),
+                message("u2", "李四", "2024-08-02T21:30:00", "到了")));
+    }
+
+    private static ChatMessage message(String sender, String senderName, String time, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setSender(sender);
+        message.setSenderName(senderName);
+        message.setTime(OffsetDateTime.of(LocalDateTime.parse(time), ZoneOffset.ofHours(8)));
+        message.setType(1);
+        message.setContent(content);
+        return message;
+    }
+}
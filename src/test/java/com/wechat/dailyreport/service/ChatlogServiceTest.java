@@ -0,0 +1,109 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.client.ChatlogClient;
+import com.wechat.dailyreport.client.ChatlogClientRouter;
+import com.wechat.dailyreport.repository.ChatMessageDayCache;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 日期范围消息获取与缓存测试
+ */
+class ChatlogServiceTest {
+
+    private final ChatlogClient client = mock(ChatlogClient.class);
+
+    private final ChatMessageDayCache messageDayCache = mock(ChatMessageDayCache.class);
+
+    private ChatlogService chatlogService;
+
+    @BeforeEach
+    void setUp() {
+        ChatlogClientRouter chatlogClientRouter = mock(ChatlogClientRouter.class);
+        when(chatlogClientRouter.route(nullable(String.class))).thenReturn(client);
+        when(client.getAccount()).thenReturn("default");
+        when(client.getBaseUrl()).thenReturn("http://127.0.0.1:5030");
+        when(messageDayCache.isEnabled()).thenReturn(true);
+
+        chatlogService = new ChatlogService();
+        ReflectionTestUtils.setField(chatlogService, "chatlogClientRouter", chatlogClientRouter);
+        ReflectionTestUtils.setField(chatlogService, "messageDayCache", messageDayCache);
+    }
+
+    @Test
+    void todayInMessageOffsetIsNeverCached() {
+        // 无论服务器时区如何，发送地当天的消息都不缓存，之前的日期缓存
+        for (ZoneOffset offset : new ZoneOffset[]{ZoneOffset.ofHours(-12), ZoneOffset.ofHours(14)}) {
+            OffsetDateTime now = OffsetDateTime.now(offset);
+            LocalDate today = now.toLocalDate();
+            LocalDate yesterday = today.minusDays(1);
+            when(client.getChatMessagesRange("测试群", yesterday, today)).thenReturn(Arrays.asList(
+                    message(yesterday.atTime(9, 0).atOffset(offset)), message(now)));
+
+            MessageBatch messages = chatlogService.getChatMessagesRange("测试群", yesterday.toString(), today.toString());
+
+            assertEquals(2, messages.size());
+            verify(messageDayCache).put(anyString(), eq(yesterday), anyList());
+            verify(messageDayCache, never()).put(anyString(), eq(today), anyList());
+        }
+    }
+
+    @Test
+    void emptyDaysUseOffsetOfFetchedMessages() {
+        ZoneOffset offset = ZoneOffset.ofHours(-12);
+        LocalDate today = LocalDate.now(offset);
+        LocalDate start = today.minusDays(3);
+        when(client.getChatMessagesRange("测试群", start, today)).thenReturn(Collections.singletonList(
+                message(start.atTime(9, 0).atOffset(offset))));
+
+        chatlogService.getChatMessagesRange("测试群", start.toString(), today.toString());
+
+        // 前两天没有消息，按获取到的消息的时区偏移判断已经结束
+        verify(messageDayCache).put(anyString(), eq(start), anyList());
+        verify(messageDayCache).put(anyString(), eq(start.plusDays(1)), eq(Collections.emptyList()));
+        verify(messageDayCache).put(anyString(), eq(start.plusDays(2)), eq(Collections.emptyList()));
+        verify(messageDayCache, never()).put(anyString(), eq(today), anyList());
+    }
+
+    @Test
+    void rangeWithoutMessagesIsCachedOnlyWhenOverEverywhere() {
+        LocalDate today = LocalDate.now(ZoneOffset.MAX);
+        when(client.getChatMessagesRange(anyString(), any(), any())).thenReturn(Collections.emptyList());
+
+        chatlogService.getChatMessagesRange("测试群", today.minusDays(5).toString(), today.toString());
+
+        // 没有消息可参考时区偏移，只缓存在所有时区都已结束的日期
+        verify(messageDayCache).put(anyString(), eq(today.minusDays(5)), anyList());
+        verify(messageDayCache, never()).put(anyString(), eq(today.minusDays(1)), anyList());
+        verify(messageDayCache, never()).put(anyString(), eq(today), anyList());
+    }
+
+    private static ChatMessage message(OffsetDateTime time) {
+        ChatMessage message = new ChatMessage();
+        message.setSender("u1");
+        message.setSenderName("张三");
+        message.setTime(time);
+        message.setType(1);
+        message.setContent("消息");
+        return message;
+    }
+}
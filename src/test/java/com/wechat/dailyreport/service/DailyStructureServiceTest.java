@@ -0,0 +1,245 @@
+package com.wechat.dailyreport.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.repository.DailyStructureStore;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分层结构化分析测试
+ */
+class DailyStructureServiceTest {
+
+    private static final Pattern DAY_HEADER = Pattern.compile("# (\\d{4}-\\d{2}-\\d{2})");
+
+    @TempDir
+    Path tempDir;
+
+    private DailyStructureService dailyStructureService;
+
+    private DailyStructureStore dailyStructureStore;
+
+    private final AIService aiService = mock(AIService.class);
+
+    private final DataProcessorService dataProcessorService = new DataProcessorService();
+
+    private final StructureMergeService structureMergeService = new StructureMergeService();
+
+    /**
+     * 每次结构化分析调用收到的分段
+     */
+    private final List<List<String>> analyzedSegments = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dailyStructureStore = new DailyStructureStore();
+        ReflectionTestUtils.setField(dailyStructureStore, "enabled", true);
+        ReflectionTestUtils.setField(dailyStructureStore, "storeDir", tempDir.toString());
+        dailyStructureStore.open();
+
+        ReflectionTestUtils.setField(dataProcessorService, "analysisMetrics", mock(AnalysisMetrics.class));
+        ReflectionTestUtils.setField(dataProcessorService, "mergeWindowMinutes", 5);
+        ReflectionTestUtils.setField(dataProcessorService, "segmentMaxTokens", 24000);
+        ReflectionTestUtils.setField(dataProcessorService, "segmentGapMinutes", 30);
+
+        // AI按分段中的日期返回话题，内容包含"乱码"的分段返回无效结果
+        when(aiService.getStructurePromptVersion()).thenReturn("v1");
+        when(aiService.structureAnalysisAll(anyList())).thenAnswer(invocation -> {
+            List<String> segments = invocation.getArgument(0);
+            analyzedSegments.add(new ArrayList<>(segments));
+            return segments.stream().map(DailyStructureServiceTest::structureOf).collect(Collectors.toList());
+        });
+        when(aiService.mergeStructures(anyString())).thenReturn(
+                "{\"main_topics\":[\"整周话题\"],\"sentiment_analysis\":{\"overall_sentiment\":\"积极\"}}");
+
+        dailyStructureService = new DailyStructureService();
+        ReflectionTestUtils.setField(dailyStructureService, "dailyStructureStore", dailyStructureStore);
+        ReflectionTestUtils.setField(dailyStructureService, "dataProcessorService", dataProcessorService);
+        ReflectionTestUtils.setField(dailyStructureService, "aiService", aiService);
+        ReflectionTestUtils.setField(dailyStructureService, "structureMergeService", structureMergeService);
+        ReflectionTestUtils.setField(dailyStructureService, "analysisMetrics", mock(AnalysisMetrics.class));
+        ReflectionTestUtils.setField(dailyStructureService, "chunkEnabled", true);
+        ReflectionTestUtils.setField(dailyStructureService, "llmMerge", true);
+    }
+
+    @Test
+    void splitsByDayInMessageOffset() {
+        List<LocalDate> days = new ArrayList<>();
+        // 2024-08-01T23:30+08:00 与 2024-08-02T00:30+08:00 属于发送地的不同日期
+        List<MessageBatch> batches = DailyStructureService.splitByDay(MessageBatch.of(Arrays.asList(
+                message("张三", "2024-08-01T09:00:00", "早"),
+                message("李四", "2024-08-01T23:30:00", "晚安"),
+                message("张三", "2024-08-02T00:30:00", "还没睡"))), days);
+
+        assertEquals(Arrays.asList(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 8, 2)), days);
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+    }
+
+    @Test
+    void reusesStoredPastDaysAndNeverStoresToday() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.ofHours(8)).truncatedTo(ChronoUnit.SECONDS);
+        LocalDate today = now.toLocalDate();
+        MessageBatch messages = MessageBatch.of(Arrays.asList(
+                message("张三", today.minusDays(2).atTime(9, 0).toString(), "前天的消息"),
+                message("李四", today.minusDays(1).atTime(9, 0).toString(), "昨天的消息"),
+                message("张三", now, "今天的消息")));
+
+        dailyStructureService.analyze("default", "source-a", "测试群", "test-model", messages);
+        assertEquals(3, analyzedSegments.get(0).size());
+        assertNotNull(dailyStructureStore.get("default", "source-a", "测试群", "test-model", "v1", today.minusDays(2)));
+        assertNotNull(dailyStructureStore.get("default", "source-a", "测试群", "test-model", "v1", today.minusDays(1)));
+        assertNull(dailyStructureStore.get("default", "source-a", "测试群", "test-model", "v1", today));
+
+        // 再次分析时只把当天发送给AI
+        dailyStructureService.analyze("default", "source-a", "测试群", "test-model", messages);
+        assertEquals(1, analyzedSegments.get(1).size());
+        assertEquals(today.toString(), dayOf(analyzedSegments.get(1).get(0)));
+
+        // 其他数据源不复用已保存的日期
+        dailyStructureService.analyze("default", "source-b", "测试群", "test-model", messages);
+        assertEquals(3, analyzedSegments.get(2).size());
+    }
+
+    @Test
+    void todayFollowsMessageOffsetRatherThanServerZone() {
+        // 无论服务器时区如何，发送地当天的消息都不保存
+        for (ZoneOffset offset : new ZoneOffset[]{ZoneOffset.ofHours(-12), ZoneOffset.ofHours(14)}) {
+            OffsetDateTime now = OffsetDateTime.now(offset);
+            dailyStructureService.analyze("default", "source-a", "测试群", "test-model",
+                    MessageBatch.of(Arrays.asList(message("张三", now, "现在的消息"))));
+            assertNull(dailyStructureStore.get("default", "source-a", "测试群", "test-model", "v1", now.toLocalDate()));
+        }
+    }
+
+    @Test
+    void incompleteDayIsNotStored() {
+        // 每条消息单独成段，其中一段分析结果无效
+        ReflectionTestUtils.setField(dataProcessorService, "segmentMaxTokens", 1);
+        MessageBatch messages = MessageBatch.of(Arrays.asList(
+                message("张三", "2024-08-01T09:00:00", "正常的消息"),
+                message("李四", "2024-08-01T15:00:00", "乱码")));
+
+        String result = dailyStructureService.analyze("default", "source-a", "测试群", "test-model", messages);
+
+        assertEquals(2, analyzedSegments.get(0).size());
+        assertNotNull(structureMergeService.parseStructure(result));
+        assertNull(dailyStructureStore.get("default", "source-a", "测试群", "test-model", "v1", LocalDate.of(2024, 8, 1)));
+    }
+
+    @Test
+    void mergesDaysWithAiAndAppliesLocalStatistics() {
+        MessageBatch messages = twoDays();
+
+        String result = dailyStructureService.analyze("default", "source-a", "测试群", "test-model", messages);
+        assertEquals(Arrays.asList("整周话题"), topicsOf(JSON.parseObject(result)));
+        assertEquals("积极", JSON.parseObject(result).getJSONObject("sentiment_analysis").getString("overall_sentiment"));
+
+        // 计数由本地统计写入，覆盖合并结果
+        ChatStatisticsService chatStatisticsService = new ChatStatisticsService();
+        ReflectionTestUtils.setField(chatStatisticsService, "dataProcessorService", dataProcessorService);
+        JSONObject structure = JSON.parseObject(
+                structureMergeService.applyStatistics(result, chatStatisticsService.compute(messages)));
+        assertEquals(3, structure.getJSONObject("summary").getIntValue("total_messages"));
+        assertEquals(Arrays.asList("整周话题"), topicsOf(structure));
+        JSONArray speakers = structure.getJSONArray("top_speakers");
+        assertEquals("张三", speakers.getJSONObject(0).getString("nickname"));
+        assertEquals(2, speakers.getJSONObject(0).getIntValue("message_count"));
+        assertEquals("2024-08-01的评价", speakers.getJSONObject(0).getString("ai_comment"));
+    }
+
+    @Test
+    void fallsBackToLocalMergeWhenAiMergeFails() {
+        when(aiService.mergeStructures(anyString())).thenThrow(new RuntimeException("调用AI服务失败: 503"));
+        String failed = dailyStructureService.analyze("default", "source-a", "测试群", "test-model", twoDays());
+        assertEquals(Arrays.asList("2024-08-01", "2024-08-02"), topicsOf(JSON.parseObject(failed)));
+
+        doReturn("无法合并").when(aiService).mergeStructures(anyString());
+        String unparsable = dailyStructureService.analyze("default", "source-a", "测试群", "test-model", twoDays());
+        assertEquals(Arrays.asList("2024-08-01", "2024-08-02"), topicsOf(JSON.parseObject(unparsable)));
+    }
+
+    @Test
+    void singleDaySkipsAiMerge() {
+        dailyStructureService.analyze("default", "source-a", "测试群", "test-model", MessageBatch.of(Arrays.asList(
+                message("张三", "2024-08-01T09:00:00", "早"))));
+        verify(aiService, never()).mergeStructures(anyString());
+    }
+
+    private static MessageBatch twoDays() {
+        return MessageBatch.of(Arrays.asList(
+                message("张三", "2024-08-01T09:00:00", "周四的消息"),
+                message("李四", "2024-08-01T10:00:00", "收到"),
+                message("张三", "2024-08-02T09:00:00", "周五的消息")));
+    }
+
+    private static List<String> topicsOf(JSONObject structure) {
+        return structure.getJSONObject("summary").getJSONArray("main_topics").toJavaList(String.class);
+    }
+
+    private static String dayOf(String segment) {
+        Matcher matcher = DAY_HEADER.matcher(segment);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String structureOf(String segment) {
+        if (segment.contains("乱码")) {
+            return "不是JSON";
+        }
+        String day = dayOf(segment);
+        JSONObject summary = new JSONObject();
+        summary.put("main_topics", Arrays.asList(day));
+        JSONObject speaker = new JSONObject();
+        speaker.put("nickname", "张三");
+        speaker.put("message_count", 999);
+        speaker.put("ai_comment", day + "的评价");
+        JSONObject structure = new JSONObject();
+        structure.put("summary", summary);
+        structure.put("top_speakers", Arrays.asList(speaker));
+        return structure.toJSONString();
+    }
+
+    private static ChatMessage message(String senderName, String time, String content) {
+        return message(senderName, OffsetDateTime.of(LocalDateTime.parse(time), ZoneOffset.ofHours(8)), content);
+    }
+
+    private static ChatMessage message(String senderName, OffsetDateTime time, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setSender(senderName);
+        message.setSenderName(senderName);
+        message.setTime(time);
+        message.setType(1);
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,69 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.service.ChatlogService.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 聊天记录紧凑编码测试
+ */
+class DataProcessorServiceTest {
+
+    private DataProcessorService dataProcessorService;
+
+    @BeforeEach
+    void setUp() {
+        dataProcessorService = new DataProcessorService();
+        ReflectionTestUtils.setField(dataProcessorService, "analysisMetrics", mock(AnalysisMetrics.class));
+        ReflectionTestUtils.setField(dataProcessorService, "mergeWindowMinutes", 5);
+    }
+
+    @Test
+    void encodesAliasesDayHeadersAndMergedLines() {
+        String transcript = dataProcessorService.processMessages(MessageBatch.of(Arrays.asList(
+                message("u1", "张三", "2024-08-01T09:00:10", "早上好"),
+                message("u1", "张三", "2024-08-01T09:02:00", "今天开会吗？"),
+                message("u2", "李四", "2024-08-01T09:05:00", "开\n\n  十点"),
+                message("u1", "张三", "2024-08-01T09:30:00", "好的"),
+                message("u1", "张三", "2024-08-02T08:00:00", "[动画表情]"),
+                message("u1", "张三", "2024-08-02T08:01:00", "早"))));
+
+        assertEquals("[发言人]\n"
+                + "A=张三\n"
+                + "B=李四\n"
+                + "[聊天记录]\n"
+                + "# 2024-08-01\n"
+                + "09:00 A: 早上好 / 今天开会吗？\n"
+                + "09:05 B: 开 十点\n"
+                + "09:30 A: 好的\n"
+                + "# 2024-08-02\n"
+                + "08:00 A: [表情] / 早", transcript);
+    }
+
+    @Test
+    void normalizesRepeatedEmojiAndInvisibleCharacters() {
+        assertEquals("哈哈[捂脸]", dataProcessorService.normalizeContent("哈哈[捂脸][捂脸] [捂脸]"));
+        assertEquals("好的😂", dataProcessorService.normalizeContent("好​的😂😂😂"));
+        assertEquals("a b", dataProcessorService.normalizeContent(" a　\tb "));
+    }
+
+    private static ChatMessage message(String sender, String senderName, String time, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setSender(sender);
+        message.setSenderName(senderName);
+        message.setTime(OffsetDateTime.of(LocalDateTime.parse(time), ZoneOffset.ofHours(8)));
+        message.setType(1);
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,83 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.dto.response.GroupSuggestion;
+import com.wechat.dailyreport.service.ChatlogService.ChatSession;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 群聊目录检索测试
+ */
+class GroupDirectoryServiceTest {
+
+    @Test
+    void searchMatchesNamesRemarksAndPinyinInitials() {
+        ChatlogService chatlogService = mock(ChatlogService.class);
+        when(chatlogService.searchGroupChatsByName("default", "")).thenReturn(Arrays.asList(
+                session("1001@chatroom", "技术交流群", null),
+                session("1002@chatroom", "周末羽毛球", "球友"),
+                session("1003@chatroom", "Java技术分享", null)));
+        GroupDirectoryService service = service(chatlogService);
+
+        assertEquals(Arrays.asList("技术交流群", "Java技术分享"), names(service.search("技术")));
+        assertEquals(Arrays.asList("技术交流群"), names(service.search("jsjl")));
+        assertEquals(Arrays.asList("周末羽毛球"), names(service.search("球友")));
+        assertEquals(Arrays.asList("Java技术分享"), names(service.search("JAVA")));
+        assertEquals(Arrays.asList("周末羽毛球"), names(service.search("1002")));
+        assertTrue(service.search("篮球").isEmpty());
+        assertEquals(3, service.search(" ").size());
+
+        verify(chatlogService, times(1)).searchGroupChatsByName("default", "");
+    }
+
+    @Test
+    void resultsAreCappedAndPrefixMatchesComeFirst() {
+        List<ChatSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            sessions.add(session(i + "@chatroom", "读书会" + i, null));
+        }
+        sessions.add(session("9999@chatroom", "书友群", null));
+        ChatlogService chatlogService = mock(ChatlogService.class);
+        when(chatlogService.searchGroupChatsByName("default", "")).thenReturn(sessions);
+        GroupDirectoryService service = service(chatlogService);
+        ReflectionTestUtils.setField(service, "maxResults", 5);
+
+        assertEquals(5, service.search("").size());
+        assertEquals(5, service.search("读书").size());
+        // 前缀匹配优先于包含匹配，即使包含匹配的群聊下标更靠前
+        assertEquals("书友群", service.search("书").get(0).getNickName());
+        assertEquals(5, service.search("书").size());
+    }
+
+    private static GroupDirectoryService service(ChatlogService chatlogService) {
+        GroupDirectoryService service = new GroupDirectoryService();
+        ReflectionTestUtils.setField(service, "chatlogService", chatlogService);
+        ReflectionTestUtils.setField(service, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(service, "maxResults", 20);
+        return service;
+    }
+
+    private static ChatSession session(String name, String nickName, String remark) {
+        ChatSession session = new ChatSession();
+        session.setName(name);
+        session.setNickName(nickName);
+        session.setRemark(remark);
+        return session;
+    }
+
+    private static List<String> names(List<GroupSuggestion> groups) {
+        return groups.stream().map(GroupSuggestion::getNickName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,52 @@
+package com.wechat.dailyreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 列式消息批次测试
+ */
+class MessageBatchTest {
+
+    @Test
+    void contentViewIsReusedAcrossMessagesAndSlices() {
+        MessageBatch batch = new MessageBatch.Builder()
+                .add(1L, 0L, 28800, "u1", "张三", 1, "早上好")
+                .add(2L, 60L, 28800, "u2", "李四", 1, "")
+                .add(3L, 120L, 28800, "u1", "张三", 1, "开会")
+                .build();
+
+        MessageBatch.ContentView view = batch.contentView();
+        assertEquals("早上好", view.moveTo(0).toString());
+        assertSame(view, view.moveTo(1));
+        assertEquals(0, view.length());
+        assertEquals("开会", view.moveTo(2).toString());
+        assertEquals('会', view.charAt(1));
+        assertEquals("会", view.subSequence(1, 2).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> view.charAt(2));
+
+        MessageBatch.ContentView sliceView = batch.slice(2, 3).contentView();
+        assertEquals("开会", sliceView.moveTo(0).toString());
+    }
+
+    @Test
+    void rollbackDiscardsMessagesAndSendersAddedAfterMark() {
+        MessageBatch.Builder builder = new MessageBatch.Builder()
+                .add(1L, 0L, 28800, "u1", "张三", 1, "早上好");
+        MessageBatch.Builder.Mark mark = builder.mark();
+        builder.add(2L, 60L, 28800, "u2", "李四", 1, "收到")
+                .add(3L, 120L, 28800, "u1", "张三", 1, "开会")
+                .rollback(mark);
+        builder.add(4L, 180L, 28800, "u3", "王五", 1, "晚安");
+
+        MessageBatch batch = builder.build();
+        assertEquals(2, batch.size());
+        assertEquals(2, batch.getSenderCount());
+        assertEquals("晚安", batch.getContent(1).toString());
+        assertEquals("王五", batch.getSenderName(batch.getSender(1)));
+        assertEquals(4L, batch.getSeq(1));
+    }
+}
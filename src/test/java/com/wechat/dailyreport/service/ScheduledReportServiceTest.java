@@ -0,0 +1,140 @@
+package com.wechat.dailyreport.service;
+
+import com.wechat.dailyreport.config.ScheduledReportProperties;
+import com.wechat.dailyreport.dto.config.WatchListEntry;
+import com.wechat.dailyreport.metrics.AnalysisMetrics;
+import com.wechat.dailyreport.service.ChatAnalysisService.AnalysisReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 定时报告日期范围规则和触发测试
+ */
+class ScheduledReportServiceTest {
+
+    // 2024-08-07 为星期三
+    private static final LocalDate TODAY = LocalDate.of(2024, 8, 7);
+
+    private final ChatAnalysisService chatAnalysisService = mock(ChatAnalysisService.class);
+
+    private final AnalysisMetrics analysisMetrics = mock(AnalysisMetrics.class);
+
+    private final WatchListEntry entry = new WatchListEntry().setGroup("测试群");
+
+    private ScheduledReportService service;
+
+    @BeforeEach
+    void setUp() {
+        ScheduledReportProperties properties = new ScheduledReportProperties();
+        // 测试期间不会到达的触发时间，只通过 trigger 触发
+        properties.setDefaultCron("0 0 0 1 1 *");
+        properties.getWatchList().add(entry);
+
+        service = new ScheduledReportService();
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.setField(service, "chatAnalysisService", chatAnalysisService);
+        ReflectionTestUtils.setField(service, "analysisMetrics", analysisMetrics);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void resolvesRangeRules() {
+        assertArrayEquals(dates("2024-08-06", "2024-08-06"), ScheduledReportService.resolveRange("yesterday", TODAY));
+        assertArrayEquals(dates("2024-08-06", "2024-08-06"), ScheduledReportService.resolveRange(null, TODAY));
+        assertArrayEquals(dates("2024-07-31", "2024-08-06"), ScheduledReportService.resolveRange("last-7-days", TODAY));
+        assertArrayEquals(dates("2024-08-05", "2024-08-06"), ScheduledReportService.resolveRange("this-week", TODAY));
+        // 周一触发时为上一整周
+        assertArrayEquals(dates("2024-07-29", "2024-08-04"),
+                ScheduledReportService.resolveRange("this-week", LocalDate.of(2024, 8, 5)));
+    }
+
+    @Test
+    void rejectsUnknownRules() {
+        assertThrows(IllegalArgumentException.class, () -> ScheduledReportService.resolveRange("last-0-days", TODAY));
+        assertThrows(IllegalArgumentException.class, () -> ScheduledReportService.resolveRange("next-week", TODAY));
+        // 当天尚未结束，不支持定时分析
+        assertThrows(IllegalArgumentException.class, () -> ScheduledReportService.resolveRange("today", TODAY));
+    }
+
+    @Test
+    void triggerIsSkippedWhileEarlierRunIsPending() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatAnalysisService.analyzeChatRange(isNull(), eq("测试群"), anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    return new AnalysisReport().setReportId("r1").setCreatedAt(LocalDateTime.now());
+                });
+
+        trigger();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        trigger();
+        verify(analysisMetrics).recordScheduledReport("skipped");
+
+        release.countDown();
+        verify(analysisMetrics, timeout(5000)).recordScheduledReport("completed");
+
+        // 上一次结束后可以再次触发
+        trigger();
+        verify(analysisMetrics, timeout(5000).times(2)).recordScheduledReport("completed");
+        verify(chatAnalysisService, times(2)).analyzeChatRange(isNull(), eq("测试群"), anyString(), anyString());
+        verify(analysisMetrics, times(1)).recordScheduledReport("skipped");
+    }
+
+    @Test
+    void reportCreatedBeforeTriggerCountsAsExisting() {
+        when(chatAnalysisService.analyzeChatRange(isNull(), eq("测试群"), anyString(), anyString()))
+                .thenReturn(new AnalysisReport().setReportId("r1").setCreatedAt(LocalDateTime.now().minusDays(1)));
+
+        trigger();
+
+        verify(analysisMetrics, timeout(5000)).recordScheduledReport("existing");
+        verify(analysisMetrics, never()).recordScheduledReport("completed");
+    }
+
+    @Test
+    void failedAnalysisIsRecordedAndReleasesTheEntry() {
+        when(chatAnalysisService.analyzeChatRange(isNull(), eq("测试群"), anyString(), anyString()))
+                .thenThrow(new RuntimeException("AI服务不可用"));
+
+        trigger();
+        verify(analysisMetrics, timeout(5000)).recordScheduledReport("failed");
+        trigger();
+        verify(analysisMetrics, timeout(5000).times(2)).recordScheduledReport("failed");
+        verify(analysisMetrics, never()).recordScheduledReport("skipped");
+    }
+
+    private void trigger() {
+        ReflectionTestUtils.invokeMethod(service, "trigger", 0, entry);
+    }
+
+    private static LocalDate[] dates(String start, String end) {
+        return new LocalDate[]{LocalDate.parse(start), LocalDate.parse(end)};
+    }
+}